@@ -0,0 +1,1224 @@
+package com.github.tranforcpp;
+
+import com.github.tranforcpp.ipc.CreditWindow;
+import com.github.tranforcpp.ipc.EventJournal;
+import com.github.tranforcpp.ipc.EventLanes;
+import com.github.tranforcpp.ipc.EventType;
+import com.github.tranforcpp.ipc.FrameEncoder;
+import com.github.tranforcpp.ipc.Handshake;
+import com.github.tranforcpp.ipc.InboundDecoder;
+import com.github.tranforcpp.ipc.InboundMessage;
+import com.github.tranforcpp.ipc.InboundMessage.Field;
+import com.github.tranforcpp.ipc.IpcSettings;
+import com.github.tranforcpp.ipc.JsonFrameEncoder;
+import com.github.tranforcpp.ipc.PipeTransport;
+import com.github.tranforcpp.ipc.QueuedEvent;
+import com.github.tranforcpp.ipc.SharedMemoryTransport;
+import com.github.tranforcpp.ipc.Transport;
+import com.github.tranforcpp.ipc.TransportType;
+import com.github.tranforcpp.ipc.UnixSocketTransport;
+import com.github.tranforcpp.ipc.Verdict;
+import com.github.tranforcpp.ipc.VerdictExchange;
+import com.github.tranforcpp.ipc.WireProtocol;
+import com.github.tranforcpp.ipc.WriterStats;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个C++插件进程
+ * <p>
+ * 每个进程有自己的协议通道、握手、发送队列、写出线程、订阅和裁决，{@link ProcessManager} 捕获事件后
+ * 按订阅分别放入各进程的队列。一个插件处理变慢只会让自己的队列变长，崩溃也只影响自己。
+ * <p>
+ * 握手、订阅和裁决回复在这里处理，其余动作交给 ProcessManager。
+ */
+public final class CppProcess {
+
+    private static final int DRAIN_LIMIT = 512;
+    private static final long WRITER_JOIN_TIMEOUT_MS = 1000;
+    private static final int PROCESS_TERMINATION_TIMEOUT = 3;
+    private static final int FORCE_TERMINATION_TIMEOUT = 1;
+    /**
+     * 支持请求裁决的可取消事件
+     */
+    static final Set<String> VERDICT_EVENTS = Set.of("BlockBreak", "InventoryClick", "PlayerInteract");
+
+    private final ProcessManager manager;
+    private final TranforCPlusPlus plugin;
+    private final IpcSettings settings;
+    private final String pluginName;
+    private final int shard;
+    private final int shardCount;
+    private final String name;
+    private final String label;
+    private final File executable;
+    private final File workDir;
+    private final Path spillDir;
+    private final EventLanes lanes;
+    private final VerdictExchange verdicts;
+    private final WriterStats writerStats = new WriterStats();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong messageCounter = new AtomicLong(0);
+    private Process process;
+    private volatile OutputStream outputStream;
+    private volatile CompletableFuture<Handshake> handshake = new CompletableFuture<>();
+    private volatile Transport transport;
+    private volatile Transport offeredTransport;
+    private volatile boolean protocolOnStdout = true;
+    private volatile boolean tickFramesActive;
+    private volatile boolean handshakeImmediate;
+    // 本进程订阅的事件，null 表示全部（旧版C++插件或未协商订阅）
+    private volatile Set<String> subscribed;
+    private volatile Thread readerThread;
+    private volatile Thread transportReaderThread;
+    private volatile Thread writerThread;
+    // 热替换：新进程在前任交出状态前不写出事件，完成值为要恢复的状态，没有时为 null
+    private final CompletableFuture<String> released;
+    // 收到握手回复，或者确认C++端不回复
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    // 旧进程导出的状态，写出线程发完剩余事件后请求，没有协商 handover 时为 null
+    private final CompletableFuture<String> handover = new CompletableFuture<>();
+    private volatile boolean handoverNegotiated;
+    private volatile CppProcess successor;
+    private volatile boolean retiring;
+    // 崩溃后等待替换：队列保留，继续接收事件，由替换的进程接过
+    private volatile boolean awaitingReplacement;
+    // 同名进程共用的事件日志，未开启时为 null；只有协商了 journal 功能才写入
+    private final EventJournal journal;
+    private volatile boolean journalNegotiated;
+    // 写出线程下一轮先重放日志中未确认的事件
+    private volatile boolean replayPending;
+    // tick 帧模式下已写入日志、仍在累积等待发送的最后一个序号，只由写出线程访问
+    private long pendingSeq;
+    // C++端授予的发送额度，没有协商 credits 功能时为 null
+    private volatile CreditWindow credits;
+    // 额度用尽超过 stall-ms，直到队列清空：shed-events 中的事件不再入队，block 策略不再等待
+    private volatile boolean lagging;
+    private long laggingSince;
+
+    /**
+     * @param name       插件名称，单进程模式下为 null，日志不加前缀
+     * @param shard      分片序号，从 0 开始
+     * @param shardCount 同一个插件的分片数，大于 1 时名称后加 {@code #序号}
+     * @param workDir    共享内存文件的备用目录
+     * @param dataDir    插件数据目录，事件溢出到磁盘时的临时文件放在这里
+     * @param held       热替换时为 true，事件先留在队列中，直到 {@link #release(String)}
+     */
+    CppProcess(ProcessManager manager, TranforCPlusPlus plugin, IpcSettings settings, String name, int shard,
+               int shardCount, File executable, File workDir, Path dataDir, boolean held) {
+        this.manager = manager;
+        this.plugin = plugin;
+        this.settings = settings;
+        this.pluginName = name;
+        this.shard = shard;
+        this.shardCount = shardCount;
+        String baseName = name != null ? name : executable.getName();
+        this.name = shardCount > 1 ? baseName + "#" + shard : baseName;
+        boolean qualified = name != null || shardCount > 1;
+        this.label = qualified ? "[" + this.name + "] " : "";
+        this.executable = executable;
+        this.workDir = workDir;
+        // 多个进程的溢出文件同名，各自使用单独的目录
+        this.spillDir = qualified ? dataDir.resolve("processes").resolve(this.name) : dataDir;
+        this.lanes = new EventLanes(settings, spillDir, this::onEventDropped);
+        this.verdicts = new VerdictExchange(settings.getVerdicts(), lanes::offer);
+        this.released = held ? new CompletableFuture<>() : CompletableFuture.completedFuture(null);
+        this.journal = manager.journalFor(this.name, label, settings.getJournal());
+    }
+
+    void start() throws IOException {
+        Files.createDirectories(spillDir);
+        ProcessBuilder pb = new ProcessBuilder(executable.getAbsolutePath());
+        pb.redirectErrorStream(true);
+        pb.environment().put("TRANFORCPP_SHARD", Integer.toString(shard));
+        pb.environment().put("TRANFORCPP_SHARD_COUNT", Integer.toString(shardCount));
+        offeredTransport = prepareOfferedTransport(pb);
+        process = pb.start();
+
+        transport = new PipeTransport(process);
+        protocolOnStdout = true;
+        BufferedReader stdoutReader = new BufferedReader(new InputStreamReader(transport.getInputStream(), StandardCharsets.UTF_8));
+        outputStream = new BufferedOutputStream(transport.getOutputStream());
+
+        // 必须先置位，否则读取线程可能在启动瞬间看到 running=false 而退出，错过握手回复
+        running.set(true);
+
+        readerThread = new Thread(() -> readMessages(stdoutReader, true), threadName("Reader"));
+        readerThread.setDaemon(true);
+        readerThread.setPriority(Thread.NORM_PRIORITY);
+        readerThread.start();
+
+        sendHandshake();
+        startWriter();
+
+        // 主动停止前会先清除 running，这里只处理意外退出
+        Process started = process;
+        started.onExit().thenAccept(exited -> {
+            ready.complete(null);
+            handover.complete(null);
+            if (running.get()) {
+                manager.onProcessExit(this, exited.exitValue());
+            }
+        });
+    }
+
+    private String threadName(String role) {
+        return label.isEmpty() ? "TranforC++-" + role : "TranforC++-" + role + "-" + name;
+    }
+
+    /**
+     * 准备握手中提供给C++端的协议通道，未配置或初始化失败时只使用管道
+     */
+    private Transport prepareOfferedTransport(ProcessBuilder pb) {
+        Transport offered = switch (settings.getTransport()) {
+            case SHM -> new SharedMemoryTransport(workDir, settings.getShmRingSizeKb() * 1024);
+            case UDS -> new UnixSocketTransport(settings.getHandshakeTimeoutMs());
+            case PIPE -> null;
+        };
+        if (offered == null) {
+            return null;
+        }
+        try {
+            offered.prepare(pb.environment());
+            return offered;
+        } catch (IOException | UnsupportedOperationException e) {
+            plugin.getLogger().warning(label + offered.getType().getWireName() + " 通道初始化失败，使用管道通信: " + e.getMessage());
+            closeTransport(offered);
+            return null;
+        }
+    }
+
+    /**
+     * 发送协议握手
+     * <p>
+     * Hello 总是通过标准输入以JSON行发送，参数为协议版本、Java端提供的编码协议、协议通道和可选功能列表。
+     * 只使用JSON和管道且不提供可选功能时无需等待回复，否则写出线程会等待C++回复或超时回退。
+     */
+    private void sendHandshake() throws IOException {
+        WireProtocol offered = settings.getProtocol();
+        Transport offeredChannel = offeredTransport;
+        Set<String> offeredFeatures = offeredFeatures();
+        handshake = new CompletableFuture<>();
+        // 订阅只影响监听注册，不影响编码和通道，不需要让写出线程等待；tick 帧、事件日志和额度需要先知道协商结果
+        handshakeImmediate = offered == WireProtocol.JSON && offeredChannel == null
+            && !offeredFeatures.contains(Handshake.FEATURE_TICKS) && !offeredFeatures.contains(Handshake.FEATURE_JOURNAL)
+            && !offeredFeatures.contains(Handshake.FEATURE_CREDITS);
+        if (handshakeImmediate) {
+            handshake.complete(Handshake.FALLBACK);
+        }
+
+        String channel = offeredChannel != null ? offeredChannel.getType().getWireName() : TransportType.PIPE.getWireName();
+        FrameEncoder hello = new JsonFrameEncoder();
+        hello.writeEvent("Hello", new Object[]{WireProtocol.VERSION, offered.getWireName(), channel,
+            String.join(",", offeredFeatures)});
+        hello.writeTo(outputStream);
+        outputStream.flush();
+    }
+
+    private Set<String> offeredFeatures() {
+        Set<String> features = new LinkedHashSet<>();
+        if (settings.isTickFrames()) {
+            features.add(Handshake.FEATURE_TICKS);
+        }
+        if (!settings.isRegisterAllEvents()) {
+            features.add(Handshake.FEATURE_SUBSCRIBE);
+        }
+        if (settings.isHandles() && settings.getProtocol() == WireProtocol.BINARY) {
+            features.add(Handshake.FEATURE_HANDLES);
+        }
+        if (settings.getVerdicts().enabled()) {
+            features.add(Handshake.FEATURE_VERDICTS);
+        }
+        features.add(Handshake.FEATURE_HANDOVER);
+        if (journal != null) {
+            features.add(Handshake.FEATURE_JOURNAL);
+        }
+        if (settings.getCredits().enabled()) {
+            features.add(Handshake.FEATURE_CREDITS);
+        }
+        return features;
+    }
+
+    private void handleHello(InboundMessage message) {
+        WireProtocol protocol = WireProtocol.fromName(message.getString(Field.PROTOCOL));
+        if (protocol == null || (protocol != WireProtocol.JSON && protocol != settings.getProtocol())) {
+            plugin.getLogger().warning(label + "C++插件选择了未提供的协议: " + message.getString(Field.PROTOCOL));
+            return;
+        }
+        TransportType transportType = message.has(Field.TRANSPORT)
+            ? TransportType.fromName(message.getString(Field.TRANSPORT)) : TransportType.PIPE;
+        Transport offered = offeredTransport;
+        if (transportType == null || (transportType != TransportType.PIPE
+                && (offered == null || offered.getType() != transportType))) {
+            plugin.getLogger().warning(label + "C++插件选择了未提供的通道: " + message.getString(Field.TRANSPORT));
+            return;
+        }
+        Set<String> features = Handshake.parseList(message.getString(Field.FEATURES, null));
+        features.retainAll(offeredFeatures());
+        try {
+            negotiate(protocol, transportType, offered, features, message);
+        } finally {
+            // 热替换和崩溃恢复等到这里才切换，订阅必须已经生效
+            ready.complete(null);
+        }
+    }
+
+    /**
+     * 确认协商结果；写出线程已因超时回退时忽略这次回复
+     */
+    private void negotiate(WireProtocol protocol, TransportType transportType, Transport offered, Set<String> features,
+                           InboundMessage message) {
+        if (handshakeImmediate) {
+            // 写出线程没有等待回复，功能只影响订阅和裁决，直接生效
+            applyFeatures(message, features);
+            return;
+        }
+        if (handshake.isDone()) {
+            // 写出线程已回退到 json 和管道，此时启用任何功能都与实际的写出方式不符
+            plugin.getLogger().warning(label + "握手超时后才收到C++插件回复，忽略，请增大 ipc.handshake-timeout-ms");
+            return;
+        }
+
+        try {
+            if (transportType == TransportType.PIPE) {
+                releaseOfferedTransport();
+            } else {
+                switchTransport(offered);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().severe(label + "切换通信通道失败: " + e.getMessage());
+            return;
+        }
+
+        if (features.contains(Handshake.FEATURE_CREDITS)) {
+            long window = message.has(Field.CREDITS) ? message.getLong(Field.CREDITS) : 0;
+            if (window > 0) {
+                credits = new CreditWindow(window);
+            } else {
+                features.remove(Handshake.FEATURE_CREDITS);
+                plugin.getLogger().warning(label + "C++插件未授予初始额度，不使用流量控制");
+            }
+        }
+        // 写出线程等到握手完成后才读取这两个标记，必须先置位；回退时由写出线程清除
+        handoverNegotiated = features.contains(Handshake.FEATURE_HANDOVER);
+        journalNegotiated = features.contains(Handshake.FEATURE_JOURNAL);
+        Handshake negotiated = new Handshake(protocol, transportType, features);
+        if (!handshake.complete(negotiated)) {
+            plugin.getLogger().warning(label + "握手超时后才收到C++插件回复，忽略，请增大 ipc.handshake-timeout-ms");
+            return;
+        }
+        tickFramesActive = negotiated.hasFeature(Handshake.FEATURE_TICKS);
+        applyFeatures(message, features);
+        plugin.getLogger().info(label + "已与C++插件协商通信协议: " + protocol.getWireName() + "，通道: " + transportType.getWireName()
+            + (features.isEmpty() ? "" : "，功能: " + String.join(",", features)));
+    }
+
+    /**
+     * 握手生效后应用C++端声明的订阅和裁决事件
+     */
+    private void applyFeatures(InboundMessage message, Set<String> features) {
+        if (features.contains(Handshake.FEATURE_SUBSCRIBE)) {
+            applySubscriptions(message.getString(Field.SUBSCRIBE, ""));
+        }
+        if (features.contains(Handshake.FEATURE_VERDICTS)) {
+            Set<String> requested = Handshake.parseList(message.getString(Field.VERDICTS, null));
+            requested.retainAll(VERDICT_EVENTS);
+            verdicts.setEvents(requested);
+        }
+        handoverNegotiated = features.contains(Handshake.FEATURE_HANDOVER);
+    }
+
+    /**
+     * 按C++端声明的事件列表收窄本进程的订阅
+     */
+    private void applySubscriptions(String eventList) {
+        Set<String> requested = Handshake.parseList(eventList);
+        Set<String> accepted = new TreeSet<>();
+        for (String eventName : requested) {
+            if (manager.getSubscriptions().isBound(eventName)) {
+                accepted.add(eventName);
+            } else {
+                plugin.getLogger().warning(label + "C++插件订阅了不支持的事件: " + eventName);
+            }
+        }
+        subscribed = Collections.unmodifiableSet(accepted);
+        manager.refreshSubscriptions();
+        plugin.getLogger().info(label + "C++插件订阅的事件: " + (accepted.isEmpty() ? "无" : String.join(",", accepted)));
+    }
+
+    /**
+     * 运行时订阅或取消订阅，不需要重载
+     */
+    private void handleSubscription(InboundMessage message, boolean subscribe) {
+        Set<String> current = subscribed;
+        Set<String> updated = new TreeSet<>(current != null ? current : manager.getSubscriptions().getBound());
+        for (String eventName : Handshake.parseList(message.getString(Field.EVENTS))) {
+            if (!manager.getSubscriptions().isBound(eventName)) {
+                plugin.getLogger().warning(label + "C++插件订阅了不支持的事件: " + eventName);
+            } else if (subscribe) {
+                updated.add(eventName);
+            } else {
+                updated.remove(eventName);
+            }
+        }
+        subscribed = Collections.unmodifiableSet(updated);
+        manager.refreshSubscriptions();
+    }
+
+    private void handleVerdict(InboundMessage message) {
+        boolean cancel = message.has(Field.CANCEL) && message.getBoolean(Field.CANCEL);
+        Boolean dropItems = message.has(Field.DROPS) ? message.getBoolean(Field.DROPS) : null;
+        Integer expToDrop = message.has(Field.EXP) ? message.getInt(Field.EXP) : null;
+        verdicts.complete(message.getLong(Field.ID), new Verdict(cancel, dropItems, expToDrop));
+    }
+
+    /**
+     * C++端确认后切换到新的协议通道，此后标准输出只作为日志
+     */
+    private void switchTransport(Transport target) throws IOException {
+        target.open(process);
+        transport = target;
+        offeredTransport = null;
+        outputStream = new BufferedOutputStream(target.getOutputStream());
+        protocolOnStdout = false;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(target.getInputStream(), StandardCharsets.UTF_8));
+        transportReaderThread = new Thread(() -> readMessages(reader, false), threadName("Reader-" + target.getType().getWireName()));
+        transportReaderThread.setDaemon(true);
+        transportReaderThread.start();
+    }
+
+    private void releaseOfferedTransport() {
+        Transport offered = offeredTransport;
+        offeredTransport = null;
+        closeTransport(offered);
+    }
+
+    private void closeTransport(Transport target) {
+        if (target == null) {
+            return;
+        }
+        try {
+            target.close();
+        } catch (IOException e) {
+            plugin.getLogger().warning(label + "关闭通信通道失败: " + e.getMessage());
+        }
+    }
+
+    private Handshake awaitHandshake() throws InterruptedException {
+        try {
+            return handshake.get(settings.getHandshakeTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            ready.complete(null);
+            if (handshake.complete(Handshake.FALLBACK)) {
+                releaseOfferedTransport();
+                plugin.getLogger().info(label + "C++插件未响应握手，使用 json 协议和管道通道");
+            }
+        } catch (ExecutionException e) {
+            handshake.complete(Handshake.FALLBACK);
+        }
+        return handshake.getNow(Handshake.FALLBACK);
+    }
+
+    private void readMessages(BufferedReader reader, boolean fromStdout) {
+        // 每个读取线程各用一组，解析时不构建 JsonObject
+        InboundDecoder decoder = new InboundDecoder();
+        InboundMessage message = new InboundMessage();
+        try {
+            String line;
+            while (running.get() && (line = reader.readLine()) != null) {
+                if ((fromStdout && !protocolOnStdout) || !line.startsWith("{")) {
+                    // 协议已切换到独立通道，或者不是JSON消息，都只是C++插件的调试输出
+                    plugin.getLogger().info("[C++] " + label + line);
+                    continue;
+                }
+                if (decoder.decode(line, message)) {
+                    handleMessage(message, line);
+                    messageCounter.incrementAndGet();
+                } else {
+                    manager.recordMalformed(line, "不是完整的 JSON 对象");
+                }
+            }
+        } catch (IOException e) {
+            if (running.get() && process != null && process.isAlive()) {
+                plugin.getLogger().severe(label + "Error reading from C++ process: " + e.getMessage());
+            }
+            // 正常的连接断开不需要记录错误
+        }
+    }
+
+    private void handleMessage(InboundMessage message, String line) {
+        String action = message.getAction();
+        if (action == null) {
+            manager.recordMalformed(line, "缺少 action");
+            return;
+        }
+        try {
+            switch (action) {
+                case "hello":
+                    handleHello(message);
+                    break;
+                case "subscribe":
+                    handleSubscription(message, true);
+                    break;
+                case "unsubscribe":
+                    handleSubscription(message, false);
+                    break;
+                case "verdict":
+                    handleVerdict(message);
+                    break;
+                case "state":
+                    handover.complete(message.getString(Field.STATE, ""));
+                    break;
+                case "ack":
+                    if (journal != null) {
+                        journal.acknowledge(message.getLong(Field.SEQ));
+                    }
+                    break;
+                case "credit":
+                    CreditWindow window = credits;
+                    if (window != null) {
+                        window.grant(message.getLong(Field.CREDITS));
+                    }
+                    break;
+                default:
+                    manager.handleAction(this, action, message, line);
+                    break;
+            }
+        } catch (Exception e) {
+            manager.recordMalformed(line, e.getMessage());
+        }
+    }
+
+    /**
+     * 本进程是否需要这个事件
+     */
+    boolean wantsEvent(String eventName) {
+        Set<String> current = subscribed;
+        return isAccepting() && (current == null || current.contains(eventName));
+    }
+
+    /**
+     * 放入本进程的发送队列，被溢出策略丢弃时返回 false
+     * <p>
+     * 热替换切换后仍拿着旧进程列表的线程发来的事件转给接替的进程；
+     * 查询结果等有人等待回复的事件只属于本进程，不转交。C++端处理落后时 shed-events 中的事件直接丢弃。
+     */
+    boolean offer(QueuedEvent event) {
+        CppProcess next = successor;
+        if (next != null && !event.isImmediate()) {
+            return next.offer(event);
+        }
+        if (lagging && !event.isImmediate() && settings.getCredits().isShed(event.eventName())) {
+            manager.onEventShed(this, event);
+            return false;
+        }
+        return isAccepting() && lanes.offer(event);
+    }
+
+    boolean isVerdictRequested(String eventName) {
+        return running.get() && verdicts.isRequested(eventName);
+    }
+
+    /**
+     * 发送裁决请求并在当前线程等待回复，超时返回配置的默认裁决
+     */
+    Verdict requestVerdict(String eventName, Object[] args) {
+        return verdicts.request(eventName, args);
+    }
+
+    void onTickEnd(long tick) {
+        if (tickFramesActive && running.get()) {
+            lanes.offer(QueuedEvent.tickEnd(tick));
+        }
+    }
+
+    /**
+     * 事件因通道已满被丢弃，drop-oldest 策略下丢弃的是更早入队的事件
+     */
+    private void onEventDropped(QueuedEvent event) {
+        writerStats.recordDropped(1);
+        if (!event.isTickEnd()) {
+            manager.onEventDropped(this, event);
+        }
+    }
+
+    private void startWriter() {
+        writerStats.reset();
+        writerThread = new Thread(this::writeEvents, threadName("Writer"));
+        writerThread.setDaemon(true);
+        writerThread.setPriority(Thread.NORM_PRIORITY);
+        writerThread.start();
+    }
+
+    /**
+     * 本进程唯一的写出线程
+     * <p>
+     * 每轮把队列中已有的事件一次取出（最多 DRAIN_LIMIT 个），整批编码到同一个缓冲区后
+     * 只做一次写入和一次刷新。事件越密集每批越大，系统调用次数随批次而不是事件数增长。
+     * <p>
+     * 协商了 tick 帧时，事件先在本地累积，收到 tick 结束标记后作为一个 tick 帧发出；
+     * 标记迟迟不到时最多等待 linger-ms 就提前发送，保证延迟有上限。
+     * <p>
+     * 协商了 credits 时每批最多取出剩余额度个事件，额度用尽时事件留在队列中，等C++端归还额度。
+     */
+    private void writeEvents() {
+        List<QueuedEvent> drained = new ArrayList<>(DRAIN_LIMIT);
+        try {
+            Handshake negotiated = awaitHandshake();
+            if (!negotiated.hasFeature(Handshake.FEATURE_CREDITS)) {
+                credits = null;
+            }
+            if (!negotiated.hasFeature(Handshake.FEATURE_JOURNAL)) {
+                journalNegotiated = false;
+            }
+            if (!handshakeImmediate && !negotiated.hasFeature(Handshake.FEATURE_HANDOVER)) {
+                handoverNegotiated = false;
+            }
+            FrameEncoder encoder = negotiated.protocol().newEncoder(negotiated.hasFeature(Handshake.FEATURE_HANDLES));
+            OutputStream out = outputStream;
+            String state = awaitRelease();
+            if (state != null && handoverNegotiated) {
+                encoder.reset();
+                encoder.writeEvent(EventType.RESTORE_STATE.getWireName(), new Object[]{state});
+                writeBatch(encoder, out, 1);
+            }
+            if (negotiated.hasFeature(Handshake.FEATURE_TICKS)) {
+                writeTickFrames(encoder, out, drained);
+                return;
+            }
+            while (running.get() && process != null && process.isAlive()) {
+                if (replayPending) {
+                    replayJournal(encoder, out);
+                }
+                QueuedEvent first = lanes.poll(50, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (retiring) {
+                        requestHandover(encoder, out);
+                        return;
+                    }
+                    continue;
+                }
+                // 等待期间接过了崩溃进程的队列，未确认的事件更早，先发送
+                if (replayPending) {
+                    replayJournal(encoder, out);
+                }
+                int limit = creditLimit(first);
+                if (limit == 0) {
+                    return;
+                }
+                drained.add(first);
+                lanes.drainTo(drained, limit - 1);
+                consumeCredits(drained);
+                checkCaughtUp();
+
+                encoder.reset();
+                long seq = 0;
+                for (QueuedEvent msg : drained) {
+                    encoder.writeEvent(msg.eventName(), msg.args());
+                    seq = journal(msg, seq);
+                }
+                writeSeq(encoder, seq);
+                writeBatch(encoder, out, drained.size());
+                drained.clear();
+            }
+        } catch (InterruptedException e) {
+            // 线程被中断是正常的关闭过程
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            if (running.get()) {
+                plugin.getLogger().warning(label + "Error in event writer: " + e.getMessage());
+            }
+        }
+    }
+
+    private void writeTickFrames(FrameEncoder encoder, OutputStream out, List<QueuedEvent> drained)
+            throws IOException, InterruptedException {
+        List<QueuedEvent> pending = new ArrayList<>(DRAIN_LIMIT);
+        pendingSeq = 0;
+        long lingerNanos = TimeUnit.MILLISECONDS.toNanos(settings.getLingerMs());
+        long pendingSince = 0;
+        long lastTick = 0;
+        while (running.get() && process != null && process.isAlive()) {
+            if (replayPending) {
+                replayJournal(encoder, out);
+            }
+            long waitNanos = pending.isEmpty()
+                ? TimeUnit.MILLISECONDS.toNanos(50)
+                : Math.max(1L, pendingSince + lingerNanos - System.nanoTime());
+            QueuedEvent first = lanes.poll(waitNanos, TimeUnit.NANOSECONDS);
+            if (first != null) {
+                if (replayPending) {
+                    replayJournal(encoder, out);
+                }
+                CreditWindow window = credits;
+                if (window != null && !pending.isEmpty() && window.available(1) == 0) {
+                    // 额度都被累积中的事件占用，不先发出的话C++端收不到事件，也就不会归还额度
+                    writeTickFrame(encoder, out, lastTick + 1, pending);
+                }
+                int limit = creditLimit(first);
+                if (limit == 0) {
+                    return;
+                }
+                drained.add(first);
+                lanes.drainTo(drained, limit - 1);
+                consumeCredits(drained);
+                checkCaughtUp();
+            }
+
+            for (QueuedEvent msg : drained) {
+                if (msg.isTickEnd()) {
+                    lastTick = msg.tickEnd();
+                    writeTickFrame(encoder, out, lastTick, pending);
+                } else if (msg.isImmediate()) {
+                    // 裁决请求和查询结果有线程在等待，不能等到 tick 结束，在两个 tick 帧之间单独发出
+                    encoder.reset();
+                    encoder.writeEvent(msg.eventName(), msg.args());
+                    long seq = journal(msg, 0);
+                    if (pendingSeq > 0) {
+                        // 累积中的事件序号更小但尚未发出，序号标记留给下一个 tick 帧，C++端确认时不会越过它们
+                        pendingSeq = Math.max(pendingSeq, seq);
+                    } else {
+                        writeSeq(encoder, seq);
+                    }
+                    writeBatch(encoder, out, 1);
+                } else {
+                    if (pending.isEmpty()) {
+                        pendingSince = System.nanoTime();
+                    }
+                    // 取出时就写入日志，进程在 tick 结束前退出时累积中的事件也能重放
+                    pendingSeq = journal(msg, pendingSeq);
+                    pending.add(msg);
+                }
+            }
+            drained.clear();
+
+            if (!pending.isEmpty() && System.nanoTime() - pendingSince >= lingerNanos) {
+                // tick 结束标记未按时到达，按正在进行的 tick 提前发送
+                writeTickFrame(encoder, out, lastTick + 1, pending);
+            }
+            if (first == null && retiring) {
+                writeTickFrame(encoder, out, lastTick + 1, pending);
+                requestHandover(encoder, out);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 本批最多取出的事件数（含已取出的 first），没有协商 credits 时为 DRAIN_LIMIT；进程停止时返回 0
+     * <p>
+     * tick 结束标记不消耗额度，额度用尽时也照常取出。
+     */
+    private int creditLimit(QueuedEvent first) throws InterruptedException {
+        CreditWindow window = credits;
+        if (window != null && first.isTickEnd()) {
+            return 1 + window.available(DRAIN_LIMIT - 1);
+        }
+        return awaitCredits(DRAIN_LIMIT);
+    }
+
+    /**
+     * 等待C++端归还额度，返回可以发送的事件数，最多 max；进程停止时返回 0
+     * <p>
+     * 额度用尽超过 stall-ms 时记录警告并进入落后状态，见 {@link #checkCaughtUp()}。
+     */
+    private int awaitCredits(int max) throws InterruptedException {
+        CreditWindow window = credits;
+        if (window == null) {
+            return max;
+        }
+        long stallNanos = TimeUnit.MILLISECONDS.toNanos(settings.getCredits().stallMs());
+        long waitMs = Math.min(50L, settings.getCredits().stallMs());
+        while (!window.await(waitMs, TimeUnit.MILLISECONDS)) {
+            if (!running.get() || process == null || !process.isAlive()) {
+                return 0;
+            }
+            long lagNanos = window.getLagNanos();
+            if (!lagging && lagNanos >= stallNanos) {
+                laggingSince = System.nanoTime() - lagNanos;
+                setLagging(true);
+                plugin.getLogger().warning(label + "C++插件处理落后：发送额度已用尽 "
+                    + TimeUnit.NANOSECONDS.toMillis(lagNanos) + " 毫秒，在途 " + window.getInFlight()
+                    + " 个事件，待发送 " + lanes.size() + " 个");
+            }
+        }
+        return window.available(max);
+    }
+
+    /**
+     * 落后状态下队列已清空时恢复；只在重新获得额度后恢复的话，持续落后时会反复进出落后状态
+     */
+    private void checkCaughtUp() {
+        if (lagging && lanes.size() == 0) {
+            setLagging(false);
+            plugin.getLogger().info(label + "C++插件已追上，落后持续 "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - laggingSince) + " 毫秒");
+        }
+    }
+
+    /**
+     * 取出的事件中除 tick 结束标记外各消耗一个额度
+     */
+    private void consumeCredits(List<QueuedEvent> drained) {
+        CreditWindow window = credits;
+        if (window == null) {
+            return;
+        }
+        int events = 0;
+        for (QueuedEvent msg : drained) {
+            if (!msg.isTickEnd()) {
+                events++;
+            }
+        }
+        window.consume(events);
+    }
+
+    private void setLagging(boolean lagging) {
+        this.lagging = lagging;
+        lanes.setStalled(lagging);
+    }
+
+    /**
+     * 新进程等待前任发完剩余事件并交出状态，没有前任时立即返回 null
+     */
+    private String awaitRelease() throws InterruptedException {
+        try {
+            return released.get();
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 队列已空：旧进程发完了切换前入队的全部事件，请求C++端导出状态
+     * <p>
+     * SaveState 排在所有事件之后，C++端的回复意味着这些事件都已处理完毕。
+     */
+    private void requestHandover(FrameEncoder encoder, OutputStream out) throws IOException {
+        CppProcess next = successor;
+        if (!handoverNegotiated || next == null || !next.handoverNegotiated) {
+            handover.complete(null);
+            return;
+        }
+        encoder.reset();
+        encoder.writeEvent(EventType.SAVE_STATE.getWireName(), new Object[0]);
+        writeBatch(encoder, out, 1);
+    }
+
+    /**
+     * 编码一个 tick 帧：Tick 帧头后紧跟该 tick 内的全部事件，没有事件的 tick 不发送
+     * <p>
+     * 帧内的事件在取出时已写入日志，这里只发送累积的序号标记。
+     */
+    private void writeTickFrame(FrameEncoder encoder, OutputStream out, long tick, List<QueuedEvent> events)
+            throws IOException {
+        if (events.isEmpty()) {
+            return;
+        }
+        encoder.reset();
+        encoder.writeEvent(EventType.TICK.getWireName(), new Object[]{tick, events.size()});
+        for (QueuedEvent msg : events) {
+            encoder.writeEvent(msg.eventName(), msg.args());
+        }
+        // 序号标记不属于 tick 帧，跟在帧之后
+        writeSeq(encoder, pendingSeq);
+        pendingSeq = 0;
+        writeBatch(encoder, out, events.size());
+        events.clear();
+    }
+
+    /**
+     * 需要记录的事件写入日志
+     *
+     * @return 本批最后一个日志序号，这个事件不需要记录时原样返回 lastSeq
+     */
+    private long journal(QueuedEvent msg, long lastSeq) {
+        QueuedEvent record = journaled(msg);
+        if (record == null) {
+            return lastSeq;
+        }
+        try {
+            return journal.append(record);
+        } catch (IOException e) {
+            journalNegotiated = false;
+            plugin.getLogger().warning(label + "写入事件日志失败，本进程不再记录: " + e.getMessage());
+            return lastSeq;
+        }
+    }
+
+    /**
+     * 需要记录的事件；裁决请求按原事件记录，重放时作为普通事件发送
+     */
+    private QueuedEvent journaled(QueuedEvent msg) {
+        if (!journalNegotiated || msg.isTickEnd()) {
+            return null;
+        }
+        Object[] args = msg.args();
+        if (EventType.REQUEST.getWireName().equals(msg.eventName())) {
+            if (args.length < 2 || !settings.getJournal().isJournaled(String.valueOf(args[1]))) {
+                return null;
+            }
+            return new QueuedEvent(String.valueOf(args[1]), Arrays.copyOfRange(args, 2, args.length));
+        }
+        return settings.getJournal().isJournaled(msg.eventName()) ? msg : null;
+    }
+
+    private static void writeSeq(FrameEncoder encoder, long seq) {
+        if (seq > 0) {
+            encoder.writeEvent(EventType.SEQ.getWireName(), new Object[]{seq});
+        }
+    }
+
+    /**
+     * 重放日志中未确认的事件，沿用原来的序号，不再写入日志；重放的事件同样消耗额度
+     */
+    private void replayJournal(FrameEncoder encoder, OutputStream out) throws IOException, InterruptedException {
+        replayPending = false;
+        if (!journalNegotiated) {
+            return;
+        }
+        long until = journal.getLastSeq();
+        long from = journal.getAcknowledged();
+        List<EventJournal.Entry> entries = new ArrayList<>(DRAIN_LIMIT);
+        int replayed = 0;
+        while (from < until) {
+            int max = awaitCredits(DRAIN_LIMIT);
+            if (max == 0 || journal.readAfter(from, until, max, entries) == 0) {
+                break;
+            }
+            CreditWindow window = credits;
+            if (window != null) {
+                window.consume(entries.size());
+            }
+            encoder.reset();
+            for (EventJournal.Entry entry : entries) {
+                encoder.writeEvent(entry.event().eventName(), entry.event().args());
+            }
+            from = entries.get(entries.size() - 1).seq();
+            writeSeq(encoder, from);
+            writeBatch(encoder, out, entries.size());
+            replayed += entries.size();
+            entries.clear();
+        }
+        if (replayed > 0) {
+            journal.recordReplayed(replayed);
+            plugin.getLogger().info(label + "已重放未确认的事件 " + replayed + " 条");
+        }
+    }
+
+    private void writeBatch(FrameEncoder encoder, OutputStream out, int eventCount) throws IOException {
+        int bytes = encoder.size();
+        encoder.writeTo(out);
+        out.flush();
+        writerStats.recordDrain(eventCount, bytes);
+        messageCounter.addAndGet(eventCount);
+    }
+
+    /**
+     * 停止进程：先停写出线程再发送 shutdown，最后等待进程退出
+     *
+     * @return 本进程收发的消息数
+     */
+    long stop() {
+        return stop(false);
+    }
+
+    /**
+     * @param keepQueued 崩溃后等待重启时为 true：队列中的事件保留，之后发来的事件继续排队，
+     *                   直到 {@link #handOff(CppProcess)} 交给替换的进程
+     */
+    long stop(boolean keepQueued) {
+        awaitingReplacement = keepQueued;
+        running.set(false);
+        tickFramesActive = false;
+        setLagging(false);
+        verdicts.clear();
+
+        // 先停止写出线程，shutdown 帧才不会与正在写出的批次交错，队列也只剩当前线程访问
+        stopWriter();
+        CppProcess next = successor;
+        if (next != null) {
+            // 交接期间晚到的事件交给接替的进程，不丢弃
+            transferQueued(next);
+        }
+        if (!keepQueued) {
+            lanes.clear();
+        }
+
+        OutputStream out = outputStream;
+        if (out != null) {
+            try {
+                FrameEncoder encoder = handshake.getNow(Handshake.FALLBACK).protocol().newEncoder();
+                encoder.writeEvent("shutdown", new Object[0]);
+                encoder.writeTo(out);
+                out.flush();
+            } catch (IOException e) {
+                // 进程已经退出时管道已关闭，不需要记录
+                if (process != null && process.isAlive()) {
+                    plugin.getLogger().warning(label + "Error sending shutdown message: " + e.getMessage());
+                }
+            } finally {
+                try {
+                    out.close();
+                } catch (IOException ignored) {}
+            }
+        }
+
+        if (transport != null && transport.getType() != TransportType.PIPE) {
+            closeTransport(transport);
+        }
+        releaseOfferedTransport();
+
+        if (process != null) {
+            gracefullyTerminateProcess();
+        }
+
+        if (readerThread != null && readerThread.isAlive()) {
+            readerThread.interrupt();
+        }
+        if (transportReaderThread != null && transportReaderThread.isAlive()) {
+            transportReaderThread.interrupt();
+        }
+
+        readerThread = null;
+        transportReaderThread = null;
+        writerThread = null;
+        outputStream = null;
+        transport = null;
+        process = null;
+        return messageCounter.getAndSet(0);
+    }
+
+    /**
+     * 按入队顺序把队列中的事件放入另一个进程的队列，调用时写出线程必须已停止
+     */
+    private void transferQueued(CppProcess next) {
+        List<QueuedEvent> leftover = new ArrayList<>();
+        while (lanes.drainTo(leftover, DRAIN_LIMIT) > 0) {
+            for (QueuedEvent event : leftover) {
+                next.offer(event);
+            }
+            leftover.clear();
+        }
+    }
+
+    /**
+     * 崩溃进程的替换已启动：先按顺序交出等待期间累积的事件，再让之后到达的事件直接转交
+     * <p>
+     * 设置转交后再取一次，接住切换瞬间入队的事件。
+     */
+    void handOff(CppProcess next) {
+        // 先置位，写出线程发送接过的事件前先重放写给本进程但未确认的事件
+        next.replayJournal();
+        transferQueued(next);
+        successor = next;
+        awaitingReplacement = false;
+        transferQueued(next);
+        lanes.clear();
+    }
+
+    /**
+     * 优雅地终止C++进程
+     */
+    private void gracefullyTerminateProcess() {
+        try {
+            // 退役的进程已收到 shutdown，先让它处理完管道中剩余的事件自行退出
+            if (retiring && process.waitFor(PROCESS_TERMINATION_TIMEOUT, TimeUnit.SECONDS)) {
+                return;
+            }
+            process.destroy();
+            if (!process.waitFor(PROCESS_TERMINATION_TIMEOUT, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                process.waitFor(FORCE_TERMINATION_TIMEOUT, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            plugin.getLogger().warning(label + "Interrupted while waiting for process to terminate: " + e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void stopWriter() {
+        Thread writer = writerThread;
+        if (writer == null || !writer.isAlive()) {
+            return;
+        }
+        writer.interrupt();
+        try {
+            writer.join(WRITER_JOIN_TIMEOUT_MS);
+            if (writer.isAlive()) {
+                plugin.getLogger().warning(label + "Event writer failed to terminate properly");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            plugin.getLogger().warning(label + "Event writer shutdown interrupted: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 插件名称，单进程模式下为程序文件名，多个分片时带 {@code #序号}
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 每个插件单独运行时的插件名称，单进程模式下为 null
+     */
+    String getPluginName() {
+        return pluginName;
+    }
+
+    /**
+     * 握手回复到达，或者C++端确认不回复（超时、退出）时完成
+     */
+    CompletableFuture<Void> whenReady() {
+        return ready;
+    }
+
+    /**
+     * 热替换切换后调用：不再接收新事件，发完队列中的事件后请求导出状态
+     *
+     * @param next 接替本进程的进程，插件已移除或分片数改变时为 null
+     */
+    void retire(CppProcess next) {
+        successor = next;
+        retiring = true;
+        if (writerThread == null || !writerThread.isAlive()) {
+            handover.complete(null);
+        }
+    }
+
+    /**
+     * 等待旧进程导出状态，超时或不支持时返回 null
+     */
+    String awaitHandover(long timeoutMs) throws InterruptedException {
+        try {
+            return handover.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            plugin.getLogger().warning(label + "等待C++插件交出状态超时，新进程不恢复状态");
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 放行新进程：先发送前任的状态，再写出交接期间累积的事件
+     */
+    void release(String state) {
+        released.complete(state);
+    }
+
+    /**
+     * 写出线程下一轮先重放日志中未确认的事件：启动、崩溃后接替和热替换时调用，备用进程待命期间不重放
+     */
+    void replayJournal() {
+        replayPending = journal != null;
+    }
+
+    /**
+     * C++端授予的发送额度，没有协商 credits 功能时为 null
+     */
+    public CreditWindow getCredits() {
+        return credits;
+    }
+
+    /**
+     * 额度用尽超过 stall-ms，C++端处理落后
+     */
+    public boolean isLagging() {
+        return lagging;
+    }
+
+    /**
+     * 本进程使用的事件日志，未开启时为 null
+     */
+    public EventJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * 分片序号，从 0 开始
+     */
+    public int getShard() {
+        return shard;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * 分区值属于本分片时返回 true
+     */
+    boolean ownsPartition(long partition) {
+        return ShardRouter.shardOf(partition, shardCount) == shard;
+    }
+
+    /**
+     * 日志前缀，单进程模式下为空
+     */
+    String getLabel() {
+        return label;
+    }
+
+    File getExecutable() {
+        return executable;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * 正在运行，或者崩溃后等待替换、事件仍在排队
+     */
+    boolean isAccepting() {
+        return running.get() || awaitingReplacement;
+    }
+
+    /**
+     * 本进程订阅的事件，null 表示全部
+     */
+    Set<String> getSubscribed() {
+        return subscribed;
+    }
+
+    public WriterStats getWriterStats() {
+        return writerStats;
+    }
+
+    public EventLanes getLanes() {
+        return lanes;
+    }
+
+    public int getQueueSize() {
+        return lanes.size();
+    }
+
+    public VerdictExchange getVerdicts() {
+        return verdicts;
+    }
+}
@@ -1,14 +1,34 @@
 package com.github.tranforcpp;
 
 import com.github.tranforcpp.compiler.CppCompiler;
-import com.github.tranforcpp.optimizer.SmartThreadOptimizer;
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import com.github.tranforcpp.ipc.EventAdmission;
+import com.github.tranforcpp.ipc.EventJournal;
+import com.github.tranforcpp.ipc.HandleRef;
+import com.github.tranforcpp.ipc.HandleRegistry;
+import com.github.tranforcpp.ipc.InboundExecutor;
+import com.github.tranforcpp.ipc.InboundMessage;
+import com.github.tranforcpp.ipc.InboundMessage.Field;
+import com.github.tranforcpp.ipc.IpcSettings;
+import com.github.tranforcpp.ipc.JournalSettings;
+import com.github.tranforcpp.ipc.QueuedEvent;
+import com.github.tranforcpp.ipc.Verdict;
+import com.github.tranforcpp.listener.EventSubscriptions;
+import com.github.tranforcpp.listener.GenericEventDispatcher;
+import com.github.tranforcpp.listener.PlayerMoveConflator;
+import com.github.tranforcpp.query.QueryService;
+import com.github.tranforcpp.query.QueryType;
+import com.github.tranforcpp.utils.ComponentCache;
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
+import net.kyori.adventure.audience.Audience;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.HandlerList;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.block.BlockIgniteEvent;
@@ -25,12 +45,14 @@ import org.bukkit.event.player.*;
 import org.bukkit.event.server.ServerCommandEvent;
 import org.bukkit.event.weather.WeatherChangeEvent;
 import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.util.Vector;
 import java.io.*;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 
 /**
  * 进程管理器
@@ -39,353 +61,568 @@ import java.util.concurrent.atomic.AtomicLong;
  * 实现了Bukkit事件监听器，用于捕获游戏事件并转发给C++插件。
  * <p>
  * 主要功能：
- * - 启动和管理C++进程
- * - 处理进程间通信
- * - 批量事件处理优化
+ * - 启动和管理C++进程（单进程，或每个插件一个 {@link CppProcess}）
+ * - 按各进程的订阅分发事件
+ * - 处理C++插件发来的动作
  * - 智能资源管理
  */
-public class ProcessManager implements Listener {
+public final class ProcessManager implements Listener {
 
     private final TranforCPlusPlus plugin;
-    private Process process;
-    private BufferedReader inputReader;
-    private BufferedWriter outputWriter;
-    private final Gson gson = new Gson();
-    private final BlockingQueue<JsonObject> messageQueue = new ArrayBlockingQueue<>(MAX_QUEUE_SIZE);
+    private volatile GenericEventDispatcher dispatcher;
+    private volatile IpcSettings settings;
+    private volatile ProcessSettings processSettings;
+    private volatile List<CppProcess> processes = List.of();
+    private volatile File cppDir;
+    // 有插件运行多个分片时才计算分区值，否则为 null
+    private volatile ShardRouter router;
+    private final EventSubscriptions subscriptions;
+    private final HandleRegistry handles = new HandleRegistry();
+    private final ProcessSupervisor supervisor;
+    // 按进程名称，重启、备用和热替换前后的同名进程共用
+    private final Map<String, EventJournal> journals = new ConcurrentHashMap<>();
+    private volatile PlayerMoveConflator moveConflator;
+    private volatile EventAdmission admission = new EventAdmission(Map.of());
+    private volatile QueryService queries;
+    private volatile InboundExecutor actions;
     private final AtomicBoolean running = new AtomicBoolean(false);
-    private final AtomicLong messageCounter = new AtomicLong(0);
-    private volatile Thread readerThread;
-    private volatile ExecutorService senderExecutor;
-    private final AtomicInteger activeSenders = new AtomicInteger(0);
+    private final AtomicBoolean swapping = new AtomicBoolean(false);
+    private final AtomicLong malformedMessages = new AtomicLong(0);
     private final MiniMessage miniMessageInstance;
+    private volatile ComponentCache components;
 
-    private static final int MAX_QUEUE_SIZE = 2000;
-    private static final int CORE_SENDER_THREADS = 2;
-    private static final int FLUSH_THRESHOLD = 20;
-    private static final int PROCESS_TERMINATION_TIMEOUT = 3;
-    private static final int FORCE_TERMINATION_TIMEOUT = 1;
     private static final long RESTART_DELAY_MS = 100;
+    // 新进程就绪的等待时间在握手超时之外的余量，包括进程启动本身
+    private static final long READY_MARGIN_MS = 2000;
 
     public ProcessManager(TranforCPlusPlus plugin) {
         this.plugin = plugin;
         this.miniMessageInstance = MiniMessage.miniMessage();
+        this.components = new ComponentCache(miniMessageInstance, 0);
+        this.subscriptions = new EventSubscriptions(plugin);
+        this.supervisor = new ProcessSupervisor(this, plugin);
+        bindEvents();
+    }
 
+    /**
+     * 绑定可转发给C++的事件，实际注册由订阅决定
+     */
+    private void bindEvents() {
+        subscriptions.bind("PlayerJoin", PlayerJoinEvent.class, this::onPlayerJoin);
+        subscriptions.bind("PlayerQuit", PlayerQuitEvent.class, this::onPlayerQuit);
+        subscriptions.bind("BlockBreak", BlockBreakEvent.class, this::onBlockBreak);
+        subscriptions.bind("BlockPlace", BlockPlaceEvent.class, this::onBlockPlace);
+        subscriptions.bind("EntityDamage", EntityDamageEvent.class, this::onEntityDamage);
+        subscriptions.bind("EntityDeath", EntityDeathEvent.class, this::onEntityDeath);
+        subscriptions.bind("PlayerDeath", org.bukkit.event.entity.PlayerDeathEvent.class, this::onPlayerDeath);
+        subscriptions.bind("InventoryClick", InventoryClickEvent.class, this::onInventoryClick);
+        subscriptions.bind("InventoryOpen", InventoryOpenEvent.class, this::onInventoryOpen);
+        subscriptions.bind("InventoryClose", InventoryCloseEvent.class, this::onInventoryClose);
+        subscriptions.bind("PlayerMove", PlayerMoveEvent.class, this::onPlayerMove);
+        subscriptions.bind("PlayerRespawn", PlayerRespawnEvent.class, this::onPlayerRespawn);
+        subscriptions.bind("BlockIgnite", BlockIgniteEvent.class, this::onBlockIgnite);
+        subscriptions.bind("EntitySpawn", EntitySpawnEvent.class, this::onEntitySpawn);
+        subscriptions.bind("PlayerInteract", PlayerInteractEvent.class, this::onPlayerInteract);
+        subscriptions.bind("PlayerDropItem", PlayerDropItemEvent.class, this::onPlayerDropItem);
+        subscriptions.bind("PlayerPickupItem", EntityPickupItemEvent.class, this::onEntityPickupItem);
+        subscriptions.bind("ServerCommand", ServerCommandEvent.class, this::onServerCommand);
+        subscriptions.bind("WorldLoad", WorldLoadEvent.class, this::onWorldLoad);
+        subscriptions.bind("WeatherChange", WeatherChangeEvent.class, this::onWeatherChange);
+        subscriptions.bind("HangingBreak", HangingBreakEvent.class, this::onHangingBreak);
     }
 
     public void start() {
-        try {
-
-            Bukkit.getPluginManager().registerEvents(this, plugin);
-            
-            File cppDir = new File(plugin.getDataFolder().getParentFile(), "C++ Plugins");
-            if (!cppDir.exists()) {
-                if (!cppDir.mkdirs()) {
-                    plugin.getLogger().severe("Failed to create C++ Plugins directory: " + cppDir.getAbsolutePath());
-                }
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+        settings = IpcSettings.load(plugin.getConfig(), plugin.getLogger());
+        processSettings = ProcessSettings.load(plugin.getConfig(), plugin.getLogger());
+        admission = new EventAdmission(settings.getRateLimits());
+        queries = new QueryService(plugin, handles, settings.getQueryCacheTtlMs());
+        queries.start();
+        actions = new InboundExecutor(plugin, settings.getInbound());
+        components = new ComponentCache(miniMessageInstance, settings.getInbound().messageCacheSize());
+        actions.start();
+        dispatcher = new GenericEventDispatcher(plugin, settings.getGenericEvents());
+        dispatcher.start();
+        subscriptions.setTimingEnabled(settings.isHandlerTiming());
+        moveConflator = new PlayerMoveConflator(this::sendMove, handles, settings.getMoveMinDistance(), settings.getMoveRotationThreshold());
+        // 先注册全部事件，C++端在握手中声明订阅后再收窄，旧版C++插件不回复握手时行为不变
+        subscriptions.subscribeAll();
+
+        File dir = new File(plugin.getDataFolder().getParentFile(), "C++ Plugins");
+        if (!dir.exists()) {
+            if (!dir.mkdirs()) {
+                plugin.getLogger().severe("Failed to create C++ Plugins directory: " + dir.getAbsolutePath());
             }
+        }
+        cppDir = dir;
 
-            CppCompiler compiler = new CppCompiler();
-            File executable = compiler.compile(cppDir);
-
-            if (executable == null) {
-                return;
-            }
-
-            ProcessBuilder pb = new ProcessBuilder(executable.getAbsolutePath());
-            pb.redirectErrorStream(true);
-            process = pb.start();
-
-            inputReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            outputWriter = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
+        Map<String, File> executables = compile(processSettings, null);
+        if (executables.isEmpty()) {
+            return;
+        }
 
-            readerThread = new Thread(this::readMessages, "TranforC++-Reader");
-            readerThread.setDaemon(true);
-            readerThread.setPriority(Thread.NORM_PRIORITY);
-            readerThread.start();
+        boolean sharded = isSharded(executables, processSettings);
+        router = sharded ? new ShardRouter(processSettings.getShardKey()) : null;
 
-            initializeSenderExecutor();
+        running.set(true);
+        supervisor.start();
+        List<CppProcess> started = launch(executables, settings, processSettings, false);
+        for (CppProcess process : started) {
+            // 上次运行（包括服务器崩溃）留下的未确认事件
+            process.replayJournal();
+        }
+        synchronized (this) {
+            processes = List.copyOf(started);
+        }
+        if (started.isEmpty()) {
+            running.set(false);
+            supervisor.stop();
+            return;
+        }
+        supervisor.watch(started);
+        plugin.getLogger().info(started.size() > 1
+            ? "已启动 " + started.size() + " 个C++插件进程"
+                + (sharded ? "，按 " + processSettings.getShardKey().getConfigName() + " 分区" : "")
+            : "C++ plugin process started with performance optimizations");
+    }
 
-            running.set(true);
-            plugin.getLogger().info("C++ plugin process started with performance optimizations");
+    /**
+     * 编译C++插件
+     *
+     * @param outputDir 程序的输出目录，null 表示默认位置
+     * @return 插件名称到程序的映射，单进程模式下名称为 null
+     */
+    private Map<String, File> compile(ProcessSettings config, File outputDir) {
+        CppCompiler compiler = new CppCompiler();
+        if (config.getMode() == ProcessMode.PER_PLUGIN) {
+            return outputDir != null ? compiler.compilePlugins(cppDir, outputDir) : compiler.compilePlugins(cppDir);
+        }
+        File executable = outputDir != null ? compiler.compile(cppDir, outputDir) : compiler.compile(cppDir);
+        Map<String, File> executables = new LinkedHashMap<>();
+        if (executable != null) {
+            // 单进程模式没有插件名称，日志不加前缀
+            executables.put(null, executable);
+        }
+        return executables;
+    }
 
-        } catch (IOException e) {
-            plugin.getLogger().severe("Failed to start C++ process: " + e.getMessage());
-            plugin.getLogger().severe("Exception: " + e);
+    private static boolean isSharded(Map<String, File> executables, ProcessSettings config) {
+        for (String name : executables.keySet()) {
+            if (config.getShards(name) > 1) {
+                return true;
+            }
         }
+        return false;
     }
 
-    private void readMessages() {
-        try {
-            String line;
-            while (running.get() && (line = inputReader.readLine()) != null) {
-                try {
-                    JsonObject json = gson.fromJson(line, JsonObject.class);
-                    if (json != null) {
-                        handleCppMessage(json);
-                        messageCounter.incrementAndGet();
-                    }
-                } catch (Exception e) {
-                    plugin.getLogger().warning("Failed to parse C++ message: " + line);
-                    // 继续处理后续消息
+    /**
+     * 为每个插件启动配置数量的分片，启动失败的进程不在返回的列表中
+     */
+    private List<CppProcess> launch(Map<String, File> executables, IpcSettings ipc, ProcessSettings config,
+                                    boolean held) {
+        List<CppProcess> started = new ArrayList<>();
+        for (Map.Entry<String, File> entry : executables.entrySet()) {
+            int shards = config.getShards(entry.getKey());
+            for (int shard = 0; shard < shards; shard++) {
+                CppProcess process = startProcess(ipc, entry.getKey(), shard, shards, entry.getValue(), held);
+                if (process != null) {
+                    started.add(process);
                 }
             }
-        } catch (IOException e) {
-            if (running.get() && process != null && process.isAlive()) {
-                plugin.getLogger().severe("Error reading from C++ process: " + e.getMessage());
-            }
-            // 正常的连接断开不需要记录错误
         }
+        return started;
     }
-    
-    private void handleExecuteCommand(JsonObject json) {
+
+    /**
+     * 启动一个C++进程，失败时返回 null
+     *
+     * @param name 插件名称，单进程模式下为 null
+     * @param held 热替换时为 true，由前任交接完成后放行
+     */
+    private CppProcess startProcess(IpcSettings ipc, String name, int shard, int shards, File executable, boolean held) {
+        Path dataDir = plugin.getDataFolder().toPath();
+        CppProcess process = new CppProcess(this, plugin, ipc, name, shard, shards, executable, cppDir, dataDir, held);
         try {
-            String command = json.get("command").getAsString();
-            if (command != null && !command.trim().isEmpty()) {
-                Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
-            }
-        } catch (Exception e) {
-            plugin.getLogger().warning("执行命令失败: " + e.getMessage());
+            process.start();
+            return process;
+        } catch (IOException e) {
+            process.stop();
+            plugin.getLogger().severe(process.getLabel() + "Failed to start C++ process: " + e.getMessage());
+            plugin.getLogger().severe("Exception: " + e);
+            return null;
         }
     }
 
-    private ExecutorService createSmartThreadPoolAdapter() {
-        return new AbstractExecutorService() {
-            private final ExecutorService delegate = Executors.newFixedThreadPool(
-                CORE_SENDER_THREADS,
-                r -> {
-                    Thread t = new Thread(r, "TranforC++-SmartSender-" + activeSenders.incrementAndGet());
-                    t.setDaemon(true);
-                    t.setPriority(Thread.NORM_PRIORITY - 1);
-                    return t;
-                }
-            );
-            
-            @Override
-            public void execute(Runnable command) {
-                SmartThreadOptimizer optimizer = plugin.getThreadOptimizer();
-                if (optimizer != null) {
-                    optimizer.submitTask(command);
-                } else {
-                    delegate.execute(command);
-                }
-            }
-            
-            // 委托所有ExecutorService方法到实际的线程池
-            @Override public void shutdown() { delegate.shutdown(); }
-            @Override public List<Runnable> shutdownNow() { return delegate.shutdownNow(); }
-            @Override public boolean isShutdown() { return delegate.isShutdown(); }
-            @Override public boolean isTerminated() { return delegate.isTerminated(); }
-            @Override public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException { 
-                return delegate.awaitTermination(timeout, unit); 
-            }
-            @Override public <T> Future<T> submit(Callable<T> task) { return delegate.submit(task); }
-            @Override public <T> Future<T> submit(Runnable task, T result) { return delegate.submit(task, result); }
-            @Override public Future<?> submit(Runnable task) { return delegate.submit(task); }
-            @Override public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException { 
-                return delegate.invokeAll(tasks); 
-            }
-            @Override public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException { 
-                return delegate.invokeAll(tasks, timeout, unit); 
-            }
-            @Override public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException { 
-                return delegate.invokeAny(tasks); 
-            }
-            @Override public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException { 
-                return delegate.invokeAny(tasks, timeout, unit); 
+    /**
+     * 同名进程共用的事件日志，未开启或打开失败时返回 null
+     */
+    EventJournal journalFor(String processName, String label, JournalSettings config) {
+        if (!config.enabled()) {
+            return null;
+        }
+        return journals.computeIfAbsent(processName, name -> {
+            Path dir = plugin.getDataFolder().toPath().resolve("journal").resolve(name);
+            try {
+                return EventJournal.open(dir, config, plugin.getLogger(), label);
+            } catch (IOException e) {
+                plugin.getLogger().warning(label + "无法打开事件日志 " + dir + ": " + e.getMessage());
+                return null;
             }
-        };
+        });
     }
 
-    private void initializeSenderExecutor() {
+    /**
+     * C++进程意外退出（崩溃或自行结束），由进程的退出回调调用，重启由 {@link ProcessSupervisor} 安排
+     */
+    void onProcessExit(CppProcess exited, int exitCode) {
+        supervisor.onExit(exited, exitCode);
+    }
 
-        senderExecutor = createSmartThreadPoolAdapter();
-        
-        // 初始化消息发送工作者线程
-        for (int i = 0; i < CORE_SENDER_THREADS; i++) {
-            senderExecutor.submit(this::sendMessagesWorker);
+    /**
+     * 用同一个程序启动一个插件和分片都相同的进程（替换或备用），失败时返回 null
+     */
+    CppProcess startLike(CppProcess template) {
+        return startProcess(settings, template.getPluginName(), template.getShard(), template.getShardCount(),
+            template.getExecutable(), false);
+    }
+
+    /**
+     * 换下已退出的进程，替换的进程接过排队中的事件，其他进程不受影响
+     *
+     * @return 已退出的进程不在列表中（已重载或停止）时返回 false
+     */
+    synchronized boolean replaceProcess(CppProcess exited, CppProcess replacement) {
+        if (!running.get() || !processes.contains(exited)) {
+            return false;
         }
+        exited.handOff(replacement);
+        List<CppProcess> updated = new ArrayList<>(processes);
+        updated.set(updated.indexOf(exited), replacement);
+        processes = List.copyOf(updated);
+        refreshSubscriptions();
+        return true;
     }
-    
-    private void sendMessagesWorker() {
-        try {
-            while (running.get() && process != null && process.isAlive()) {
-                JsonObject msg = messageQueue.poll(50, TimeUnit.MILLISECONDS);
-                if (msg != null) {
-                    outputWriter.write(gson.toJson(msg));
-                    outputWriter.newLine();
-                    // 当队列较小时立即刷新以减少延迟
-                    if (messageQueue.size() < FLUSH_THRESHOLD) {
-                        outputWriter.flush();
-                    }
-                    messageCounter.incrementAndGet();
-                }
+
+    /**
+     * 按所有进程订阅的并集注册监听，任一进程未声明订阅时注册全部事件
+     */
+    synchronized void refreshSubscriptions() {
+        if (!running.get()) {
+            return;
+        }
+        Set<String> union = new HashSet<>();
+        for (CppProcess process : processes) {
+            // 崩溃后等待重启的进程保留订阅，重启期间的事件继续排队
+            if (!process.isAccepting()) {
+                continue;
             }
-        } catch (InterruptedException e) {
-            // 线程被中断是正常的关闭过程
-            Thread.currentThread().interrupt();
-        } catch (IOException e) {
-            if (running.get()) {
-                plugin.getLogger().warning("Error in message sender worker: " + e.getMessage());
+            Set<String> subscribed = process.getSubscribed();
+            if (subscribed == null) {
+                subscriptions.subscribeAll();
+                return;
             }
+            union.addAll(subscribed);
         }
+        subscriptions.retain(union);
     }
 
-    private void handleCppMessage(JsonObject json) {
-        try {
-            String action = json.get("action").getAsString();
-            
-            switch (action) {
-                case "broadcast":
-                    handleBroadcast(json);
-                    break;
-                case "sendMessage":
-                    handlePrivateMessage(json);
-                    break;
-                case "console":
-                    plugin.getLogger().info(json.get("message").getAsString());
-                    break;
-                case "executeCommand":
-                    handleExecuteCommand(json);
-                    break;
-                default:
-                    plugin.getLogger().warning("Unknown action: " + action);
-                    break;
-            }
-        } catch (Exception e) {
-            plugin.getLogger().warning("Error handling C++ message: " + e.getMessage());
+    public EventAdmission getAdmission() {
+        return admission;
+    }
+
+    public PlayerMoveConflator getMoveConflator() {
+        return moveConflator;
+    }
+
+    public Set<String> getSubscribedEvents() {
+        return subscriptions.getSubscribed();
+    }
+
+    /**
+     * 需要访问服务器状态或共享服务的动作，握手、订阅和裁决回复由 {@link CppProcess} 自己处理
+     *
+     * @param source 发来动作的进程，查询结果发回给它
+     */
+    void handleAction(CppProcess source, String action, InboundMessage message, String line) {
+        switch (action) {
+            case "broadcast":
+                handleBroadcast(message);
+                break;
+            case "sendMessage":
+                handlePrivateMessage(message);
+                break;
+            case "console":
+                plugin.getLogger().info(source.getLabel() + message.getString(Field.MESSAGE));
+                break;
+            case "executeCommand":
+            case "dispatchCommand":
+                handleExecuteCommand(message);
+                break;
+            case "query":
+                handleQuery(source, message);
+                break;
+            default:
+                recordMalformed(line, "未知的 action: " + action);
+                break;
         }
     }
-    
-    private void handleBroadcast(JsonObject json) {
-        try {
-            Component broadcastMessage = miniMessageInstance.deserialize(json.get("message").getAsString());
-            Player[] players = Bukkit.getOnlinePlayers().toArray(new Player[0]);
-            for (Player player : players) {
-                player.sendMessage(broadcastMessage);
-            }
-        } catch (Exception e) {
-            plugin.getLogger().warning("Error broadcasting message: " + e.getMessage());
+
+    /**
+     * 无法处理的消息只计数，第一条记录日志，之后在 /tranforcpp stats 中查看数量
+     */
+    void recordMalformed(String line, String reason) {
+        if (malformedMessages.incrementAndGet() == 1) {
+            plugin.getLogger().warning("无法处理C++消息 (" + reason + "): " + line + "，之后的同类消息只计数");
         }
     }
-    
-    private void handlePrivateMessage(JsonObject json) {
-        try {
-            String playerName = json.get("player").getAsString();
-            Player player = Bukkit.getPlayerExact(playerName);
-            if (player != null && player.isOnline()) {
-                Component privateMessage = miniMessageInstance.deserialize(json.get("message").getAsString());
-                player.sendMessage(privateMessage);
+
+    /**
+     * 格式错误、缺少字段或 action 未知而被忽略的C++消息数
+     */
+    public long getMalformedMessages() {
+        return malformedMessages.get();
+    }
+
+    private void handleExecuteCommand(InboundMessage message) {
+        String command = message.getString(Field.COMMAND);
+        if (command == null || command.trim().isEmpty()) {
+            return;
+        }
+        actions.submit("executeCommand", () -> {
+            try {
+                Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+            } catch (Exception e) {
+                plugin.getLogger().warning("执行命令失败: " + e.getMessage());
             }
-        } catch (Exception e) {
-            plugin.getLogger().warning("Error sending private message: " + e.getMessage());
+        });
+    }
+
+    private void handleQuery(CppProcess source, InboundMessage message) {
+        QueryType type = QueryType.fromName(message.getString(Field.TYPE, null));
+        String target = null;
+        if (message.has(Field.HANDLE)) {
+            HandleRef ref = handles.resolve(message.getInt(Field.HANDLE));
+            target = ref != null ? ref.getName() : null;
+        } else if (message.has(Field.PLAYER)) {
+            target = message.getString(Field.PLAYER);
         }
+        queries.submit(message.getLong(Field.ID), type, target, source::offer);
     }
 
-    private final Queue<JsonObject> batchBuffer = new LinkedList<>();
-    private static final int BATCH_SIZE = 30;
-    private static final long BATCH_TIMEOUT_MS = 50;
-    private static final int MAX_BATCH_PROCESSING_TIME = 5;
-    private static final double QUEUE_SPACE_THRESHOLD = 0.8;
-    private volatile long lastBatchTime = System.currentTimeMillis();
+    private void handleBroadcast(InboundMessage message) {
+        // MiniMessage 解析不依赖服务器状态，在读取线程完成，服务器线程上只做发送
+        Component broadcastMessage = components.deserialize(message.getString(Field.MESSAGE));
+        actions.submit("broadcast", () -> {
+            try {
+                // 作为一个 Audience 发送，不复制在线玩家列表
+                Audience.audience(Bukkit.getOnlinePlayers()).sendMessage(broadcastMessage);
+            } catch (Exception e) {
+                plugin.getLogger().warning("Error broadcasting message: " + e.getMessage());
+            }
+        });
+    }
     
+    private void handlePrivateMessage(InboundMessage message) {
+        // 协商了句柄的C++插件按句柄指定玩家，直接按 UUID 查找
+        int handle = message.has(Field.HANDLE) ? message.getInt(Field.HANDLE) : -1;
+        String name = handle < 0 ? message.getString(Field.PLAYER) : null;
+        Component privateMessage = components.deserialize(message.getString(Field.MESSAGE));
+        actions.submit("sendMessage", () -> {
+            try {
+                Player player = handle >= 0 ? handles.resolvePlayer(handle) : Bukkit.getPlayerExact(name);
+                if (player != null && player.isOnline()) {
+                    player.sendMessage(privateMessage);
+                }
+            } catch (Exception e) {
+                plugin.getLogger().warning("Error sending private message: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 把事件放入订阅了它的每个进程的发送队列
+     * <p>
+     * 可能同时被多个区域线程调用（Folia），入队不加锁，由各进程的写出线程统一批量编码发送。
+     * 事件按名称进入 critical 或 bulk 通道，通道已满时按配置的溢出策略处理。
+     * 没有分区键的事件在多个分片时只发给第一个分片，全局事件发给每个分片。
+     */
     public void sendEvent(String eventName, Object... args) {
+        sendEvent(0, eventName, args);
+    }
+
+    /**
+     * 按分区值发送，运行多个分片的插件只由分区值对应的分片接收
+     */
+    private void sendEvent(long partition, String eventName, Object... args) {
         if (!running.get()) {
             return;
         }
 
-        if (messageQueue.size() > MAX_QUEUE_SIZE) {
-            plugin.getLogger().warning("消息队列已满，丢弃事件: " + eventName);
+        if (!admission.admit(eventName, args)) {
             return;
         }
-        
+
         try {
-            JsonObject json = new JsonObject();
-            json.addProperty("event", eventName);
-            
-            com.google.gson.JsonArray argsArray = new com.google.gson.JsonArray();
-            for (Object arg : args) {
-                argsArray.add(arg != null ? arg.toString() : "null");
-            }
-            json.add("args", argsArray);
-            
-            synchronized (batchBuffer) {
-                batchBuffer.offer(json);
-                // 批处理触发条件：达到批次大小或超时
-                if (batchBuffer.size() >= BATCH_SIZE || 
-                    System.currentTimeMillis() - lastBatchTime > BATCH_TIMEOUT_MS) {
-                    flushBatch();
+            QueuedEvent event = new QueuedEvent(eventName, args);
+            boolean global = processSettings.isGlobalEvent(eventName);
+            boolean accepted = false;
+            for (CppProcess process : processes) {
+                if ((global || process.ownsPartition(partition)) && process.wantsEvent(eventName) && process.offer(event)) {
+                    accepted = true;
                 }
             }
+            if (!accepted) {
+                return;
+            }
 
-            dispatchToOtherPluginsSync(eventName, args);
+            dispatcher.dispatch(eventName, args);
             
         } catch (Exception e) {
             plugin.getLogger().warning("Error sending event " + eventName + ": " + e.getMessage());
         }
     }
     
-    private void flushBatch() {
-        if (batchBuffer.isEmpty()) return;
-        
-        long startTime = System.nanoTime();
-        List<JsonObject> batch = new ArrayList<>(Math.min(batchBuffer.size(), BATCH_SIZE));
-        JsonObject msg;
-        int processed = 0;
-        
-        // 构建批处理消息
-        while (processed < BATCH_SIZE && (msg = batchBuffer.poll()) != null) {
-            batch.add(msg);
-            processed++;
-            
-            // 防止批处理时间过长影响性能
-            if ((System.nanoTime() - startTime) / 1_000_000 > MAX_BATCH_PROCESSING_TIME) {
+    /**
+     * 发送可取消事件，有C++进程声明了需要裁决时在当前线程依次等待各进程的回复
+     * <p>
+     * 运行多个分片的插件只向分区值对应的分片请求裁决。
+     *
+     * @return 合并后的裁决，没有进程请求裁决时返回 null
+     */
+    private Verdict requestVerdict(long partition, String eventName, Object... args) {
+        List<CppProcess> current = processes;
+        boolean requested = false;
+        for (CppProcess process : current) {
+            if (process.ownsPartition(partition) && process.isVerdictRequested(eventName)) {
+                requested = true;
                 break;
             }
         }
-        
-        if (!batch.isEmpty()) {
-            // 检查队列空间，避免阻塞
-            boolean queueHasSpace = messageQueue.size() < (MAX_QUEUE_SIZE * QUEUE_SPACE_THRESHOLD);
-            if (queueHasSpace) {
-                messageQueue.addAll(batch);
-                synchronized (messageQueue) {
-                    messageQueue.notify();
+        if (!running.get() || !requested) {
+            sendEvent(partition, eventName, args);
+            return null;
+        }
+        // 请求必须送达，不经过采样和限速
+        dispatcher.dispatch(eventName, args);
+        Verdict combined = Verdict.ALLOW;
+        QueuedEvent event = null;
+        for (CppProcess process : current) {
+            if (!process.ownsPartition(partition)) {
+                continue;
+            }
+            if (process.isVerdictRequested(eventName)) {
+                combined = combined.merge(process.requestVerdict(eventName, args));
+            } else if (process.wantsEvent(eventName)) {
+                if (event == null) {
+                    event = new QueuedEvent(eventName, args);
                 }
-            } else {
-                plugin.getLogger().warning("消息队列接近容量上限，跳过本次批处理");
+                process.offer(event);
             }
         }
-        
-        lastBatchTime = System.currentTimeMillis();
+        return combined;
     }
-    
-    private void dispatchToOtherPluginsSync(String eventName, Object... args) {
-        try {
-            org.bukkit.event.Event customEvent = createCustomEvent(eventName, args);
-            Bukkit.getPluginManager().callEvent(customEvent);
-        } catch (Exception e) {
-            plugin.getLogger().warning("事件分发失败: " + e.getMessage());
+
+    /**
+     * 合并后的 PlayerMove，参数依次为玩家、世界、起点和终点坐标
+     */
+    private void sendMove(String eventName, Object[] args) {
+        ShardRouter current = router;
+        long partition = 0;
+        if (current != null && args[0] instanceof HandleRef player && args[1] instanceof HandleRef world) {
+            partition = current.partition((UUID) player.getKey(), (UUID) world.getKey(),
+                (int) Math.floor((Double) args[5]), (int) Math.floor((Double) args[7]));
         }
+        sendEvent(partition, eventName, args);
     }
-    
-    private org.bukkit.event.Event createCustomEvent(String eventName, Object... args) {
-        return new GenericTranforCEvent(eventName, args);
+
+    private long partition(Entity subject) {
+        ShardRouter current = router;
+        return current != null ? current.partition(subject) : 0;
     }
-    
+
+    private long partition(Entity subject, Block block) {
+        ShardRouter current = router;
+        return current != null ? current.partition(subject, block) : 0;
+    }
+
+    /**
+     * 事件因某个进程的通道已满被丢弃
+     */
+    void onEventDropped(CppProcess process, QueuedEvent event) {
+        admission.recordOverflow(event.eventName());
+        plugin.getLogger().warning(process.getLabel() + "消息队列已满，丢弃事件: " + event.eventName());
+    }
+
+    /**
+     * 事件因某个进程处理落后在入队前被丢弃，只计数不逐条记录，落后时写出线程已记录警告
+     */
+    void onEventShed(CppProcess process, QueuedEvent event) {
+        admission.recordLagging(event.eventName());
+    }
+
+    /**
+     * 正在运行的C++进程，单进程模式下最多一个
+     */
+    ProcessSettings getProcessSettings() {
+        return processSettings;
+    }
+
+    public ProcessSupervisor getSupervisor() {
+        return supervisor;
+    }
+
+    public List<CppProcess> getProcesses() {
+        return processes;
+    }
+
+    public GenericEventDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public EventSubscriptions getSubscriptions() {
+        return subscriptions;
+    }
+
+    public QueryService getQueries() {
+        return queries;
+    }
+
+    public ComponentCache getComponents() {
+        return components;
+    }
+
+    public InboundExecutor getActions() {
+        return actions;
+    }
+
     public static class GenericTranforCEvent extends org.bukkit.event.Event {
         private static final org.bukkit.event.HandlerList handlers = new org.bukkit.event.HandlerList();
         private final String eventName;
         private final Object[] args;
         public GenericTranforCEvent(String eventName, Object... args) {
-            super(false);
+            this(false, eventName, args);
+        }
+
+        /**
+         * @param async 为 true 时由分发线程调用（ipc.generic-events: async）
+         */
+        public GenericTranforCEvent(boolean async, String eventName, Object... args) {
+            super(async);
             this.eventName = eventName;
             this.args = args;
         }
         
         public String getEventName() { return eventName; }
 
+        /**
+         * 玩家、世界、方块和实体类型参数以名称返回
+         */
         public Object getArg(int index) {
-            return index >= 0 && index < args.length ? args[index] : null;
+            if (index < 0 || index >= args.length) {
+                return null;
+            }
+            Object arg = args[index];
+            return arg instanceof HandleRef ref ? ref.getName() : arg;
         }
 
         public int getArgCount() { return args.length; }
@@ -393,47 +630,237 @@ public class ProcessManager implements Listener {
         @Override
         public org.bukkit.event.HandlerList getHandlers() { return handlers; }
 
+        // Bukkit 注册监听时通过反射查找这个静态方法
+        public static org.bukkit.event.HandlerList getHandlerList() { return handlers; }
 
+        /**
+         * 是否有插件监听，没有时无需创建和分发事件
+         */
+        public static boolean hasListeners() { return handlers.getRegisteredListeners().length > 0; }
     }
     
     public void stop() {
         running.set(false);
+        supervisor.stop();
+        subscriptions.unsubscribeAll();
+        HandlerList.unregisterAll(this);
+        if (moveConflator != null) {
+            moveConflator.clear();
+        }
 
-        messageQueue.clear();
-        
-        if (outputWriter != null) {
+        List<CppProcess> stopping;
+        synchronized (this) {
+            stopping = processes;
+            processes = List.of();
+        }
+        long messages = 0;
+        for (CppProcess process : stopping) {
+            messages += process.stop();
+        }
+        for (EventJournal journal : journals.values()) {
+            journal.close();
+        }
+        journals.clear();
+
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+        if (queries != null) {
+            queries.stop();
+        }
+        if (actions != null) {
+            actions.stop();
+        }
+
+        plugin.getLogger().info("ProcessManager stopped. Messages processed: " + messages);
+    }
+
+    /**
+     * 重载C++插件
+     * <p>
+     * 已有进程在运行且开启了 {@code processes.hot-swap} 时，编译、启动新进程和交接都在后台线程完成，
+     * 服务器线程不等待；否则停止全部进程后重新启动。
+     *
+     * @return 完成后为 true；热替换失败（编译失败、新进程未就绪）并继续使用原有进程时为 false
+     */
+    public CompletableFuture<Boolean> reload() {
+        ProcessSettings next = ProcessSettings.load(plugin.getConfig(), plugin.getLogger());
+        if (!running.get() || processes.isEmpty() || !next.isHotSwap()) {
+            restart();
+            return CompletableFuture.completedFuture(true);
+        }
+        if (!swapping.compareAndSet(false, true)) {
+            plugin.getLogger().warning("上一次重载尚未完成");
+            return CompletableFuture.completedFuture(false);
+        }
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        Thread reloader = new Thread(() -> {
             try {
-                outputWriter.write("{\"event\":\"shutdown\"}\n");
-                outputWriter.flush();
-            } catch (IOException e) {
-                plugin.getLogger().warning("Error sending shutdown message: " + e.getMessage());
+                result.complete(hotSwap(next));
+            } catch (Throwable t) {
+                plugin.getLogger().log(Level.SEVERE, "热替换C++插件失败", t);
+                result.complete(false);
             } finally {
-                try {
-                    outputWriter.close();
-                } catch (IOException ignored) {}
+                swapping.set(false);
             }
+        }, "TranforC++-Reload");
+        reloader.setDaemon(true);
+        reloader.start();
+        return result;
+    }
+
+    /**
+     * 蓝绿替换
+     * <p>
+     * 1. 编译到与运行中程序不同的目录，启动新进程，等待握手完成；任何一步失败，或某个仍有源码的插件
+     *    没有新进程接替时，都保留旧进程
+     * 2. 在锁内原子地换上新进程列表，之后的事件进入新进程的队列，新进程暂不写出
+     * 3. 旧进程发完切换前入队的事件，协商了 handover 时导出状态
+     * 4. 新进程先收到状态，再收到交接期间累积的事件；旧进程收到 shutdown 后退出
+     */
+    private boolean hotSwap(ProcessSettings nextConfig) throws InterruptedException {
+        IpcSettings nextSettings = IpcSettings.load(plugin.getConfig(), plugin.getLogger());
+        Map<String, File> executables = compile(nextConfig, nextBuildDir());
+        if (executables.isEmpty()) {
+            plugin.getLogger().warning("没有编译出C++插件，继续使用原有进程");
+            return false;
         }
 
-        if (process != null) {
-            gracefullyTerminateProcess();
+        List<CppProcess> started = launch(executables, nextSettings, nextConfig, true);
+        long readyDeadline = System.nanoTime()
+            + TimeUnit.MILLISECONDS.toNanos(nextSettings.getHandshakeTimeoutMs() + READY_MARGIN_MS);
+        boolean ready = !started.isEmpty();
+        for (CppProcess process : started) {
+            try {
+                process.whenReady().get(Math.max(0, readyDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                // 旧版C++插件不回复握手，进程仍在运行即视为就绪
+            }
+            ready &= process.isRunning();
         }
 
-        if (readerThread != null && readerThread.isAlive()) {
-            readerThread.interrupt();
+        Map<CppProcess, CppProcess> successors = new LinkedHashMap<>();
+        synchronized (this) {
+            Set<String> removed = new TreeSet<>();
+            if (ready && running.get()) {
+                ready = checkSuccessors(started, nextConfig, removed);
+            }
+            if (!ready || !running.get()) {
+                for (CppProcess process : started) {
+                    process.stop();
+                }
+                plugin.getLogger().warning("新的C++插件进程未能启动，继续使用原有进程");
+                return false;
+            }
+            if (!removed.isEmpty()) {
+                plugin.getLogger().info("C++插件源码已删除，热替换后停止: " + String.join(", ", removed));
+            }
+            Map<String, CppProcess> bySlot = new HashMap<>();
+            for (CppProcess process : started) {
+                bySlot.put(slotOf(process), process);
+            }
+            for (CppProcess previous : processes) {
+                successors.put(previous, bySlot.get(slotOf(previous)));
+            }
+            settings = nextSettings;
+            processSettings = nextConfig;
+            admission = new EventAdmission(nextSettings.getRateLimits());
+            subscriptions.setTimingEnabled(nextSettings.isHandlerTiming());
+            router = isSharded(executables, nextConfig) ? new ShardRouter(nextConfig.getShardKey()) : null;
+            processes = List.copyOf(started);
+            for (Map.Entry<CppProcess, CppProcess> entry : successors.entrySet()) {
+                entry.getKey().retire(entry.getValue());
+            }
+            refreshSubscriptions();
         }
-        if (senderExecutor != null && !senderExecutor.isShutdown()) {
-            shutdownExecutorService(senderExecutor);
+
+        long messages = 0;
+        int restored = 0;
+        try {
+            for (CppProcess process : started) {
+                // 旧进程交出状态前确认的事件不重放，超时未确认的交给新进程
+                process.replayJournal();
+                if (!successors.containsValue(process)) {
+                    process.release(null);
+                }
+            }
+            long handoverDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(nextConfig.getHandoverTimeoutMs());
+            for (Map.Entry<CppProcess, CppProcess> entry : successors.entrySet()) {
+                CppProcess previous = entry.getKey();
+                String state = previous.awaitHandover(
+                    Math.max(1, TimeUnit.NANOSECONDS.toMillis(handoverDeadline - System.nanoTime())));
+                if (entry.getValue() != null) {
+                    entry.getValue().release(state);
+                    if (state != null) {
+                        restored++;
+                    }
+                }
+                messages += previous.stop();
+            }
+        } finally {
+            for (CppProcess process : started) {
+                process.release(null);
+            }
         }
+        supervisor.watch(started);
+        plugin.getLogger().info("热替换完成: 启动 " + started.size() + " 个C++插件进程，交接状态 " + restored
+            + " 个，旧进程共处理消息 " + messages + " 条");
+        return true;
+    }
 
-        // 清理资源引用
-        readerThread = null;
-        senderExecutor = null;
-        inputReader = null;
-        outputWriter = null;
-        process = null;
-        
-        plugin.getLogger().info("ProcessManager stopped. Messages processed: " + messageCounter.get());
-        messageCounter.set(0);
+    /**
+     * 检查每个旧进程的插件是否都有新进程接替（分片数改变时按插件整体检查）
+     * <p>
+     * 编译或启动失败的插件没有新进程，直接替换会让原本正常运行的插件消失，此时返回 false；
+     * 源码已被删除的插件放入 removed，随热替换停止。进程模式改变时新旧进程无法对应，不检查。
+     */
+    private boolean checkSuccessors(List<CppProcess> started, ProcessSettings nextConfig, Set<String> removed) {
+        if (nextConfig.getMode() != processSettings.getMode()) {
+            return true;
+        }
+        Map<String, Integer> startedShards = new HashMap<>();
+        for (CppProcess process : started) {
+            startedShards.merge(process.getPluginName(), 1, Integer::sum);
+        }
+        Set<String> sources = null;
+        for (CppProcess previous : processes) {
+            String name = previous.getPluginName();
+            if (startedShards.getOrDefault(name, 0) == nextConfig.getShards(name)) {
+                continue;
+            }
+            if (name != null) {
+                if (sources == null) {
+                    sources = new CppCompiler().findPluginNames(cppDir);
+                }
+                if (!sources.contains(name)) {
+                    removed.add(name);
+                    continue;
+                }
+            }
+            plugin.getLogger().warning(previous.getLabel() + "新版本编译或启动失败，不能替换正在运行的进程");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 新旧进程按插件名称和分片一一对应，分片数改变时不对应
+     */
+    static String slotOf(CppProcess process) {
+        return process.getPluginName() + "#" + process.getShard() + "/" + process.getShardCount();
+    }
+
+    /**
+     * 热替换在 build/blue 和 build/green 之间交替编译，不覆盖正在运行的程序
+     */
+    private File nextBuildDir() {
+        File blue = new File(cppDir, "build" + File.separator + "blue");
+        for (CppProcess process : processes) {
+            if (blue.equals(process.getExecutable().getParentFile())) {
+                return new File(cppDir, "build" + File.separator + "green");
+            }
+        }
+        return blue;
     }
 
     public void restart() {
@@ -447,153 +874,143 @@ public class ProcessManager implements Listener {
         start();
     }
 
+    /**
+     * tick 结束时发出合并后的移动，再通知各进程，协商了 tick 帧的进程据此把本 tick 的事件打包成一帧
+     */
     @EventHandler
-    public void onPlayerJoin(PlayerJoinEvent event) {
-        sendEvent("PlayerJoin", event.getPlayer().getName());
+    public void onServerTickEnd(ServerTickEndEvent event) {
+        PlayerMoveConflator conflator = moveConflator;
+        if (conflator != null) {
+            conflator.flush();
+        }
+        long tick = event.getTickNumber();
+        for (CppProcess process : processes) {
+            process.onTickEnd(tick);
+        }
     }
 
-    @EventHandler
-    public void onPlayerQuit(PlayerQuitEvent event) {
-        sendEvent("PlayerQuit", event.getPlayer().getName());
+    private void onPlayerJoin(PlayerJoinEvent event) {
+        sendEvent(partition(event.getPlayer()), "PlayerJoin", handles.player(event.getPlayer()));
     }
 
-    @EventHandler
-    public void onBlockBreak(BlockBreakEvent event) {
-        sendEvent("BlockBreak", event.getPlayer().getName(), event.getBlock().getType().name());
+    private void onPlayerQuit(PlayerQuitEvent event) {
+        sendEvent(partition(event.getPlayer()), "PlayerQuit", handles.player(event.getPlayer()));
     }
 
-    @EventHandler
-    public void onBlockPlace(BlockPlaceEvent event) {
-        sendEvent("BlockPlace", event.getPlayer().getName(), event.getBlock().getType().name());
+    private void onBlockBreak(BlockBreakEvent event) {
+        Block block = event.getBlock();
+        Verdict verdict = requestVerdict(partition(event.getPlayer(), block), "BlockBreak",
+            handles.player(event.getPlayer()), handles.material(block.getType()),
+            new Vector(block.getX(), block.getY(), block.getZ()));
+        if (verdict == null) {
+            return;
+        }
+        if (verdict.cancel()) {
+            event.setCancelled(true);
+        }
+        if (verdict.dropItems() != null) {
+            event.setDropItems(verdict.dropItems());
+        }
+        if (verdict.expToDrop() != null) {
+            event.setExpToDrop(verdict.expToDrop());
+        }
     }
 
-    @EventHandler
-    public void onEntityDamage(EntityDamageEvent event) {
-        sendEvent("EntityDamage", event.getEntity().getName(), String.valueOf(event.getDamage()));
+    private void onBlockPlace(BlockPlaceEvent event) {
+        Block block = event.getBlock();
+        sendEvent(partition(event.getPlayer(), block), "BlockPlace", handles.player(event.getPlayer()), handles.material(block.getType()),
+            new Vector(block.getX(), block.getY(), block.getZ()));
     }
 
-    @EventHandler
-    public void onEntityDeath(EntityDeathEvent event) {
-        sendEvent("EntityDeath", event.getEntity().getName());
+    private void onEntityDamage(EntityDamageEvent event) {
+        Entity entity = event.getEntity();
+        sendEvent(partition(entity), "EntityDamage", entity.getName(), event.getDamage(), entity.getUniqueId(),
+            handles.entityType(entity.getType()));
     }
 
-    @EventHandler
-    public void onPlayerDeath(org.bukkit.event.entity.PlayerDeathEvent event) {
+    private void onEntityDeath(EntityDeathEvent event) {
+        Entity entity = event.getEntity();
+        sendEvent(partition(entity), "EntityDeath", entity.getName(), entity.getUniqueId(), handles.entityType(entity.getType()));
+    }
+
+    private void onPlayerDeath(org.bukkit.event.entity.PlayerDeathEvent event) {
         String deathMsg = "Player died";
         if (event.deathMessage() != null) {
             deathMsg = String.valueOf(event.deathMessage());
         }
-        sendEvent("PlayerDeath", event.getEntity().getName(), deathMsg);
+        sendEvent(partition(event.getEntity()), "PlayerDeath", handles.player(event.getEntity()), deathMsg);
     }
 
-    @EventHandler
-    public void onInventoryClick(InventoryClickEvent event) {
-        sendEvent("InventoryClick", event.getWhoClicked().getName(), String.valueOf(event.getSlot()), event.getCurrentItem() != null ? event.getCurrentItem().getType().name() : "AIR");
+    private void onInventoryClick(InventoryClickEvent event) {
+        Verdict verdict = requestVerdict(partition(event.getWhoClicked()), "InventoryClick", handles.human(event.getWhoClicked()), event.getSlot(),
+            handles.material(event.getCurrentItem() != null ? event.getCurrentItem().getType() : Material.AIR));
+        if (verdict != null && verdict.cancel()) {
+            event.setCancelled(true);
+        }
     }
 
-    @EventHandler
-    public void onInventoryOpen(InventoryOpenEvent event) {
-        sendEvent("InventoryOpen", event.getPlayer().getName());
+    private void onInventoryOpen(InventoryOpenEvent event) {
+        sendEvent(partition(event.getPlayer()), "InventoryOpen", handles.human(event.getPlayer()));
     }
 
-    @EventHandler
-    public void onInventoryClose(InventoryCloseEvent event) {
-        sendEvent("InventoryClose", event.getPlayer().getName());
+    private void onInventoryClose(InventoryCloseEvent event) {
+        sendEvent(partition(event.getPlayer()), "InventoryClose", handles.human(event.getPlayer()));
     }
 
-    @EventHandler
-    public void onPlayerMove(PlayerMoveEvent event) {
-        sendEvent("PlayerMove", event.getPlayer().getName());
+    private void onPlayerMove(PlayerMoveEvent event) {
+        PlayerMoveConflator conflator = moveConflator;
+        if (conflator != null) {
+            conflator.record(event.getPlayer(), event.getFrom(), event.getTo());
+        }
     }
 
-    @EventHandler
-    public void onPlayerRespawn(PlayerRespawnEvent event) {
-        sendEvent("PlayerRespawn", event.getPlayer().getName());
+    private void onPlayerRespawn(PlayerRespawnEvent event) {
+        sendEvent(partition(event.getPlayer()), "PlayerRespawn", handles.player(event.getPlayer()));
     }
 
-    @EventHandler
-    public void onBlockIgnite(BlockIgniteEvent event) {
-        String playerName = event.getPlayer() != null ? event.getPlayer().getName() : "null";
-        sendEvent("BlockIgnite", playerName, event.getBlock().getType().name());
+    private void onBlockIgnite(BlockIgniteEvent event) {
+        Object player = event.getPlayer() != null ? handles.player(event.getPlayer()) : null;
+        sendEvent(partition(event.getPlayer(), event.getBlock()), "BlockIgnite", player, handles.material(event.getBlock().getType()));
     }
 
-    @EventHandler
-    public void onEntitySpawn(EntitySpawnEvent event) {
-        sendEvent("EntitySpawn", event.getEntityType().name());
+    private void onEntitySpawn(EntitySpawnEvent event) {
+        sendEvent(partition(event.getEntity()), "EntitySpawn", handles.entityType(event.getEntityType()));
     }
 
-    @EventHandler
-    public void onPlayerInteract(PlayerInteractEvent event) {
-        String itemName = event.getItem() != null ? event.getItem().getType().name() : "null";
-        sendEvent("PlayerInteract", event.getPlayer().getName(), event.getAction().name(), itemName);
+    private void onPlayerInteract(PlayerInteractEvent event) {
+        Object item = event.getItem() != null ? handles.material(event.getItem().getType()) : null;
+        Verdict verdict = requestVerdict(partition(event.getPlayer()), "PlayerInteract",
+            handles.player(event.getPlayer()), event.getAction().name(), item);
+        if (verdict != null && verdict.cancel()) {
+            event.setCancelled(true);
+        }
     }
 
-    @EventHandler
-    public void onPlayerDropItem(PlayerDropItemEvent event) {
-        sendEvent("PlayerDropItem", event.getPlayer().getName(), event.getItemDrop().getItemStack().getType().name());
+    private void onPlayerDropItem(PlayerDropItemEvent event) {
+        sendEvent(partition(event.getPlayer()), "PlayerDropItem", handles.player(event.getPlayer()),
+            handles.material(event.getItemDrop().getItemStack().getType()));
     }
 
-    @EventHandler
-    public void onEntityPickupItem(EntityPickupItemEvent event) {
+    private void onEntityPickupItem(EntityPickupItemEvent event) {
         if (event.getEntity() instanceof Player player) {
-            sendEvent("PlayerPickupItem", player.getName(), event.getItem().getItemStack().getType().name());
+            sendEvent(partition(player), "PlayerPickupItem", handles.player(player),
+                handles.material(event.getItem().getItemStack().getType()));
         }
     }
 
-    @EventHandler
-    public void onServerCommand(ServerCommandEvent event) {
+    private void onServerCommand(ServerCommandEvent event) {
         sendEvent("ServerCommand", event.getSender().getName(), event.getCommand());
     }
 
-    @EventHandler
-    public void onWorldLoad(WorldLoadEvent event) {
-        sendEvent("WorldLoad", event.getWorld().getName());
+    private void onWorldLoad(WorldLoadEvent event) {
+        sendEvent("WorldLoad", handles.world(event.getWorld()));
     }
 
-    @EventHandler
-    public void onWeatherChange(WeatherChangeEvent event) {
-        sendEvent("WeatherChange", event.getWorld().getName(), String.valueOf(event.toWeatherState()));
+    private void onWeatherChange(WeatherChangeEvent event) {
+        sendEvent("WeatherChange", handles.world(event.getWorld()), event.toWeatherState());
     }
 
-    @EventHandler
-    public void onHangingBreak(HangingBreakEvent event) {
-        sendEvent("HangingBreak", event.getEntity().getType().name(), event.getCause().name());
-    }
-    
-    /**
-     * 优雅地终止C++进程
-     */
-    private void gracefullyTerminateProcess() {
-        try {
-            process.destroy();
-            if (!process.waitFor(PROCESS_TERMINATION_TIMEOUT, TimeUnit.SECONDS)) {
-                process.destroyForcibly();
-                process.waitFor(FORCE_TERMINATION_TIMEOUT, TimeUnit.SECONDS);
-            }
-        } catch (InterruptedException e) {
-            plugin.getLogger().warning("Interrupted while waiting for process to terminate: " + e.getMessage());
-            Thread.currentThread().interrupt();
-        }
-    }
-    
-    /**
-     * 安全关闭ExecutorService
-     */
-    private void shutdownExecutorService(ExecutorService executor) {
-        if (executor != null && !executor.isShutdown()) {
-            executor.shutdown();
-            try {
-                if (!executor.awaitTermination(3, TimeUnit.SECONDS)) {
-                    executor.shutdownNow();
-                    if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
-                        plugin.getLogger().warning("senderExecutor" + " failed to terminate properly");
-                    }
-                }
-            } catch (InterruptedException e) {
-                executor.shutdownNow();
-                Thread.currentThread().interrupt();
-                plugin.getLogger().warning("senderExecutor" + " shutdown interrupted: " + e.getMessage());
-            }
-        }
+    private void onHangingBreak(HangingBreakEvent event) {
+        sendEvent(partition(event.getEntity()), "HangingBreak", handles.entityType(event.getEntity().getType()), event.getCause().name());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,41 @@
+package com.github.tranforcpp;
+
+/**
+ * C++插件的进程布局
+ */
+public enum ProcessMode {
+
+    /**
+     * 所有 .cpp 编译为一个程序，作为一个进程运行（旧版行为）
+     */
+    SINGLE("single"),
+    /**
+     * 每个 .cpp 文件或子文件夹单独编译，各自作为独立进程运行
+     */
+    PER_PLUGIN("per-plugin");
+
+    private final String configName;
+
+    ProcessMode(String configName) {
+        this.configName = configName;
+    }
+
+    public String getConfigName() {
+        return configName;
+    }
+
+    /**
+     * 解析模式名称，无法识别时返回 null
+     */
+    public static ProcessMode fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (ProcessMode mode : values()) {
+            if (mode.configName.equalsIgnoreCase(name.trim())) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
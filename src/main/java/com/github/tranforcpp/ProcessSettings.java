@@ -0,0 +1,199 @@
+package com.github.tranforcpp;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * C++进程配置
+ * <p>
+ * 从 config.yml 的 {@code processes} 节读取，每次启动C++进程时重新加载。
+ * {@code processes.plugins.<插件名>} 下的配置只覆盖该插件。
+ */
+public final class ProcessSettings {
+
+    private static final int MAX_SHARDS = 64;
+    private static final List<String> DEFAULT_GLOBAL_EVENTS = List.of("WorldLoad", "WeatherChange");
+    private static final long DEFAULT_HANDOVER_TIMEOUT_MS = 5000;
+    private static final long DEFAULT_RESTART_BACKOFF_MS = 100;
+    private static final long DEFAULT_RESTART_BACKOFF_MAX_MS = 30000;
+    private static final long DEFAULT_STABLE_AFTER_MS = 60000;
+
+    private final ProcessMode mode;
+    private final boolean restartOnCrash;
+    private final Map<String, Boolean> restartOverrides;
+    private final int shards;
+    private final Map<String, Integer> shardOverrides;
+    private final ShardKey shardKey;
+    private final Set<String> globalEvents;
+    private final boolean hotSwap;
+    private final long handoverTimeoutMs;
+    private final boolean standby;
+    private final long restartBackoffMs;
+    private final long restartBackoffMaxMs;
+    private final long stableAfterMs;
+
+    private ProcessSettings(ProcessMode mode, boolean restartOnCrash, Map<String, Boolean> restartOverrides,
+                            int shards, Map<String, Integer> shardOverrides, ShardKey shardKey, Set<String> globalEvents,
+                            boolean hotSwap, long handoverTimeoutMs, boolean standby, long restartBackoffMs,
+                            long restartBackoffMaxMs, long stableAfterMs) {
+        this.mode = mode;
+        this.restartOnCrash = restartOnCrash;
+        this.restartOverrides = restartOverrides;
+        this.shards = shards;
+        this.shardOverrides = shardOverrides;
+        this.shardKey = shardKey;
+        this.globalEvents = globalEvents;
+        this.hotSwap = hotSwap;
+        this.handoverTimeoutMs = handoverTimeoutMs;
+        this.standby = standby;
+        this.restartBackoffMs = restartBackoffMs;
+        this.restartBackoffMaxMs = restartBackoffMaxMs;
+        this.stableAfterMs = stableAfterMs;
+    }
+
+    public static ProcessSettings load(ConfigurationSection config, Logger logger) {
+        ConfigurationSection section = config != null ? config.getConfigurationSection("processes") : null;
+        if (section == null) {
+            return new ProcessSettings(ProcessMode.SINGLE, true, Map.of(), 1, Map.of(), ShardKey.PLAYER,
+                Set.copyOf(DEFAULT_GLOBAL_EVENTS), true, DEFAULT_HANDOVER_TIMEOUT_MS, false, DEFAULT_RESTART_BACKOFF_MS,
+                DEFAULT_RESTART_BACKOFF_MAX_MS, DEFAULT_STABLE_AFTER_MS);
+        }
+
+        String modeName = section.getString("mode", ProcessMode.SINGLE.getConfigName());
+        ProcessMode mode = ProcessMode.fromName(modeName);
+        if (mode == null) {
+            logger.warning("未知的进程模式: " + modeName + "，使用 single");
+            mode = ProcessMode.SINGLE;
+        }
+        boolean restartOnCrash = section.getBoolean("restart-on-crash", true);
+        int shards = readShards(section, "shards", 1, logger);
+
+        String keyName = section.getString("shard-key", ShardKey.PLAYER.getConfigName());
+        ShardKey shardKey = ShardKey.fromName(keyName);
+        if (shardKey == null) {
+            logger.warning("未知的分区键: " + keyName + "，使用 player");
+            shardKey = ShardKey.PLAYER;
+        }
+        List<String> globalEvents = section.contains("global-events")
+            ? section.getStringList("global-events") : DEFAULT_GLOBAL_EVENTS;
+        boolean hotSwap = section.getBoolean("hot-swap", true);
+        long handoverTimeoutMs = readPositive(section, "handover-timeout-ms", DEFAULT_HANDOVER_TIMEOUT_MS, logger);
+        boolean standby = section.getBoolean("standby", false);
+        long restartBackoffMs = readPositive(section, "restart-backoff-ms", DEFAULT_RESTART_BACKOFF_MS, logger);
+        long restartBackoffMaxMs = readPositive(section, "restart-backoff-max-ms", DEFAULT_RESTART_BACKOFF_MAX_MS, logger);
+        if (restartBackoffMaxMs < restartBackoffMs) {
+            logger.warning("processes.restart-backoff-max-ms 小于 restart-backoff-ms，使用 " + restartBackoffMs);
+            restartBackoffMaxMs = restartBackoffMs;
+        }
+        long stableAfterMs = readPositive(section, "stable-after-ms", DEFAULT_STABLE_AFTER_MS, logger);
+
+        Map<String, Boolean> restartOverrides = new HashMap<>();
+        Map<String, Integer> shardOverrides = new HashMap<>();
+        ConfigurationSection plugins = section.getConfigurationSection("plugins");
+        if (plugins != null) {
+            for (String name : plugins.getKeys(false)) {
+                ConfigurationSection override = plugins.getConfigurationSection(name);
+                if (override == null) {
+                    continue;
+                }
+                if (override.contains("restart-on-crash")) {
+                    restartOverrides.put(name, override.getBoolean("restart-on-crash"));
+                }
+                if (override.contains("shards")) {
+                    shardOverrides.put(name, readShards(override, "shards", shards, logger));
+                }
+            }
+        }
+        return new ProcessSettings(mode, restartOnCrash, Map.copyOf(restartOverrides),
+            shards, Map.copyOf(shardOverrides), shardKey, Set.copyOf(globalEvents), hotSwap, handoverTimeoutMs,
+            standby, restartBackoffMs, restartBackoffMaxMs, stableAfterMs);
+    }
+
+    private static long readPositive(ConfigurationSection section, String path, long fallback, Logger logger) {
+        long value = section.getLong(path, fallback);
+        if (value <= 0) {
+            logger.warning("processes." + path + " 必须大于 0，使用 " + fallback);
+            return fallback;
+        }
+        return value;
+    }
+
+    private static int readShards(ConfigurationSection section, String path, int fallback, Logger logger) {
+        int shards = section.getInt(path, fallback);
+        if (shards < 1 || shards > MAX_SHARDS) {
+            logger.warning("分片数 " + shards + " 超出范围 1-" + MAX_SHARDS + "，使用 " + fallback);
+            return fallback;
+        }
+        return shards;
+    }
+
+    public ProcessMode getMode() {
+        return mode;
+    }
+
+    /**
+     * 插件进程意外退出后是否自动重启
+     */
+    public boolean isRestartOnCrash(String pluginName) {
+        return restartOverrides.getOrDefault(pluginName, restartOnCrash);
+    }
+
+    /**
+     * 同一个插件同时运行的进程数，单进程模式下插件名称为 null
+     */
+    public int getShards(String pluginName) {
+        return pluginName != null ? shardOverrides.getOrDefault(pluginName, shards) : shards;
+    }
+
+    public ShardKey getShardKey() {
+        return shardKey;
+    }
+
+    /**
+     * 不分区、发给每个分片的事件
+     */
+    public boolean isGlobalEvent(String eventName) {
+        return globalEvents.contains(eventName);
+    }
+
+    /**
+     * 重载时在后台启动新进程再切换，关闭后重载会先停止全部进程
+     */
+    public boolean isHotSwap() {
+        return hotSwap;
+    }
+
+    /**
+     * 热替换时等待旧进程发完剩余事件并交出状态的最长时间
+     */
+    public long getHandoverTimeoutMs() {
+        return handoverTimeoutMs;
+    }
+
+    /**
+     * 是否为每个进程预先启动一个备用进程，崩溃时直接换上
+     */
+    public boolean isStandby() {
+        return standby;
+    }
+
+    /**
+     * 连续第 attempt 次崩溃后的重启间隔：从 restart-backoff-ms 开始每次翻倍，最长 restart-backoff-max-ms
+     */
+    public long getRestartBackoffMs(int attempt) {
+        int doublings = Math.min(Math.max(attempt - 1, 0), 30);
+        return restartBackoffMs > restartBackoffMaxMs >> doublings ? restartBackoffMaxMs : restartBackoffMs << doublings;
+    }
+
+    /**
+     * 进程运行超过这个时间后再崩溃，重启间隔重新从 restart-backoff-ms 开始
+     */
+    public long getStableAfterMs() {
+        return stableAfterMs;
+    }
+}
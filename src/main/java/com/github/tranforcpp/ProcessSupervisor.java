@@ -0,0 +1,266 @@
+package com.github.tranforcpp;
+
+import com.github.tranforcpp.ipc.LatencyHistogram;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * C++进程崩溃后的恢复
+ * <p>
+ * 进程意外退出后队列保留，发给它的事件继续排队，替换的进程启动后按原顺序接过。
+ * 同一个进程连续崩溃时重启间隔从 {@code processes.restart-backoff-ms} 开始翻倍，最长
+ * {@code processes.restart-backoff-max-ms}，稳定运行 {@code processes.stable-after-ms} 后重新计算。
+ * <p>
+ * 开启 {@code processes.standby} 时为每个进程预先启动一个完成握手的备用进程，不接收事件；
+ * 崩溃时直接换上，不等待启动和握手，再在退避间隔后补一个新的备用进程。
+ */
+public final class ProcessSupervisor {
+
+    private final ProcessManager manager;
+    private final TranforCPlusPlus plugin;
+    // 按插件名称和分片记录，进程替换后沿用
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+    private final AtomicLong crashes = new AtomicLong(0);
+    private final AtomicLong restarts = new AtomicLong(0);
+    private final AtomicLong failovers = new AtomicLong(0);
+    // 从发现进程退出到替换的进程完成握手
+    private final LatencyHistogram recovery = new LatencyHistogram();
+    private volatile boolean active;
+
+    private static final class Slot {
+        long upSince = System.nanoTime();
+        int consecutive;
+        long crashes;
+        CppProcess standby;
+    }
+
+    ProcessSupervisor(ProcessManager manager, TranforCPlusPlus plugin) {
+        this.manager = manager;
+        this.plugin = plugin;
+    }
+
+    /**
+     * 启动进程前调用，之后退出的进程按配置重启
+     */
+    void start() {
+        active = true;
+    }
+
+    /**
+     * 进程启动或热替换完成后调用，按新的进程列表重新准备备用进程
+     */
+    void watch(List<CppProcess> processes) {
+        discardStandbys();
+        boolean standby = manager.getProcessSettings().isStandby();
+        for (CppProcess process : processes) {
+            markUp(slot(process));
+            if (standby) {
+                CompletableFuture.runAsync(() -> spawnStandby(process));
+            }
+        }
+    }
+
+    /**
+     * 停止恢复：等待中的重启不再执行，备用进程全部停止
+     */
+    void stop() {
+        active = false;
+        discardStandbys();
+    }
+
+    /**
+     * 进程意外退出，由进程的退出回调调用
+     */
+    void onExit(CppProcess exited, int exitCode) {
+        long detected = System.nanoTime();
+        crashes.incrementAndGet();
+        ProcessSettings current = manager.getProcessSettings();
+        Slot slot = slot(exited);
+        boolean standbyExited;
+        CppProcess standby = null;
+        int attempt;
+        synchronized (slot) {
+            standbyExited = slot.standby == exited;
+            if (standbyExited) {
+                slot.standby = null;
+            } else {
+                standby = slot.standby;
+                slot.standby = null;
+            }
+            boolean stable = detected - slot.upSince > TimeUnit.MILLISECONDS.toNanos(current.getStableAfterMs());
+            attempt = stable ? 1 : slot.consecutive + 1;
+            slot.consecutive = attempt;
+            slot.crashes++;
+        }
+        long delay = current.getRestartBackoffMs(attempt);
+
+        if (standbyExited) {
+            plugin.getLogger().warning(exited.getLabel() + "备用进程意外退出，退出码: " + exitCode);
+            exited.stop();
+            schedule(delay, () -> spawnStandby(exited));
+            return;
+        }
+
+        plugin.getLogger().warning(exited.getLabel() + "C++插件进程意外退出，退出码: " + exitCode);
+        if (!active || !current.isRestartOnCrash(exited.getPluginName())) {
+            exited.stop();
+            stopStandby(standby);
+            manager.refreshSubscriptions();
+            return;
+        }
+        exited.stop(true);
+
+        if (standby != null && standby.isRunning() && manager.replaceProcess(exited, standby)) {
+            failovers.incrementAndGet();
+            recovery.record(System.nanoTime() - detected);
+            markUp(slot);
+            plugin.getLogger().info(exited.getLabel() + "已切换到备用进程");
+            CppProcess promoted = standby;
+            schedule(delay, () -> spawnStandby(promoted));
+            return;
+        }
+        stopStandby(standby);
+        plugin.getLogger().warning(exited.getLabel() + delay + " 毫秒后重启（连续第 " + attempt + " 次崩溃）");
+        schedule(delay, () -> restart(exited, detected, attempt));
+    }
+
+    /**
+     * 用同一个程序启动替换的进程，启动失败时按下一次退避间隔重试
+     */
+    private void restart(CppProcess exited, long detected, int attempt) {
+        if (!active || !manager.getProcesses().contains(exited)) {
+            return;
+        }
+        CppProcess replacement = manager.startLike(exited);
+        if (replacement == null) {
+            long delay = manager.getProcessSettings().getRestartBackoffMs(attempt + 1);
+            plugin.getLogger().warning(exited.getLabel() + "重启失败，" + delay + " 毫秒后重试");
+            schedule(delay, () -> restart(exited, detected, attempt + 1));
+            return;
+        }
+        if (!manager.replaceProcess(exited, replacement)) {
+            replacement.stop();
+            return;
+        }
+        restarts.incrementAndGet();
+        markUp(slot(exited));
+        replacement.whenReady().thenRun(() -> recovery.record(System.nanoTime() - detected));
+        plugin.getLogger().info(exited.getLabel() + "C++插件进程已重启");
+        spawnStandby(replacement);
+    }
+
+    /**
+     * 为运行中的进程准备备用进程，已有备用进程或进程已被替换时不启动
+     */
+    private void spawnStandby(CppProcess template) {
+        if (!active || !manager.getProcessSettings().isStandby() || !manager.getProcesses().contains(template)) {
+            return;
+        }
+        Slot slot = slot(template);
+        synchronized (slot) {
+            if (slot.standby != null) {
+                return;
+            }
+        }
+        CppProcess standby = manager.startLike(template);
+        if (standby == null) {
+            return;
+        }
+        synchronized (slot) {
+            if (active && slot.standby == null) {
+                slot.standby = standby;
+                return;
+            }
+        }
+        standby.stop();
+    }
+
+    private void discardStandbys() {
+        for (Slot slot : slots.values()) {
+            CppProcess standby;
+            synchronized (slot) {
+                standby = slot.standby;
+                slot.standby = null;
+            }
+            stopStandby(standby);
+        }
+    }
+
+    private static void stopStandby(CppProcess standby) {
+        if (standby != null) {
+            standby.stop();
+        }
+    }
+
+    private static void markUp(Slot slot) {
+        synchronized (slot) {
+            slot.upSince = System.nanoTime();
+        }
+    }
+
+    private static void schedule(long delayMs, Runnable task) {
+        CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS).execute(task);
+    }
+
+    private Slot slot(CppProcess process) {
+        return slots.computeIfAbsent(ProcessManager.slotOf(process), key -> new Slot());
+    }
+
+    /**
+     * 意外退出的进程数，包括备用进程
+     */
+    public long getCrashes() {
+        return crashes.get();
+    }
+
+    /**
+     * 这个进程所在位置（插件和分片）累计崩溃的次数
+     */
+    public long getCrashes(CppProcess process) {
+        Slot slot = slots.get(ProcessManager.slotOf(process));
+        if (slot == null) {
+            return 0;
+        }
+        synchronized (slot) {
+            return slot.crashes;
+        }
+    }
+
+    /**
+     * 启动新进程替换崩溃进程的次数
+     */
+    public long getRestarts() {
+        return restarts.get();
+    }
+
+    /**
+     * 换上备用进程的次数
+     */
+    public long getFailovers() {
+        return failovers.get();
+    }
+
+    public LatencyHistogram getRecovery() {
+        return recovery;
+    }
+
+    /**
+     * 当前待命的备用进程数
+     */
+    public int getStandbyCount() {
+        int count = 0;
+        for (Slot slot : slots.values()) {
+            synchronized (slot) {
+                if (slot.standby != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.tranforcpp;
+
+/**
+ * 同一个C++插件运行多个分片时，事件按什么分配到分片
+ * <p>
+ * 分区键相同的事件总是进入同一个分片，因此按到达顺序处理。
+ */
+public enum ShardKey {
+
+    /**
+     * 按玩家 UUID，非玩家实体按实体自身的 UUID（默认）
+     */
+    PLAYER("player"),
+    /**
+     * 按事件所在世界
+     */
+    WORLD("world"),
+    /**
+     * 按事件所在区块
+     */
+    CHUNK("chunk");
+
+    private final String configName;
+
+    ShardKey(String configName) {
+        this.configName = configName;
+    }
+
+    public String getConfigName() {
+        return configName;
+    }
+
+    /**
+     * 解析分区键名称，无法识别时返回 null
+     */
+    public static ShardKey fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (ShardKey key : values()) {
+            if (key.configName.equalsIgnoreCase(name.trim())) {
+                return key;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.tranforcpp;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Entity;
+
+import java.util.UUID;
+
+/**
+ * 计算事件的分区值并映射到分片
+ * <p>
+ * 分区值只在服务器线程上由事件参数计算一次，所有分片组共用；每个分片只接收
+ * {@link #shardOf(long, int)} 等于自己序号的事件。没有分区键的事件分区值为 0，进入第一个分片。
+ */
+final class ShardRouter {
+
+    private final ShardKey key;
+
+    ShardRouter(ShardKey key) {
+        this.key = key;
+    }
+
+    ShardKey getKey() {
+        return key;
+    }
+
+    /**
+     * 以实体为主体的事件，按实体或它所在的位置分区
+     */
+    long partition(Entity subject) {
+        if (subject == null) {
+            return 0;
+        }
+        if (key == ShardKey.PLAYER) {
+            return bits(subject.getUniqueId());
+        }
+        Location location = subject.getLocation();
+        return at(subject.getWorld(), location.getBlockX(), location.getBlockZ());
+    }
+
+    /**
+     * 方块事件，按触发的玩家或方块位置分区，没有玩家时按方块所在区块
+     */
+    long partition(Entity subject, Block block) {
+        if (key == ShardKey.PLAYER && subject != null) {
+            return bits(subject.getUniqueId());
+        }
+        return at(block.getWorld(), block.getX(), block.getZ());
+    }
+
+    /**
+     * 合并后的 PlayerMove 只剩句柄的键和坐标，由这里直接计算
+     */
+    long partition(UUID subject, UUID world, int blockX, int blockZ) {
+        if (key == ShardKey.PLAYER && subject != null) {
+            return bits(subject);
+        }
+        return at(world, blockX, blockZ);
+    }
+
+    /**
+     * 没有玩家时按位置分区，player 模式下也按区块
+     */
+    private long at(World world, int blockX, int blockZ) {
+        return at(world != null ? world.getUID() : null, blockX, blockZ);
+    }
+
+    private long at(UUID world, int blockX, int blockZ) {
+        long worldBits = world != null ? bits(world) : 0;
+        if (key == ShardKey.WORLD) {
+            return worldBits;
+        }
+        return worldBits * 31 + (((long) (blockX >> 4) << 32) | ((blockZ >> 4) & 0xFFFFFFFFL));
+    }
+
+    private static long bits(UUID uuid) {
+        return uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
+    }
+
+    /**
+     * 分区值对应的分片序号，先打散再取模，相邻区块和相近的 UUID 也能均匀分布
+     */
+    static int shardOf(long partition, int shards) {
+        if (shards <= 1) {
+            return 0;
+        }
+        long h = partition;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb53a85ec8ec3L;
+        h ^= h >>> 33;
+        return Math.floorMod(h, shards);
+    }
+}
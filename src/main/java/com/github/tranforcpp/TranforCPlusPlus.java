@@ -12,6 +12,7 @@ import org.bukkit.command.CommandMap;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.lang.reflect.Field;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * TranforC++ 主插件类
@@ -43,6 +44,9 @@ public class TranforCPlusPlus extends JavaPlugin {
     public void onEnable() {
         instance = this;
                 getLogger().info(AnsiColorUtils.colorize("正在初始化TranforC++模块...", AnsiColorUtils.COLOR_51));
+        // 释放默认配置文件
+        saveDefaultConfig();
+
         // 注册主命令
         registerTranforCommand();
         
@@ -139,10 +143,17 @@ public class TranforCPlusPlus extends JavaPlugin {
         this.processManager = processManager;
     }
 
-    public void reload() {
+    /**
+     * 重新读取配置并重载C++插件，开启热替换时在后台完成
+     *
+     * @return 重载结果，见 {@link ProcessManager#reload()}
+     */
+    public CompletableFuture<Boolean> reload() {
+        reloadConfig();
         if (processManager != null) {
-            processManager.restart();
+            return processManager.reload();
         }
+        return CompletableFuture.completedFuture(true);
     }
     public SmartThreadOptimizer getThreadOptimizer() {
         return threadOptimizer;
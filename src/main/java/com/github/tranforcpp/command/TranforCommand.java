@@ -1,11 +1,31 @@
 package com.github.tranforcpp.command;
 
+import com.github.tranforcpp.CppProcess;
+import com.github.tranforcpp.ProcessManager;
+import com.github.tranforcpp.ProcessSupervisor;
 import com.github.tranforcpp.TranforCPlusPlus;
+import com.github.tranforcpp.ipc.CreditWindow;
+import com.github.tranforcpp.ipc.EventAdmission;
+import com.github.tranforcpp.ipc.EventJournal;
+import com.github.tranforcpp.ipc.EventLanes;
+import com.github.tranforcpp.ipc.InboundExecutor;
+import com.github.tranforcpp.ipc.LatencyHistogram;
+import com.github.tranforcpp.ipc.VerdictExchange;
+import com.github.tranforcpp.ipc.WriterStats;
+import com.github.tranforcpp.listener.EventSubscriptions;
+import com.github.tranforcpp.listener.GenericEventDispatcher;
+import com.github.tranforcpp.listener.HandlerTiming;
+import com.github.tranforcpp.listener.PlayerMoveConflator;
+import com.github.tranforcpp.query.QueryService;
+import com.github.tranforcpp.utils.ComponentCache;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * TranforC++主命令处理器
  * <p> 
@@ -15,16 +35,20 @@ import net.kyori.adventure.text.minimessage.MiniMessage;
  * 支持的子命令：
  * - reload: 重新加载C++插件
  * - version/ver: 显示插件版本信息
+ * - stats: 显示进程间通信统计
  */
 public class TranforCommand implements CommandExecutor {
     
     private static final MiniMessage MM = MiniMessage.miniMessage();
-    private static final String USAGE_MESSAGE = "<red>用法: /tranforcpp <reload|version|ver>";
+    private static final String USAGE_MESSAGE = "<red>用法: /tranforcpp <reload|version|ver|stats>";
     private static final String PERMISSION_DENIED = "<red>权限不足";
     private static final String RELOAD_START = "<yellow>正在重载...";
     private static final String RELOAD_COMPLETE = "<green>重载完成!";
+    private static final String RELOAD_FAILED = "<red>重载失败, 继续使用原有C++插件, 详见控制台";
     private static final String VERSION_PREFIX = "<white>[<aqua>TranforC++<white>] <green>您当前服务器的模块版本为: <green>";
-    private static final String UNKNOWN_COMMAND = "<red>未知指令! 用法: /tranforcpp <reload|version|ver>";
+    private static final String UNKNOWN_COMMAND = "<red>未知指令! 用法: /tranforcpp <reload|version|ver|stats>";
+    private static final String STATS_HEADER = "<white>[<aqua>TranforC++<white>] <green>通信统计:";
+    private static final String STATS_UNAVAILABLE = "<red>C++插件进程未运行";
 
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
@@ -38,6 +62,7 @@ public class TranforCommand implements CommandExecutor {
         return switch (subCommand) {
             case "reload" -> handleReload(sender);
             case "version", "ver" -> handleVersion(sender);
+            case "stats" -> handleStats(sender);
             default -> {
                 sender.sendMessage(MM.deserialize(UNKNOWN_COMMAND));
                 yield true;
@@ -51,8 +76,9 @@ public class TranforCommand implements CommandExecutor {
             return true;
         }
         sender.sendMessage(MM.deserialize(RELOAD_START));
-        TranforCPlusPlus.getInstance().reload();
-        sender.sendMessage(MM.deserialize(RELOAD_COMPLETE));
+        // 热替换在后台完成，完成后再通知
+        TranforCPlusPlus.getInstance().reload().thenAccept(reloaded ->
+            sender.sendMessage(MM.deserialize(reloaded ? RELOAD_COMPLETE : RELOAD_FAILED)));
         return true;
     }
     
@@ -65,4 +91,137 @@ public class TranforCommand implements CommandExecutor {
         sender.sendMessage(MM.deserialize(VERSION_PREFIX + version));
         return true;
     }
+
+    private boolean handleStats(CommandSender sender) {
+        if (!sender.hasPermission("tranforcpp.stats")) {
+            sender.sendMessage(MM.deserialize(PERMISSION_DENIED));
+            return true;
+        }
+        ProcessManager processManager = TranforCPlusPlus.getInstance().getProcessManager();
+        if (processManager == null) {
+            sender.sendMessage(MM.deserialize(STATS_UNAVAILABLE));
+            return true;
+        }
+        sender.sendMessage(MM.deserialize(STATS_HEADER));
+        List<CppProcess> processes = processManager.getProcesses();
+        ProcessSupervisor supervisor = processManager.getSupervisor();
+        for (CppProcess process : processes) {
+            // 多个进程时每行前加插件名称
+            String prefix = processes.size() > 1 ? "<yellow>" + process.getName() + " " : "";
+            WriterStats stats = process.getWriterStats();
+            sender.sendMessage(MM.deserialize(String.format(
+                "%s<gray>写出: <white>%d <gray>帧 / <white>%d <gray>次写入, 平均每批 <white>%.1f<gray>, 最大 <white>%d",
+                prefix, stats.getFrames(), stats.getDrains(), stats.getAverageDrain(), stats.getLargestDrain())));
+            sender.sendMessage(MM.deserialize(String.format(
+                "%s<gray>吞吐: <white>%.1f <gray>帧/秒, <white>%d <gray>字节, 队列 <white>%d<gray>, 丢弃 <white>%d",
+                prefix, stats.getFramesPerSecond(), stats.getBytes(), process.getQueueSize(), stats.getDropped())));
+            EventLanes lanes = process.getLanes();
+            for (EventLanes.LaneStats lane : List.of(lanes.getCriticalStats(), lanes.getBulkStats())) {
+                sender.sendMessage(MM.deserialize(String.format(
+                    "%s<gray>%s 通道 (%s): 待发送 <white>%d<gray>, 丢弃 <white>%d<gray>, 溢出到磁盘 <white>%d",
+                    prefix, lane.name(), lane.policy().getConfigName(), lane.size(), lane.dropped(), lane.spilled())));
+            }
+            VerdictExchange verdicts = process.getVerdicts();
+            if (verdicts.getRequests() > 0) {
+                LatencyHistogram latency = verdicts.getLatency();
+                sender.sendMessage(MM.deserialize(String.format(
+                    "%s<gray>裁决: 请求 <white>%d<gray>, 超时 <white>%d<gray>, 预算用完 <white>%d<gray>, 迟到 <white>%d",
+                    prefix, verdicts.getRequests(), verdicts.getTimeouts(), verdicts.getSkipped(), verdicts.getLate())));
+                sender.sendMessage(MM.deserialize(String.format(
+                    "%s<gray>裁决等待: p50 <white>%d <gray>µs, p99 <white>%d <gray>µs, 最大 <white>%d <gray>µs, 累计 <white>%d <gray>ms",
+                    prefix, latency.getPercentileMicros(0.5), latency.getPercentileMicros(0.99),
+                    latency.getMaxNanos() / 1000, latency.getTotalNanos() / 1_000_000)));
+            }
+            CreditWindow credits = process.getCredits();
+            if (credits != null) {
+                LatencyHistogram stallTimes = credits.getStallTimes();
+                sender.sendMessage(MM.deserialize(String.format(
+                    "%s<gray>发送额度: 可用 <white>%d<gray> / <white>%d<gray>, 在途 <white>%d<gray>, 用尽 <white>%d <gray>次 (p99 <white>%d <gray>ms)%s",
+                    prefix, credits.available(Integer.MAX_VALUE), credits.getWindow(), credits.getInFlight(),
+                    credits.getStalls(), stallTimes.getPercentileMicros(0.99) / 1000,
+                    process.isLagging() ? ", <red>落后 " + credits.getLagNanos() / 1_000_000 + " ms" : "")));
+            }
+            EventJournal journal = process.getJournal();
+            if (journal != null) {
+                sender.sendMessage(MM.deserialize(String.format(
+                    "%s<gray>事件日志: 写入 <white>%d<gray>, 未确认 <white>%d<gray>, 重放 <white>%d<gray>, 过期丢弃 <white>%d<gray>, <white>%d <gray>段 <white>%d <gray>KB",
+                    prefix, journal.getAppended(), journal.getPending(), journal.getReplayed(), journal.getExpired(),
+                    journal.getSegmentCount(), journal.getSizeBytes() / 1024)));
+            }
+            if (supervisor.getCrashes(process) > 0) {
+                sender.sendMessage(MM.deserialize(String.format(
+                    "%s<gray>崩溃: <white>%d <gray>次%s", prefix, supervisor.getCrashes(process),
+                    process.isRunning() ? "" : ", <red>等待重启")));
+            }
+        }
+        if (supervisor.getCrashes() > 0 || supervisor.getStandbyCount() > 0) {
+            LatencyHistogram recovery = supervisor.getRecovery();
+            sender.sendMessage(MM.deserialize(String.format(
+                "<gray>进程恢复: 崩溃 <white>%d<gray>, 重启 <white>%d<gray>, 切换备用 <white>%d<gray>, 备用进程 <white>%d",
+                supervisor.getCrashes(), supervisor.getRestarts(), supervisor.getFailovers(),
+                supervisor.getStandbyCount())));
+            if (recovery.getCount() > 0) {
+                sender.sendMessage(MM.deserialize(String.format(
+                    "<gray>恢复耗时: p50 <white>%d <gray>ms, 最大 <white>%d <gray>ms",
+                    recovery.getPercentileMicros(0.5) / 1000, recovery.getMaxNanos() / 1_000_000)));
+            }
+        }
+        PlayerMoveConflator moves = processManager.getMoveConflator();
+        if (moves != null) {
+            sender.sendMessage(MM.deserialize(String.format(
+                "<gray>PlayerMove: 收到 <white>%d<gray>, 合并后发送 <white>%d",
+                moves.getReceived(), moves.getSent())));
+        }
+        for (EventAdmission.ShedCount shed : processManager.getAdmission().getShedCounts()) {
+            sender.sendMessage(MM.deserialize(String.format(
+                "<gray>%s 丢弃: 采样 <white>%d<gray>, 限速 <white>%d<gray>, 队列满 <white>%d<gray>, 处理落后 <white>%d",
+                shed.eventName(), shed.sampled(), shed.limited(), shed.overflow(), shed.lagging())));
+        }
+        QueryService queries = processManager.getQueries();
+        if (queries != null && queries.getReceived() > 0) {
+            sender.sendMessage(MM.deserialize(String.format(
+                "<gray>查询: 收到 <white>%d<gray>, 缓存命中 <white>%d<gray>, 失败 <white>%d<gray>, 占用 <white>%d <gray>个 tick",
+                queries.getReceived(), queries.getCacheHits(), queries.getFailed(), queries.getBatches())));
+        }
+        if (processManager.getMalformedMessages() > 0) {
+            sender.sendMessage(MM.deserialize(String.format(
+                "<gray>无法处理的C++消息: <white>%d", processManager.getMalformedMessages())));
+        }
+        ComponentCache components = processManager.getComponents();
+        if (components.getHits() + components.getMisses() > 0) {
+            sender.sendMessage(MM.deserialize(String.format(
+                "<gray>MiniMessage 缓存: 命中率 <white>%.1f%%<gray>, 解析 <white>%d <gray>次, 缓存 <white>%d<gray>/<white>%d",
+                components.getHitRate() * 100, components.getMisses(), components.size(), components.getCapacity())));
+        }
+        InboundExecutor actions = processManager.getActions();
+        if (actions != null && actions.getExecuted() + actions.getQueued() > 0) {
+            LatencyHistogram age = actions.getQueueAge();
+            sender.sendMessage(MM.deserialize(String.format(
+                "<gray>C++动作: 执行 <white>%d<gray>, 待执行 <white>%d<gray> (最多 <white>%d<gray>), 失败 <white>%d<gray>, 丢弃 <white>%d<gray>, 顺延 <white>%d <gray>个 tick",
+                actions.getExecuted(), actions.getQueued(), actions.getLargestBacklog(), actions.getFailed(),
+                actions.getDropped(), actions.getCarriedTicks())));
+            sender.sendMessage(MM.deserialize(String.format(
+                "<gray>动作排队: p50 <white>%d <gray>µs, p99 <white>%d <gray>µs, 最大 <white>%d <gray>ms",
+                age.getPercentileMicros(0.5), age.getPercentileMicros(0.99), age.getMaxNanos() / 1_000_000)));
+        }
+        GenericEventDispatcher dispatcher = processManager.getDispatcher();
+        if (dispatcher != null) {
+            sender.sendMessage(MM.deserialize(String.format(
+                "<gray>GenericTranforCEvent: <white>%s<gray>, 未分发 <white>%d",
+                dispatcher.getMode().getConfigName(), dispatcher.getDropped())));
+        }
+        EventSubscriptions subscriptions = processManager.getSubscriptions();
+        if (subscriptions.isTimingEnabled()) {
+            for (Map.Entry<String, HandlerTiming> entry : subscriptions.getTimings().entrySet()) {
+                HandlerTiming timing = entry.getValue();
+                if (timing.getCount() == 0) {
+                    continue;
+                }
+                sender.sendMessage(MM.deserialize(String.format(
+                    "<gray>%s 处理: <white>%d <gray>次, 平均 <white>%.0f <gray>ns, 最大 <white>%d <gray>ns",
+                    entry.getKey(), timing.getCount(), timing.getAverageNanos(), timing.getMaxNanos())));
+            }
+        }
+        return true;
+    }
 }
\ No newline at end of file
@@ -9,10 +9,9 @@ import java.util.List;
 
 public class TranforTabCompleter implements TabCompleter {
     
-    private static final String[] ALL_COMMANDS = {"reload", "version", "ver"};
-    private static final String[] RELOAD_ONLY = {"reload"};
-    private static final String[] VERSION_ONLY = {"version", "ver"};
-    private static final String[] EMPTY_ARRAY = new String[0];
+    private static final String[] RELOAD_COMMANDS = {"reload"};
+    private static final String[] VERSION_COMMANDS = {"version", "ver"};
+    private static final String[] STATS_COMMANDS = {"stats"};
 
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
@@ -21,30 +20,21 @@ public class TranforTabCompleter implements TabCompleter {
         }
         
         String input = args[0].toLowerCase();
-        String[] candidates = getCandidates(sender);
-        
-        List<String> result = new ArrayList<>(candidates.length);
+        List<String> result = new ArrayList<>(4);
+        addMatches(result, input, sender.hasPermission("tranforcpp.reload"), RELOAD_COMMANDS);
+        addMatches(result, input, sender.hasPermission("tranforcpp.version"), VERSION_COMMANDS);
+        addMatches(result, input, sender.hasPermission("tranforcpp.stats"), STATS_COMMANDS);
+        return result;
+    }
+    
+    private void addMatches(List<String> result, String input, boolean permitted, String[] candidates) {
+        if (!permitted) {
+            return;
+        }
         for (String candidate : candidates) {
             if (candidate.startsWith(input)) {
                 result.add(candidate);
             }
         }
-        
-        return result;
-    }
-    
-    private String[] getCandidates(CommandSender sender) {
-        boolean canReload = sender.hasPermission("tranforcpp.reload");
-        boolean canVersion = sender.hasPermission("tranforcpp.version");
-        
-        if (canReload && canVersion) {
-            return ALL_COMMANDS;
-        } else if (canReload) {
-            return RELOAD_ONLY;
-        } else if (canVersion) {
-            return VERSION_ONLY;
-        } else {
-            return EMPTY_ARRAY;
-        }
     }
 }
\ No newline at end of file
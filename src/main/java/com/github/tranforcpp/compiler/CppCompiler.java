@@ -46,6 +46,15 @@ public class CppCompiler {
     }
     
     public File compile(File cppDir) {
+        return compile(cppDir, cppDir);
+    }
+
+    /**
+     * 把所有 .cpp 编译为一个程序
+     *
+     * @param outputDir 程序的输出目录，热替换时与正在运行的程序分开，避免覆盖运行中的文件
+     */
+    public File compile(File cppDir, File outputDir) {
         List<File> cppFiles = findCppFiles(cppDir);
         if (cppFiles.isEmpty()) {
             return null;
@@ -53,10 +62,105 @@ public class CppCompiler {
 
         String os = System.getProperty("os.name").toLowerCase();
         boolean isWindows = os.contains("win");
-        
-        File outputFile;
+        String compiler = findCompiler(isWindows);
+        if (compiler == null) {
+            return null;
+        }
+
+        if (!outputDir.exists() && !outputDir.mkdirs()) {
+            TranforCPlusPlus.getInstance().getLogger().severe("Failed to create build directory: " + outputDir.getAbsolutePath());
+            return null;
+        }
+        File outputFile = new File(outputDir, isWindows ? "tranforcpp_plugin.exe" : "tranforcpp_plugin");
+        return build(compiler, outputFile, cppFiles, cppDir, isWindows);
+    }
+
+    /**
+     * 按插件分别编译，每个插件一个程序
+     * <p>
+     * {@code C++ Plugins} 目录下的每个 .cpp 文件是一个插件，每个包含 .cpp 文件的子文件夹也是一个插件，
+     * 插件名称取文件名（去掉扩展名）或文件夹名。程序输出到 {@code build/} 子目录，各插件并行编译，
+     * 编译失败的插件会被跳过，不影响其他插件。
+     *
+     * @return 插件名称到可执行文件的映射，按名称排序
+     */
+    public Map<String, File> compilePlugins(File cppDir) {
+        return compilePlugins(cppDir, new File(cppDir, "build"));
+    }
+
+    /**
+     * 按插件分别编译到指定目录
+     *
+     * @param buildDir 程序的输出目录，热替换时与正在运行的程序分开
+     */
+    public Map<String, File> compilePlugins(File cppDir, File buildDir) {
+        Map<String, List<File>> plugins = findPlugins(cppDir, true);
+        if (plugins.isEmpty()) {
+            return Map.of();
+        }
+
+        String os = System.getProperty("os.name").toLowerCase();
+        boolean isWindows = os.contains("win");
+        String compiler = findCompiler(isWindows);
+        if (compiler == null) {
+            return Map.of();
+        }
+
+        if (!buildDir.exists() && !buildDir.mkdirs()) {
+            TranforCPlusPlus.getInstance().getLogger().severe("Failed to create build directory: " + buildDir.getAbsolutePath());
+            return Map.of();
+        }
+
+        Map<String, CompletableFuture<File>> builds = new TreeMap<>();
+        for (Map.Entry<String, List<File>> entry : plugins.entrySet()) {
+            File outputFile = new File(buildDir, isWindows ? entry.getKey() + ".exe" : entry.getKey());
+            builds.put(entry.getKey(), CompletableFuture.supplyAsync(
+                () -> build(compiler, outputFile, entry.getValue(), cppDir, isWindows)));
+        }
+
+        Map<String, File> executables = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<File>> entry : builds.entrySet()) {
+            File executable = entry.getValue().join();
+            if (executable != null) {
+                executables.put(entry.getKey(), executable);
+            } else {
+                TranforCPlusPlus.getInstance().getLogger().severe("C++插件编译失败，已跳过: " + entry.getKey());
+            }
+        }
+        return executables;
+    }
+
+    /**
+     * 按插件编译时的插件名称（只查找源码，不编译），热替换用来区分插件是被删除还是编译失败
+     */
+    public Set<String> findPluginNames(File cppDir) {
+        return findPlugins(cppDir, false).keySet();
+    }
+
+    private Map<String, List<File>> findPlugins(File cppDir, boolean warnConflicts) {
+        Map<String, List<File>> plugins = new TreeMap<>();
+        for (File file : findCppFiles(cppDir)) {
+            String name = file.getName();
+            plugins.put(name.substring(0, name.length() - ".cpp".length()), List.of(file));
+        }
+        File[] dirs = cppDir.listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                List<File> sources = findCppFiles(dir);
+                if (sources.isEmpty()) {
+                    continue;
+                }
+                if (plugins.putIfAbsent(dir.getName(), sources) != null && warnConflicts) {
+                    TranforCPlusPlus.getInstance().getLogger().warning(
+                        "插件名称冲突，已跳过文件夹: " + dir.getName());
+                }
+            }
+        }
+        return plugins;
+    }
+
+    private String findCompiler(boolean isWindows) {
         String compiler = detectCompiler(isWindows);
-        
 
         if (compiler == null && Boolean.FALSE.equals(compilerChecked)) {
             return null;
@@ -64,42 +168,29 @@ public class CppCompiler {
         
         if (compiler == null) {
             if (!errorAlreadyShown) {
-                TranforCPlusPlus.getInstance().getLogger().severe("未找到可用的C++编译器！请安装以下任一编译器：");
-                TranforCPlusPlus.getInstance().getLogger().severe("- MinGW-w64 (推荐): https://www.mingw-w64.org/");
-                TranforCPlusPlus.getInstance().getLogger().severe("- Visual Studio Build Tools");
-                TranforCPlusPlus.getInstance().getLogger().severe("- 或将编译器路径添加到系统PATH环境变量");
+                logMissingCompilerError();
                 errorAlreadyShown = true;
             }
             compilerChecked = false;
             return null;
         }
-        
-        if (isWindows) {
-            outputFile = new File(cppDir, "tranforcpp_plugin.exe");
-        } else {
-            outputFile = new File(cppDir, "tranforcpp_plugin");
-        }
+        return compiler;
+    }
 
-        List<String> command = buildCompileCommand(compiler, outputFile, cppFiles, isWindows);
+    private File build(String compiler, File outputFile, List<File> cppFiles, File includeDir, boolean isWindows) {
+        List<String> command = buildCompileCommand(compiler, outputFile, cppFiles, includeDir, isWindows);
 
         try {
             ProcessBuilder pb = new ProcessBuilder(command);
             pb.redirectErrorStream(true);
             Process process = pb.start();
 
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
-                }
-            }
+            String output = readProcessOutput(process);
 
             int exitCode = process.waitFor();
 
             if (exitCode != 0) {
-                TranforCPlusPlus.getInstance().getLogger().severe("Compilation failed with exit code: " + exitCode);
-                TranforCPlusPlus.getInstance().getLogger().severe("Compiler output:\n" + output);
+                logCompilationFailure(exitCode, output);
                 return null;
             }
 
@@ -176,10 +267,12 @@ public class CppCompiler {
     /**
      * 构建编译命令
      */
-    private List<String> buildCompileCommand(String compiler, File outputFile, List<File> cppFiles, boolean isWindows) {
+    private List<String> buildCompileCommand(String compiler, File outputFile, List<File> cppFiles, File includeDir, boolean isWindows) {
         List<String> command = new ArrayList<>();
         command.add(compiler);
         command.add("-std=c++17");
+        // 子文件夹中的插件也能直接 #include 放在 C++ Plugins 目录下的头文件
+        command.add("-I" + includeDir.getAbsolutePath());
         
         if (!isWindows) {
             command.add("-pthread");
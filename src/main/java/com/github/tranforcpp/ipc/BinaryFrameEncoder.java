@@ -0,0 +1,214 @@
+package com.github.tranforcpp.ipc;
+
+import org.bukkit.util.Vector;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+import java.util.UUID;
+
+/**
+ * 二进制帧编码器
+ * <p>
+ * 帧格式（小端序）：
+ * <pre>
+ * u8  0xFE          帧标记，JSON行总是以 '{' 开头，据此区分两种格式
+ * u32 length        之后的字节数
+ * u8  kind          帧类型，1 = 事件
+ * u16 eventType     {@link EventType} 标签，0 表示自定义事件，后跟事件名字符串
+ * u8  argc          参数个数
+ * 参数：u8 tag + 数据
+ *   0 NULL   无数据
+ *   1 STRING u32 字节数 + UTF-8
+ *   2 INT    i32
+ *   3 LONG   i64
+ *   4 DOUBLE f64
+ *   5 BOOL   u8
+ *   6 HANDLE u32 句柄，之前已通过 Define 帧登记名称
+ *   7 UUID   i64 高位 + i64 低位
+ *   8 VECTOR f64 x + f64 y + f64 z
+ * </pre>
+ * 协商了 handles 功能时，{@link HandleRef} 参数第一次出现前先写出一个 Define 帧，之后只写句柄。
+ */
+public class BinaryFrameEncoder implements FrameEncoder {
+
+    public static final byte FRAME_MARKER = (byte) 0xFE;
+    public static final byte KIND_EVENT = 1;
+
+    public static final byte TAG_NULL = 0;
+    public static final byte TAG_STRING = 1;
+    public static final byte TAG_INT = 2;
+    public static final byte TAG_LONG = 3;
+    public static final byte TAG_DOUBLE = 4;
+    public static final byte TAG_BOOL = 5;
+    public static final byte TAG_HANDLE = 6;
+    public static final byte TAG_UUID = 7;
+    public static final byte TAG_VECTOR = 8;
+
+    private static final int INITIAL_CAPACITY = 512;
+    private static final int MAX_ARGS = 255;
+
+    private final boolean handles;
+    // 已登记的句柄；每个编码器对应一个进程的一次连接，C++端的句柄表随进程重建，新编码器需要重新登记
+    private final BitSet defined = new BitSet();
+    private final Object[] defineArgs = new Object[3];
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY).order(ByteOrder.LITTLE_ENDIAN);
+
+    public BinaryFrameEncoder() {
+        this(false);
+    }
+
+    public BinaryFrameEncoder(boolean handles) {
+        this.handles = handles;
+    }
+
+    @Override
+    public void writeEvent(String eventName, Object[] args) {
+        EventType type = EventType.fromWireName(eventName);
+        int argCount = Math.min(args.length, MAX_ARGS);
+        if (handles) {
+            defineHandles(args, argCount);
+        }
+        writeFrame(type, eventName, args, argCount);
+    }
+
+    private void defineHandles(Object[] args, int argCount) {
+        for (int i = 0; i < argCount; i++) {
+            if (args[i] instanceof HandleRef ref && !defined.get(ref.getId())) {
+                defined.set(ref.getId());
+                defineArgs[0] = ref.getId();
+                defineArgs[1] = ref.getKind().getId();
+                defineArgs[2] = ref.getName();
+                writeFrame(EventType.DEFINE, null, defineArgs, defineArgs.length);
+            }
+        }
+    }
+
+    private void writeFrame(EventType type, String eventName, Object[] args, int argCount) {
+        ensureCapacity(9);
+        buffer.put(FRAME_MARKER);
+        int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        int bodyStart = buffer.position();
+
+        buffer.put(KIND_EVENT);
+        buffer.putShort((short) type.getId());
+        if (type == EventType.CUSTOM) {
+            putString(eventName);
+        }
+
+        ensureCapacity(1);
+        buffer.put((byte) argCount);
+        for (int i = 0; i < argCount; i++) {
+            putArg(args[i]);
+        }
+
+        buffer.putInt(lengthPosition, buffer.position() - bodyStart);
+    }
+
+    private void putArg(Object arg) {
+        ensureCapacity(25);
+        if (arg == null) {
+            buffer.put(TAG_NULL);
+        } else if (arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+            buffer.put(TAG_INT);
+            buffer.putInt(((Number) arg).intValue());
+        } else if (arg instanceof Long) {
+            buffer.put(TAG_LONG);
+            buffer.putLong((Long) arg);
+        } else if (arg instanceof Double || arg instanceof Float) {
+            buffer.put(TAG_DOUBLE);
+            buffer.putDouble(((Number) arg).doubleValue());
+        } else if (arg instanceof Boolean) {
+            buffer.put(TAG_BOOL);
+            buffer.put((byte) ((Boolean) arg ? 1 : 0));
+        } else if (arg instanceof UUID uuid) {
+            buffer.put(TAG_UUID);
+            buffer.putLong(uuid.getMostSignificantBits());
+            buffer.putLong(uuid.getLeastSignificantBits());
+        } else if (arg instanceof Vector vector) {
+            buffer.put(TAG_VECTOR);
+            buffer.putDouble(vector.getX());
+            buffer.putDouble(vector.getY());
+            buffer.putDouble(vector.getZ());
+        } else if (arg instanceof HandleRef ref) {
+            if (handles) {
+                buffer.put(TAG_HANDLE);
+                buffer.putInt(ref.getId());
+            } else {
+                buffer.put(TAG_STRING);
+                putString(ref.getName());
+            }
+        } else {
+            buffer.put(TAG_STRING);
+            putString(arg.toString());
+        }
+    }
+
+    /**
+     * 直接把字符按 UTF-8 写入缓冲区再回填长度，不经过中间字节数组，
+     * 不成对的代理字符与 String.getBytes 一样替换为 '?'
+     */
+    private void putString(String value) {
+        int length = value.length();
+        // 最坏情况每个字符3字节，代理对两个字符共4字节
+        ensureCapacity(4 + length * 3);
+        int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        int start = buffer.position();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                char low = i + 1 < length ? value.charAt(i + 1) : 0;
+                if (Character.isHighSurrogate(c) && Character.isLowSurrogate(low)) {
+                    int codePoint = Character.toCodePoint(c, low);
+                    buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                    i++;
+                } else {
+                    buffer.put((byte) '?');
+                }
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        buffer.putInt(lengthPosition, buffer.position() - start);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (buffer.remaining() >= extra) {
+            return;
+        }
+        int newCapacity = Math.max(buffer.capacity() * 2, buffer.position() + extra);
+        ByteBuffer grown = ByteBuffer.allocate(newCapacity).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    @Override
+    public int size() {
+        return buffer.position();
+    }
+
+    @Override
+    public void reset() {
+        buffer.clear();
+    }
+}
@@ -0,0 +1,17 @@
+package com.github.tranforcpp.ipc;
+
+import java.util.Set;
+
+/**
+ * 基于额度的流量控制配置，见 {@link CreditWindow}
+ *
+ * @param enabled    是否在握手中提供 credits 功能
+ * @param stallMs    额度用尽超过这个时间（毫秒）视为C++端处理落后
+ * @param shedEvents 处理落后期间在入队前直接丢弃的事件
+ */
+public record CreditSettings(boolean enabled, long stallMs, Set<String> shedEvents) {
+
+    public boolean isShed(String eventName) {
+        return shedEvents.contains(eventName);
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.tranforcpp.ipc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 发送额度
+ * <p>
+ * C++端在握手回复中授予初始额度（窗口大小），之后每处理完一批事件就归还相应的额度。写出线程每发送一个事件
+ * 消耗一个额度，额度用尽时不再从队列取事件，事件留在各通道中按溢出策略处理，写入管道的数据不会超过C++端
+ * 承诺读取的数量，写出线程不会阻塞在写满的管道上。Tick 帧头、序号标记和状态交接等控制消息不消耗额度。
+ * <p>
+ * 已发送但额度未归还的事件数即C++端的积压；额度用尽、仍有事件等待发送的时长即处理落后的时长。
+ * <p>
+ * {@link #grant} 由读取线程调用，{@link #await}、{@link #consume} 只能由写出线程调用。
+ */
+public final class CreditWindow {
+
+    private final long window;
+    private final AtomicLong granted;
+    private final AtomicLong sent = new AtomicLong();
+    // 额度用尽、写出线程开始等待的时刻，0 表示未在等待
+    private final AtomicLong exhaustedSince = new AtomicLong();
+    private final AtomicReference<Thread> waiter = new AtomicReference<>();
+    private final AtomicLong stalls = new AtomicLong();
+    private final LatencyHistogram stallTimes = new LatencyHistogram();
+
+    /**
+     * @param window C++端在握手回复中授予的初始额度
+     */
+    public CreditWindow(long window) {
+        this.window = window;
+        this.granted = new AtomicLong(window);
+    }
+
+    /**
+     * C++端归还额度
+     */
+    public void grant(long credits) {
+        if (credits <= 0) {
+            return;
+        }
+        granted.addAndGet(credits);
+        endStall();
+        Thread parked = waiter.get();
+        if (parked != null && waiter.compareAndSet(parked, null)) {
+            LockSupport.unpark(parked);
+        }
+    }
+
+    /**
+     * 当前可以发送的事件数，最多 max
+     */
+    public int available(int max) {
+        return (int) Math.max(0, Math.min(max, granted.get() - sent.get()));
+    }
+
+    /**
+     * 等待额度，超时仍没有额度时返回 false；开始等待时记为一次落后
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        if (available(1) > 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (exhaustedSince.compareAndSet(0, now)) {
+            stalls.incrementAndGet();
+        }
+        long deadline = now + unit.toNanos(timeout);
+        Thread current = Thread.currentThread();
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            // 先登记再检查，与 grant 中先增加额度再唤醒构成 Dekker 式握手，与 EventLanes 相同
+            waiter.set(current);
+            if (available(1) > 0) {
+                waiter.set(null);
+                endStall();
+                return true;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                waiter.set(null);
+                return false;
+            }
+            LockSupport.parkNanos(this, remaining);
+            waiter.set(null);
+        }
+    }
+
+    /**
+     * 记录已发送的事件
+     */
+    public void consume(int events) {
+        sent.addAndGet(events);
+    }
+
+    private void endStall() {
+        long since = exhaustedSince.get();
+        if (since != 0 && exhaustedSince.compareAndSet(since, 0)) {
+            stallTimes.record(System.nanoTime() - since);
+        }
+    }
+
+    /**
+     * 握手时授予的窗口大小
+     */
+    public long getWindow() {
+        return window;
+    }
+
+    public long getGranted() {
+        return granted.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * 已发送、C++端尚未归还额度的事件数；C++端按批归还，处理完但未归还的事件也计算在内
+     */
+    public long getInFlight() {
+        return Math.max(0, sent.get() - (granted.get() - window));
+    }
+
+    /**
+     * 额度已用尽多久（纳秒），有额度时为 0
+     */
+    public long getLagNanos() {
+        long since = exhaustedSince.get();
+        return since == 0 ? 0 : Math.max(0, System.nanoTime() - since);
+    }
+
+    /**
+     * 额度用尽的次数
+     */
+    public long getStalls() {
+        return stalls.get();
+    }
+
+    /**
+     * 每次额度用尽到重新获得额度的时长
+     */
+    public LatencyHistogram getStallTimes() {
+        return stallTimes;
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.tranforcpp.ipc;
+
+/**
+ * 不分配对象地把 double 写成与 {@link Double#toString(double)} 相同的文本
+ * <p>
+ * Double.toString 输出能精确还原该值的最短十进制数，最短长度有多个候选时取最接近的一个。
+ * 这里把舍入区间的上下界乘以 10 的幂，用 128 位整数运算逐位增加小数位数，
+ * 第一个落在区间内的整数就是最短的结果，全程没有浮点误差。
+ * <p>
+ * 只处理 Double.toString 使用普通小数形式的范围（绝对值在 [1e-3, 1e7) 之间）和 ±0，坐标、角度和伤害都在其中；
+ * 其余值（科学计数法、NaN、无穷大）返回 -1，由调用方回退到 Double.toString。
+ */
+final class DoubleFormatter {
+
+    /**
+     * 一次写出的最大字节数：符号、"0."、最多两个前导零和 17 位有效数字
+     */
+    static final int MAX_LENGTH = 24;
+
+    private static final double MIN_PLAIN = 1e-3;
+    private static final double MAX_PLAIN = 1e7;
+    // [1e-3, 1e-2) 范围内 17 位有效数字需要 19 位小数，10^19 按无符号数存放
+    private static final int MAX_FRACTION_DIGITS = 19;
+    private static final long[] POW10 = new long[MAX_FRACTION_DIGITS + 1];
+    private static final long HIDDEN_BIT = 1L << 52;
+
+    static {
+        long power = 1;
+        for (int i = 0; i < POW10.length; i++) {
+            POW10[i] = power;
+            power *= 10;
+        }
+    }
+
+    private DoubleFormatter() {
+    }
+
+    /**
+     * 从 pos 开始写入，调用方保证至少有 {@link #MAX_LENGTH} 字节的空间
+     *
+     * @return 写入后的位置，不在处理范围内时返回 -1 且不写入任何字节
+     */
+    static int write(double value, byte[] out, int pos) {
+        long bits = Double.doubleToRawLongBits(value);
+        double abs = Math.abs(value);
+        if (abs == 0) {
+            if (bits < 0) {
+                out[pos++] = '-';
+            }
+            out[pos++] = '0';
+            out[pos++] = '.';
+            out[pos++] = '0';
+            return pos;
+        }
+        if (!(abs >= MIN_PLAIN && abs < MAX_PLAIN)) {
+            return -1;
+        }
+
+        // value = f * 2^(biased - 1075)；以 2^(biased - 1077) 为单位，值为 4f，与相邻 double 的中点为 4f ± 2
+        int biased = (int) ((bits >>> 52) & 0x7FF);
+        long significand = (bits & (HIDDEN_BIT - 1)) | HIDDEN_BIT;
+        int shift = 1077 - biased;
+        long mid = significand << 2;
+        // 2 的整数次幂与前一个 double 的间距只有一半
+        long lower = significand == HIDDEN_BIT ? mid - 1 : mid - 2;
+        long upper = mid + 2;
+        // 中点按偶数舍入，尾数为偶数时区间包含两个端点
+        boolean inclusive = (significand & 1) == 0;
+
+        for (int digits = 0; digits <= MAX_FRACTION_DIGITS; digits++) {
+            long power = POW10[digits];
+            long min = quotient(lower, power, shift);
+            if (remainder(lower, power, shift) != 0 || !inclusive) {
+                min++;
+            }
+            long max = quotient(upper, power, shift);
+            if (remainder(upper, power, shift) == 0 && !inclusive) {
+                max--;
+            }
+            if (min > max) {
+                continue;
+            }
+            // 区间内有多个候选时取最接近原值的，同样接近时取末位为偶数的
+            long nearest = quotient(mid, power, shift);
+            int half = Long.compareUnsigned(remainder(mid, power, shift), 1L << (shift - 1));
+            if (half > 0 || (half == 0 && (nearest & 1) != 0)) {
+                nearest++;
+            }
+            return format(Math.max(min, Math.min(max, nearest)), digits, bits < 0, out, pos);
+        }
+        return -1;
+    }
+
+    /**
+     * (a * power) >>> shift，a 不超过 56 位，power 按无符号数处理，31 <= shift <= 64
+     */
+    private static long quotient(long a, long power, int shift) {
+        long high = Math.unsignedMultiplyHigh(a, power);
+        long low = a * power;
+        return shift == 64 ? high : (high << (64 - shift)) | (low >>> shift);
+    }
+
+    private static long remainder(long a, long power, int shift) {
+        long low = a * power;
+        return shift == 64 ? low : low & ((1L << shift) - 1);
+    }
+
+    /**
+     * 把 digits / 10^fractionDigits 写成普通小数，整数部分超过 7 位或小于 1e-3 时（进位后越过范围）返回 -1
+     */
+    private static int format(long digits, int fractionDigits, boolean negative, byte[] out, int pos) {
+        int length = 1;
+        while (length < 18 && digits >= POW10[length]) {
+            length++;
+        }
+        int integerDigits = length - fractionDigits;
+        if (integerDigits > 7 || integerDigits < -2) {
+            return -1;
+        }
+        if (negative) {
+            out[pos++] = '-';
+        }
+        if (fractionDigits == 0) {
+            pos = putDigits(digits, length, out, pos);
+            out[pos++] = '.';
+            out[pos++] = '0';
+            return pos;
+        }
+        if (integerDigits <= 0) {
+            out[pos++] = '0';
+            out[pos++] = '.';
+            for (int i = integerDigits; i < 0; i++) {
+                out[pos++] = '0';
+            }
+            return putDigits(digits, length, out, pos);
+        }
+        int end = pos + length + 1;
+        int i = end;
+        for (int k = 0; k < fractionDigits; k++) {
+            out[--i] = (byte) ('0' + digits % 10);
+            digits /= 10;
+        }
+        out[--i] = '.';
+        while (i > pos) {
+            out[--i] = (byte) ('0' + digits % 10);
+            digits /= 10;
+        }
+        return end;
+    }
+
+    private static int putDigits(long value, int length, byte[] out, int pos) {
+        int end = pos + length;
+        for (int i = end - 1; i >= pos; i--) {
+            out[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.tranforcpp.ipc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 事件准入控制
+ * <p>
+ * 在事件进入发送队列之前，按事件名称执行确定性采样和令牌桶限速。区块加载时的大量实体生成、
+ * 刷怪塔的持续伤害这类事件风暴会在这里被有选择地丢弃，而不是挤满发送队列后连同其他事件一起丢失。
+ * 未配置规则的事件直接放行，开销只有一次哈希查找。
+ * <p>
+ * 可能同时被多个区域线程调用（Folia）。
+ */
+public final class EventAdmission {
+
+    private static final int MAX_SUB_BUCKETS = 1024;
+
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+    private final Map<String, ShedCounter> shed = new ConcurrentHashMap<>();
+
+    public EventAdmission(Map<String, RateLimitRule> rules) {
+        rules.forEach((eventName, rule) -> limiters.put(eventName, new Limiter(rule)));
+    }
+
+    /**
+     * 判断事件是否可以发送，被拒绝的事件计入丢弃统计
+     */
+    public boolean admit(String eventName, Object[] args) {
+        Limiter limiter = limiters.get(eventName);
+        if (limiter == null) {
+            return true;
+        }
+        if (!limiter.sample()) {
+            counter(eventName).sampled.increment();
+            return false;
+        }
+        if (!limiter.acquire(args)) {
+            counter(eventName).limited.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 记录通过准入但因发送队列已满而丢弃的事件
+     */
+    public void recordOverflow(String eventName) {
+        counter(eventName).overflow.increment();
+    }
+
+    /**
+     * 记录因C++进程处理落后而在入队前丢弃的事件
+     */
+    public void recordLagging(String eventName) {
+        counter(eventName).lagging.increment();
+    }
+
+    private ShedCounter counter(String eventName) {
+        return shed.computeIfAbsent(eventName, name -> new ShedCounter());
+    }
+
+    /**
+     * 各事件的丢弃数量，按事件名称排序
+     */
+    public List<ShedCount> getShedCounts() {
+        List<ShedCount> counts = new ArrayList<>(shed.size());
+        shed.forEach((eventName, counter) -> counts.add(new ShedCount(eventName,
+            counter.sampled.sum(), counter.limited.sum(), counter.overflow.sum(), counter.lagging.sum())));
+        counts.sort((a, b) -> a.eventName().compareTo(b.eventName()));
+        return counts;
+    }
+
+    public long getTotalShed() {
+        long total = 0;
+        for (ShedCounter counter : shed.values()) {
+            total += counter.sampled.sum() + counter.limited.sum() + counter.overflow.sum() + counter.lagging.sum();
+        }
+        return total;
+    }
+
+    /**
+     * @param sampled  被采样跳过的数量
+     * @param limited  超出令牌桶速率的数量
+     * @param overflow 发送队列已满时丢弃的数量
+     * @param lagging  C++进程处理落后时丢弃的数量
+     */
+    public record ShedCount(String eventName, long sampled, long limited, long overflow, long lagging) {
+    }
+
+    private static final class ShedCounter {
+        final LongAdder sampled = new LongAdder();
+        final LongAdder limited = new LongAdder();
+        final LongAdder overflow = new LongAdder();
+        final LongAdder lagging = new LongAdder();
+    }
+
+    private static final class Limiter {
+        private final RateLimitRule rule;
+        private final AtomicLong sequence = new AtomicLong();
+        private final TokenBucket bucket;
+        private final Map<Object, TokenBucket> subBuckets;
+
+        Limiter(RateLimitRule rule) {
+            this.rule = rule;
+            boolean shared = rule.isRateLimited() && !rule.perPlayer();
+            this.bucket = shared ? new TokenBucket(rule.rate(), rule.burst()) : null;
+            this.subBuckets = rule.isRateLimited() && rule.perPlayer() ? new ConcurrentHashMap<>() : null;
+        }
+
+        boolean sample() {
+            return !rule.isSampled() || sequence.getAndIncrement() % rule.sampleEvery() == 0;
+        }
+
+        boolean acquire(Object[] args) {
+            if (bucket != null) {
+                return bucket.tryAcquire();
+            }
+            if (subBuckets == null) {
+                return true;
+            }
+            Object key = playerKey(args);
+            TokenBucket sub = subBuckets.get(key);
+            if (sub == null) {
+                if (subBuckets.size() >= MAX_SUB_BUCKETS) {
+                    subBuckets.values().removeIf(TokenBucket::isFull);
+                }
+                sub = subBuckets.computeIfAbsent(key, k -> new TokenBucket(rule.rate(), rule.burst()));
+            }
+            return sub.tryAcquire();
+        }
+
+        /**
+         * 触发事件的玩家：玩家句柄按 UUID 区分，非玩家的 HumanEntity 按名称，没有玩家的事件共用一个桶
+         */
+        private static Object playerKey(Object[] args) {
+            Object first = args != null && args.length > 0 ? args[0] : null;
+            if (first instanceof HandleRef ref) {
+                return ref.getKey();
+            }
+            return first != null ? first : "";
+        }
+    }
+}
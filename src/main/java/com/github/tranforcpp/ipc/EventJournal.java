@@ -0,0 +1,350 @@
+package com.github.tranforcpp.ipc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 需要至少送达一次的事件的日志
+ * <p>
+ * 写出线程把 {@code ipc.journal.events} 中的事件写进管道前先追加到日志，每条记录带一个递增的序号，
+ * 每批事件之后发送 {@link EventType#SEQ} 标记，C++端处理完标记之前的事件后回复 ack，确认的序号写入 ack 文件。
+ * 进程崩溃重启、热替换或服务器重启后，新进程先收到序号大于确认值的事件，C++端可能收到重复的事件。
+ * <p>
+ * 日志由多个段文件组成，写入通过内存映射顺序追加，写满后切换到新的段。已全部确认的段删除；
+ * 未确认的记录超出 {@code max-size-mb} 或早于 {@code max-age-s} 时按段丢弃最早的。
+ * 映射的页由操作系统写回磁盘，JVM 崩溃不丢记录，操作系统崩溃可能丢失最后写入的部分。
+ * <p>
+ * 记录格式：正文长度（int）、序号（long）、写入时间（毫秒，long），正文见 {@link EventRecords}。
+ * 长度最后写入，长度为 0 的位置是段的结尾。同名进程共用一个日志，所有方法加锁。
+ */
+public final class EventJournal {
+
+    private static final int RECORD_HEADER = Integer.BYTES + Long.BYTES + Long.BYTES;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String ACK_FILE = "ack";
+
+    private final Path dir;
+    private final JournalSettings settings;
+    private final Logger logger;
+    private final String label;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+    private MappedByteBuffer ackBuffer;
+    private Segment active;
+    private long lastSeq;
+    private long acknowledged;
+    private long sizeBytes;
+    private long appended;
+    private long replayed;
+    private long expired;
+
+    /**
+     * 已写入的记录
+     */
+    public record Entry(long seq, QueuedEvent event) {
+    }
+
+    private static final class Segment {
+        final Path path;
+        final long firstSeq;
+        long lastSeq;
+        long lastWriteMillis;
+        int size;
+        MappedByteBuffer buffer;
+
+        Segment(Path path, long firstSeq) {
+            this.path = path;
+            this.firstSeq = firstSeq;
+            this.lastSeq = firstSeq - 1;
+        }
+    }
+
+    private EventJournal(Path dir, JournalSettings settings, Logger logger, String label) {
+        this.dir = dir;
+        this.settings = settings;
+        this.logger = logger;
+        this.label = label;
+    }
+
+    /**
+     * 打开目录中已有的日志，没有时创建
+     *
+     * @param label 日志前缀，与进程的前缀相同
+     */
+    public static EventJournal open(Path dir, JournalSettings settings, Logger logger, String label) throws IOException {
+        Files.createDirectories(dir);
+        EventJournal journal = new EventJournal(dir, settings, logger, label);
+        try (FileChannel channel = FileChannel.open(dir.resolve(ACK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            journal.ackBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        }
+        journal.recover();
+        return journal;
+    }
+
+    /**
+     * 扫描已有的段，恢复最后的序号，删除已全部确认的段
+     */
+    private void recover() throws IOException {
+        acknowledged = ackBuffer.getLong(0);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        // 文件名中的序号补零到固定宽度，按名称排序即按序号排序
+        files.sort(null);
+        for (Path file : files) {
+            Segment segment = new Segment(file, parseFirstSeq(file));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                segment.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            scan(segment);
+            if (segment.size == 0 || segment.lastSeq <= acknowledged) {
+                segment.buffer = null;
+                Files.deleteIfExists(file);
+                continue;
+            }
+            segments.addLast(segment);
+            sizeBytes += segment.size;
+            lastSeq = Math.max(lastSeq, segment.lastSeq);
+        }
+        lastSeq = Math.max(lastSeq, acknowledged);
+    }
+
+    private static long parseFirstSeq(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 找到段的结尾：长度为 0、记录不完整或到达文件末尾
+     */
+    private static void scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + RECORD_HEADER <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER + length > buffer.capacity()) {
+                break;
+            }
+            segment.lastSeq = buffer.getLong(position + Integer.BYTES);
+            segment.lastWriteMillis = buffer.getLong(position + Integer.BYTES + Long.BYTES);
+            position += RECORD_HEADER + length;
+        }
+        segment.size = position;
+    }
+
+    /**
+     * 追加一个事件
+     *
+     * @return 事件的序号
+     */
+    public synchronized long append(QueuedEvent event) throws IOException {
+        if (ackBuffer == null) {
+            throw new IOException("journal closed: " + dir);
+        }
+        recordBuffer.reset();
+        EventRecords.write(recordOut, event);
+        int length = recordBuffer.size();
+        if (active == null || active.buffer.capacity() - active.size < RECORD_HEADER + length) {
+            rotate(RECORD_HEADER + length);
+        }
+        long seq = ++lastSeq;
+        long now = System.currentTimeMillis();
+        MappedByteBuffer buffer = active.buffer;
+        int position = active.size;
+        buffer.putLong(position + Integer.BYTES, seq);
+        buffer.putLong(position + Integer.BYTES + Long.BYTES, now);
+        buffer.put(position + RECORD_HEADER, recordBuffer.toByteArray());
+        // 长度最后写入，扫描时不会读到写了一半的记录
+        buffer.putInt(position, length);
+        active.size += RECORD_HEADER + length;
+        active.lastSeq = seq;
+        active.lastWriteMillis = now;
+        sizeBytes += RECORD_HEADER + length;
+        appended++;
+        return seq;
+    }
+
+    /**
+     * 切换到新的段，段的大小至少能放下一条记录
+     */
+    private void rotate(int recordBytes) throws IOException {
+        long firstSeq = lastSeq + 1;
+        Segment segment = new Segment(dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSeq, SEGMENT_SUFFIX)),
+            firstSeq);
+        long capacity = Math.max((long) settings.segmentSizeMb() * 1024 * 1024, recordBytes);
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            segment.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+        segments.addLast(segment);
+        active = segment;
+        trim();
+    }
+
+    /**
+     * C++端确认处理完序号不大于 seq 的事件
+     */
+    public synchronized void acknowledge(long seq) {
+        if (ackBuffer == null || seq <= acknowledged) {
+            return;
+        }
+        acknowledged = Math.min(seq, lastSeq);
+        ackBuffer.putLong(0, acknowledged);
+        trim();
+    }
+
+    /**
+     * 删除已全部确认的段，以及超出保留限制的最早的段；正在写入的段总是保留
+     */
+    private void trim() {
+        long now = System.currentTimeMillis();
+        long maxBytes = settings.maxSizeMb() * 1024 * 1024;
+        long maxAgeMillis = TimeUnit.SECONDS.toMillis(settings.maxAgeSeconds());
+        long dropped = 0;
+        while (segments.size() > 1) {
+            Segment oldest = segments.peekFirst();
+            boolean confirmed = oldest.lastSeq <= acknowledged;
+            if (!confirmed && sizeBytes <= maxBytes && now - oldest.lastWriteMillis <= maxAgeMillis) {
+                break;
+            }
+            if (!confirmed) {
+                dropped += oldest.lastSeq - Math.max(acknowledged, oldest.firstSeq - 1);
+            }
+            segments.pollFirst();
+            sizeBytes -= oldest.size;
+            oldest.buffer = null;
+            try {
+                Files.deleteIfExists(oldest.path);
+            } catch (IOException e) {
+                logger.warning(label + "删除事件日志段失败: " + e.getMessage());
+            }
+        }
+        if (dropped > 0) {
+            expired += dropped;
+            logger.warning(label + "事件日志超出保留限制，丢弃未确认的事件 " + dropped + " 条");
+        }
+    }
+
+    /**
+     * 按序号顺序读取 (afterSeq, untilSeq] 范围内的记录，已被保留策略丢弃的记录跳过
+     *
+     * @return 读取的记录数
+     */
+    public synchronized int readAfter(long afterSeq, long untilSeq, int maxEntries, List<Entry> target)
+            throws IOException {
+        int read = 0;
+        for (Segment segment : segments) {
+            if (segment.lastSeq <= afterSeq) {
+                continue;
+            }
+            MappedByteBuffer buffer = segment.buffer;
+            int position = 0;
+            while (position < segment.size) {
+                int length = buffer.getInt(position);
+                long seq = buffer.getLong(position + Integer.BYTES);
+                if (seq > untilSeq || read >= maxEntries) {
+                    return read;
+                }
+                if (seq > afterSeq) {
+                    byte[] body = new byte[length];
+                    buffer.get(position + RECORD_HEADER, body);
+                    target.add(new Entry(seq, EventRecords.read(new DataInputStream(new ByteArrayInputStream(body)))));
+                    read++;
+                }
+                position += RECORD_HEADER + length;
+            }
+        }
+        return read;
+    }
+
+    public synchronized void recordReplayed(int count) {
+        replayed += count;
+    }
+
+    /**
+     * 把映射的页写回磁盘并释放映射，文件保留，下次打开时重放未确认的记录
+     */
+    public synchronized void close() {
+        if (active != null) {
+            active.buffer.force();
+        }
+        if (ackBuffer != null) {
+            ackBuffer.force();
+        }
+        for (Segment segment : segments) {
+            segment.buffer = null;
+        }
+        segments.clear();
+        active = null;
+        ackBuffer = null;
+    }
+
+    /**
+     * 最后写入的序号
+     */
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * C++端已确认的序号
+     */
+    public synchronized long getAcknowledged() {
+        return acknowledged;
+    }
+
+    /**
+     * 已写入但未确认的记录数
+     */
+    public synchronized long getPending() {
+        return lastSeq - acknowledged;
+    }
+
+    public synchronized long getAppended() {
+        return appended;
+    }
+
+    public synchronized long getReplayed() {
+        return replayed;
+    }
+
+    /**
+     * 超出保留限制、未送达就被丢弃的记录数
+     */
+    public synchronized long getExpired() {
+        return expired;
+    }
+
+    /**
+     * 现有段中记录占用的字节数
+     */
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+}
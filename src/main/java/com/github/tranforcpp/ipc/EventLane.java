@@ -0,0 +1,268 @@
+package com.github.tranforcpp.ipc;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 单个事件通道：一个有界队列加上队列已满时的处理策略
+ * <p>
+ * 正常情况下入队与 {@link MpscArrayQueue} 相同，不加锁；只有队列已满时才按策略处理：
+ * <ul>
+ *   <li>drop-oldest：生产者借用消费者锁取出最早的事件再入队，因此该策略下写出线程取事件时也要加锁</li>
+ *   <li>block：生产者短暂挂起重试，超时后丢弃新事件；C++端处理落后时不等待，直接丢弃</li>
+ *   <li>spill：转为写入临时文件，之后的事件也写入文件直到写出线程全部读回，保持先后顺序</li>
+ * </ul>
+ */
+final class EventLane {
+
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final String name;
+    private final OverflowPolicy policy;
+    private final MpscArrayQueue<QueuedEvent> queue;
+    private final long blockTimeoutNanos;
+    private final SpillFile spill;
+    private final Consumer<QueuedEvent> dropListener;
+    private final Object consumerLock = new Object();
+    private final List<QueuedEvent> spillBuffer = new ArrayList<>(1);
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private volatile boolean spilling;
+    private volatile boolean stalled;
+    // 取到的 tick 结束标记，放行前不再取这个通道的事件，只由写出线程访问
+    private QueuedEvent tickEnd;
+
+    EventLane(String name, LaneSettings settings, Path spillDir, Consumer<QueuedEvent> dropListener) {
+        this.name = name;
+        this.policy = settings.overflow();
+        this.queue = new MpscArrayQueue<>(settings.capacity());
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(settings.blockTimeoutMs());
+        this.spill = policy == OverflowPolicy.SPILL
+            ? new SpillFile(spillDir.resolve("spill-" + name + ".bin"), settings.spillLimitMb() * 1024 * 1024)
+            : null;
+        this.dropListener = dropListener;
+    }
+
+    /**
+     * 入队，新事件被丢弃时返回 false（drop-oldest 丢弃的是旧事件，新事件总会入队）
+     */
+    boolean offer(QueuedEvent event) {
+        if (!spilling && queue.offer(event)) {
+            return true;
+        }
+        return switch (policy) {
+            case DROP_NEWEST -> drop(event);
+            case DROP_OLDEST -> replaceOldest(event);
+            case BLOCK -> offerBlocking(event);
+            case SPILL -> spill(event);
+        };
+    }
+
+    /**
+     * C++端处理落后时为 true，block 策略不再等待
+     */
+    void setStalled(boolean stalled) {
+        this.stalled = stalled;
+    }
+
+    private boolean drop(QueuedEvent event) {
+        dropped.increment();
+        dropListener.accept(event);
+        return false;
+    }
+
+    private boolean replaceOldest(QueuedEvent event) {
+        while (true) {
+            QueuedEvent oldest;
+            synchronized (consumerLock) {
+                oldest = queue.poll();
+            }
+            if (oldest != null) {
+                drop(oldest);
+            }
+            // 其他生产者可能抢先占用了腾出的位置，继续丢弃直到入队成功
+            if (queue.offer(event)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean offerBlocking(QueuedEvent event) {
+        if (stalled) {
+            // 额度用尽时写出线程不会取事件，等待只会拖慢生产者
+            return drop(event);
+        }
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            if (queue.offer(event)) {
+                return true;
+            }
+        }
+        return drop(event);
+    }
+
+    private boolean spill(QueuedEvent event) {
+        synchronized (spill) {
+            // 文件已清空且写出线程腾出了位置时回到内存队列
+            if (!spilling && queue.offer(event)) {
+                return true;
+            }
+            if (!spill.append(event)) {
+                return drop(event);
+            }
+            spilling = true;
+        }
+        spilled.increment();
+        return true;
+    }
+
+    /**
+     * 取出一个事件，只能由写出线程调用；取到 tick 结束标记时暂存并返回 null，见 {@link #getTickEnd()}
+     */
+    QueuedEvent poll() {
+        if (tickEnd != null) {
+            return null;
+        }
+        QueuedEvent event;
+        if (policy == OverflowPolicy.DROP_OLDEST) {
+            synchronized (consumerLock) {
+                event = queue.poll();
+            }
+        } else {
+            event = queue.poll();
+        }
+        if (event == null && spilling) {
+            spillBuffer.clear();
+            readSpill(spillBuffer, 1);
+            event = spillBuffer.isEmpty() ? null : spillBuffer.get(0);
+        }
+        if (event != null && event.isTickEnd()) {
+            tickEnd = event;
+            return null;
+        }
+        return event;
+    }
+
+    /**
+     * 批量取出事件，只能由写出线程调用。内存队列中的事件总是早于溢出文件中的事件；
+     * 遇到 tick 结束标记时停止，标记不放入 target
+     */
+    int drainTo(Collection<? super QueuedEvent> target, int maxEvents) {
+        if (maxEvents <= 0 || tickEnd != null) {
+            return 0;
+        }
+        int count;
+        if (policy == OverflowPolicy.DROP_OLDEST) {
+            synchronized (consumerLock) {
+                count = drainQueue(target, maxEvents);
+            }
+        } else {
+            count = drainQueue(target, maxEvents);
+        }
+        // 溢出文件中也可能有标记，逐个读取
+        while (count < maxEvents && tickEnd == null && spilling) {
+            spillBuffer.clear();
+            if (readSpill(spillBuffer, 1) == 0) {
+                break;
+            }
+            QueuedEvent event = spillBuffer.get(0);
+            if (event.isTickEnd()) {
+                tickEnd = event;
+            } else {
+                target.add(event);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int drainQueue(Collection<? super QueuedEvent> target, int maxEvents) {
+        int count = 0;
+        QueuedEvent event;
+        while (count < maxEvents && (event = queue.poll()) != null) {
+            if (event.isTickEnd()) {
+                tickEnd = event;
+                break;
+            }
+            target.add(event);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 已取到、尚未放行的 tick 结束标记，没有时为 null
+     */
+    QueuedEvent getTickEnd() {
+        return tickEnd;
+    }
+
+    /**
+     * 放行暂存的标记，之后继续取这个通道的事件
+     */
+    void releaseTickEnd() {
+        tickEnd = null;
+    }
+
+    private int readSpill(Collection<? super QueuedEvent> target, int maxEvents) {
+        synchronized (spill) {
+            if (!queue.isEmpty()) {
+                return 0;
+            }
+            int count;
+            try {
+                count = spill.readTo(target, maxEvents);
+            } catch (IOException e) {
+                int lost = spill.size();
+                spill.clear();
+                dropped.add(lost);
+                count = 0;
+            }
+            if (spill.isEmpty()) {
+                spilling = false;
+            }
+            return count;
+        }
+    }
+
+    int size() {
+        return queue.size() + (spill != null ? spill.size() : 0);
+    }
+
+    void clear() {
+        tickEnd = null;
+        synchronized (consumerLock) {
+            queue.clear();
+        }
+        if (spill != null) {
+            synchronized (spill) {
+                spill.clear();
+                spilling = false;
+            }
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    long getSpilled() {
+        return spilled.sum();
+    }
+}
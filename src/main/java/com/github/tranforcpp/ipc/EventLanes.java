@@ -0,0 +1,215 @@
+package com.github.tranforcpp.ipc;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 按优先级分开的事件通道
+ * <p>
+ * 玩家加入/退出/死亡、控制台命令等生命周期事件进入 critical 通道，移动、实体生成、伤害等高频事件进入 bulk 通道，
+ * 两者各自有容量和溢出策略，高频事件再多也挤不掉生命周期事件。写出线程每批按权重从两个通道取事件，
+ * critical 总是先取，未用完的份额让给另一个通道，因此 critical 事件可能先于更早入队的 bulk 事件送达。
+ * <p>
+ * tick 结束标记同时放入两个通道，通道取到标记后暂停，两个通道都到达同一个 tick 的结束（或另一个通道已空）时
+ * 才放行标记，下一个 tick 的事件不会提前混进当前 tick 的帧。等待裁决的请求和查询结果不属于任何帧，
+ * 单独排队且总是最先取出，不会被标记挡住。
+ * <p>
+ * {@link #offer} 可以被任意线程调用；{@link #poll}、{@link #drainTo} 只能由写出线程调用。
+ */
+public final class EventLanes {
+
+    private static final int SPIN_ROUNDS = 256;
+
+    private final EventLane critical;
+    private final EventLane bulk;
+    private final MpscArrayQueue<QueuedEvent> immediate;
+    private final Set<String> criticalEvents;
+    private final int criticalWeight;
+    private final int totalWeight;
+    private final AtomicReference<Thread> waiter = new AtomicReference<>();
+    // 最近放行的 tick，只由写出线程访问
+    private long lastTick = -1;
+
+    /**
+     * @param spillDir     spill 策略临时文件所在目录
+     * @param dropListener 事件被丢弃时在丢弃它的线程上回调
+     */
+    public EventLanes(IpcSettings settings, Path spillDir, Consumer<QueuedEvent> dropListener) {
+        this.critical = new EventLane("critical", settings.getCriticalLane(), spillDir, dropListener);
+        this.bulk = new EventLane("bulk", settings.getBulkLane(), spillDir, dropListener);
+        this.immediate = new MpscArrayQueue<>(settings.getCriticalLane().capacity());
+        this.criticalEvents = settings.getCriticalEvents();
+        this.criticalWeight = settings.getCriticalLane().weight();
+        this.totalWeight = criticalWeight + settings.getBulkLane().weight();
+    }
+
+    /**
+     * 按事件名称放入对应通道，事件被丢弃时返回 false
+     */
+    public boolean offer(QueuedEvent event) {
+        if (event.isTickEnd()) {
+            // 先 bulk 后 critical：写出线程在 critical 取到标记时，bulk 的标记一定已经入队
+            bulk.offer(event);
+            critical.offer(event);
+        } else if (!event.isImmediate() || !immediate.offer(event)) {
+            // 等待裁决的请求排满时退回 critical 通道，按其溢出策略处理
+            EventLane lane = event.isImmediate() || criticalEvents.contains(event.eventName()) ? critical : bulk;
+            if (!lane.offer(event)) {
+                return false;
+            }
+        }
+        // 入队与写出线程挂起前的标记构成 Dekker 式握手，与 MpscArrayQueue 相同
+        Thread parked = waiter.get();
+        if (parked != null && waiter.compareAndSet(parked, null)) {
+            LockSupport.unpark(parked);
+        }
+        return true;
+    }
+
+    private QueuedEvent pollOnce() {
+        while (true) {
+            QueuedEvent event = immediate.poll();
+            if (event == null) {
+                event = critical.poll();
+            }
+            if (event == null) {
+                event = bulk.poll();
+            }
+            if (event != null) {
+                return event;
+            }
+            QueuedEvent tickEnd = releaseTickEnd();
+            if (tickEnd == null) {
+                return null;
+            }
+            if (tickEnd.tickEnd() > lastTick) {
+                lastTick = tickEnd.tickEnd();
+                return tickEnd;
+            }
+            // 另一个通道曾丢掉这个 tick 的标记，已单独放行过
+        }
+    }
+
+    /**
+     * 两个通道都已暂停或已空时放行 tick 较小的标记，没有暂存的标记时返回 null
+     */
+    private QueuedEvent releaseTickEnd() {
+        QueuedEvent criticalEnd = critical.getTickEnd();
+        QueuedEvent bulkEnd = bulk.getTickEnd();
+        if (criticalEnd == null && bulkEnd == null) {
+            return null;
+        }
+        QueuedEvent tickEnd = criticalEnd == null ? bulkEnd
+            : bulkEnd == null || criticalEnd.tickEnd() <= bulkEnd.tickEnd() ? criticalEnd : bulkEnd;
+        if (criticalEnd != null && criticalEnd.tickEnd() <= tickEnd.tickEnd()) {
+            critical.releaseTickEnd();
+        }
+        if (bulkEnd != null && bulkEnd.tickEnd() <= tickEnd.tickEnd()) {
+            bulk.releaseTickEnd();
+        }
+        return tickEnd;
+    }
+
+    /**
+     * 取出一个事件，critical 优先，所有通道都为空时先短暂自旋再挂起等待，超时仍为空则返回 null
+     */
+    public QueuedEvent poll(long timeout, TimeUnit unit) throws InterruptedException {
+        QueuedEvent event;
+        for (int i = 0; i < SPIN_ROUNDS; i++) {
+            if ((event = pollOnce()) != null) {
+                return event;
+            }
+            Thread.onSpinWait();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Thread current = Thread.currentThread();
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waiter.set(current);
+            event = pollOnce();
+            if (event != null) {
+                waiter.set(null);
+                return event;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                waiter.set(null);
+                return null;
+            }
+            LockSupport.parkNanos(this, remaining);
+            waiter.set(null);
+            event = pollOnce();
+            if (event != null) {
+                return event;
+            }
+        }
+    }
+
+    /**
+     * 按权重从两个通道批量取出事件
+     *
+     * @return 取出的事件个数
+     */
+    public int drainTo(Collection<? super QueuedEvent> target, int maxEvents) {
+        int count = immediate.drainTo(target, maxEvents);
+        int criticalShare = Math.max(1, (int) ((long) (maxEvents - count) * criticalWeight / totalWeight));
+        count += critical.drainTo(target, Math.min(criticalShare, maxEvents - count));
+        count += bulk.drainTo(target, maxEvents - count);
+        if (count < maxEvents) {
+            count += critical.drainTo(target, maxEvents - count);
+        }
+        // 两个通道都停在标记处或已空，放行标记后继续取下一个 tick 的事件
+        QueuedEvent event;
+        while (count < maxEvents && (event = pollOnce()) != null) {
+            target.add(event);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * C++端处理落后（额度用尽超过 stall-ms）时为 true，block 策略的通道不再让生产者等待
+     */
+    public void setStalled(boolean stalled) {
+        critical.setStalled(stalled);
+        bulk.setStalled(stalled);
+    }
+
+    public void clear() {
+        immediate.clear();
+        critical.clear();
+        bulk.clear();
+    }
+
+    /**
+     * 近似的待发送事件数（含溢出到磁盘的事件），仅用于统计
+     */
+    public int size() {
+        return immediate.size() + critical.size() + bulk.size();
+    }
+
+    public LaneStats getCriticalStats() {
+        return stats(critical);
+    }
+
+    public LaneStats getBulkStats() {
+        return stats(bulk);
+    }
+
+    private static LaneStats stats(EventLane lane) {
+        return new LaneStats(lane.getName(), lane.getPolicy(), lane.size(), lane.getDropped(), lane.getSpilled());
+    }
+
+    /**
+     * 单个通道的统计快照
+     */
+    public record LaneStats(String name, OverflowPolicy policy, int size, long dropped, long spilled) {
+    }
+}
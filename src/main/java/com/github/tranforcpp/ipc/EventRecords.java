@@ -0,0 +1,89 @@
+package com.github.tranforcpp.ipc;
+
+import org.bukkit.util.Vector;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * 事件在磁盘上的记录格式，{@link SpillFile} 和 {@link EventJournal} 共用
+ * <p>
+ * 参数类型标签与 {@link BinaryFrameEncoder} 相同，读回后类型不变；句柄按名称记录，读回后为字符串。
+ */
+final class EventRecords {
+
+    private EventRecords() {
+    }
+
+    static void write(DataOutputStream out, QueuedEvent event) throws IOException {
+        out.writeLong(event.tickEnd());
+        if (event.isTickEnd()) {
+            return;
+        }
+        out.writeUTF(event.eventName());
+        Object[] args = event.args();
+        out.writeInt(args.length);
+        for (Object arg : args) {
+            if (arg == null) {
+                out.writeByte(BinaryFrameEncoder.TAG_NULL);
+            } else if (arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+                out.writeByte(BinaryFrameEncoder.TAG_INT);
+                out.writeInt(((Number) arg).intValue());
+            } else if (arg instanceof Long value) {
+                out.writeByte(BinaryFrameEncoder.TAG_LONG);
+                out.writeLong(value);
+            } else if (arg instanceof Double || arg instanceof Float) {
+                out.writeByte(BinaryFrameEncoder.TAG_DOUBLE);
+                out.writeDouble(((Number) arg).doubleValue());
+            } else if (arg instanceof Boolean value) {
+                out.writeByte(BinaryFrameEncoder.TAG_BOOL);
+                out.writeBoolean(value);
+            } else if (arg instanceof UUID value) {
+                out.writeByte(BinaryFrameEncoder.TAG_UUID);
+                out.writeLong(value.getMostSignificantBits());
+                out.writeLong(value.getLeastSignificantBits());
+            } else if (arg instanceof Vector value) {
+                out.writeByte(BinaryFrameEncoder.TAG_VECTOR);
+                out.writeDouble(value.getX());
+                out.writeDouble(value.getY());
+                out.writeDouble(value.getZ());
+            } else {
+                // writeUTF 限制 64KB，长文本按字节写入
+                byte[] bytes = arg.toString().getBytes(StandardCharsets.UTF_8);
+                out.writeByte(BinaryFrameEncoder.TAG_STRING);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    static QueuedEvent read(DataInputStream in) throws IOException {
+        long tickEnd = in.readLong();
+        if (tickEnd >= 0) {
+            return QueuedEvent.tickEnd(tickEnd);
+        }
+        String eventName = in.readUTF();
+        Object[] args = new Object[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            byte tag = in.readByte();
+            args[i] = switch (tag) {
+                case BinaryFrameEncoder.TAG_INT -> in.readInt();
+                case BinaryFrameEncoder.TAG_LONG -> in.readLong();
+                case BinaryFrameEncoder.TAG_DOUBLE -> in.readDouble();
+                case BinaryFrameEncoder.TAG_BOOL -> in.readBoolean();
+                case BinaryFrameEncoder.TAG_UUID -> new UUID(in.readLong(), in.readLong());
+                case BinaryFrameEncoder.TAG_VECTOR -> new Vector(in.readDouble(), in.readDouble(), in.readDouble());
+                case BinaryFrameEncoder.TAG_STRING -> {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    yield new String(bytes, StandardCharsets.UTF_8);
+                }
+                default -> null;
+            };
+        }
+        return new QueuedEvent(eventName, args, -1L);
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.tranforcpp.ipc;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 事件类型表
+ * <p>
+ * 为每个转发给C++进程的事件分配一个固定的数字标签，
+ * 二进制协议中只传输标签而不是事件名称字符串。
+ * <p>
+ * 注意：标签值是协议的一部分，必须与 tranforcpp_api.h 中的
+ * tranforcpp::wire::EventType 保持一致，只能追加不能修改。
+ */
+public enum EventType {
+
+    CUSTOM(0, null),
+    HELLO(1, "Hello"),
+    SHUTDOWN(2, "shutdown"),
+    /**
+     * tick帧头，参数为tick编号和随后属于该tick的事件数
+     */
+    TICK(3, "Tick"),
+    /**
+     * 登记句柄，参数为句柄、{@link HandleKind} 和名称，由C++端的帧读取层处理，不作为事件分发
+     */
+    DEFINE(4, "Define"),
+    /**
+     * 请求裁决的可取消事件，参数为关联编号、事件名称和原事件参数，见 {@link VerdictExchange}
+     */
+    REQUEST(5, "Request"),
+    /**
+     * 查询结果，参数为查询编号、是否成功和结果，见 {@link com.github.tranforcpp.query.QueryService}
+     */
+    QUERY_RESULT(6, "QueryResult"),
+    /**
+     * 热替换时请求旧进程导出状态，没有参数，C++端处理完之前的事件后以 state 动作回复
+     */
+    SAVE_STATE(7, "SaveState"),
+    /**
+     * 热替换时把旧进程导出的状态交给新进程，参数为状态字符串，在任何事件之前发送
+     */
+    RESTORE_STATE(8, "RestoreState"),
+    /**
+     * 事件日志序号标记，参数为序号，跟在一批事件之后；C++端处理完之前的事件后以 ack 动作回复，见 {@link EventJournal}
+     */
+    SEQ(9, "Seq"),
+
+    PLAYER_JOIN(10, "PlayerJoin"),
+    PLAYER_QUIT(11, "PlayerQuit"),
+    PLAYER_CHAT(12, "PlayerChat"),
+    PLAYER_MOVE(13, "PlayerMove"),
+    PLAYER_RESPAWN(14, "PlayerRespawn"),
+    PLAYER_DEATH(15, "PlayerDeath"),
+    PLAYER_INTERACT(16, "PlayerInteract"),
+    PLAYER_DROP_ITEM(17, "PlayerDropItem"),
+    PLAYER_PICKUP_ITEM(18, "PlayerPickupItem"),
+
+    BLOCK_BREAK(30, "BlockBreak"),
+    BLOCK_PLACE(31, "BlockPlace"),
+    BLOCK_IGNITE(32, "BlockIgnite"),
+
+    ENTITY_DAMAGE(40, "EntityDamage"),
+    ENTITY_DEATH(41, "EntityDeath"),
+    ENTITY_SPAWN(42, "EntitySpawn"),
+    HANGING_BREAK(43, "HangingBreak"),
+
+    INVENTORY_CLICK(50, "InventoryClick"),
+    INVENTORY_OPEN(51, "InventoryOpen"),
+    INVENTORY_CLOSE(52, "InventoryClose"),
+
+    SERVER_COMMAND(60, "ServerCommand"),
+    WORLD_LOAD(61, "WorldLoad"),
+    WEATHER_CHANGE(62, "WeatherChange");
+
+    private static final Map<String, EventType> BY_WIRE_NAME = new HashMap<>();
+    private static final Set<EventType> PLAYER_EVENTS = EnumSet.of(
+        PLAYER_JOIN, PLAYER_QUIT, PLAYER_CHAT, PLAYER_MOVE, PLAYER_RESPAWN, PLAYER_DEATH, PLAYER_INTERACT,
+        PLAYER_DROP_ITEM, PLAYER_PICKUP_ITEM, BLOCK_BREAK, BLOCK_PLACE, BLOCK_IGNITE,
+        INVENTORY_CLICK, INVENTORY_OPEN, INVENTORY_CLOSE);
+
+    static {
+        for (EventType type : values()) {
+            if (type.wireName != null) {
+                BY_WIRE_NAME.put(type.wireName, type);
+            }
+        }
+    }
+
+    private final int id;
+    private final String wireName;
+
+    EventType(int id, String wireName) {
+        this.id = id;
+        this.wireName = wireName;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getWireName() {
+        return wireName;
+    }
+
+    /**
+     * 第一个参数是触发事件的玩家（BlockIgnite 可能没有玩家），{@code rate-limits} 的 per-player 只对这些事件有效
+     */
+    public boolean hasPlayer() {
+        return PLAYER_EVENTS.contains(this);
+    }
+
+    /**
+     * 根据事件名称查找类型，未登记的名称返回 {@link #CUSTOM}
+     */
+    public static EventType fromWireName(String wireName) {
+        EventType type = BY_WIRE_NAME.get(wireName);
+        return type != null ? type : CUSTOM;
+    }
+}
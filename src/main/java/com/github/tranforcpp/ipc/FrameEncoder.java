@@ -0,0 +1,35 @@
+package com.github.tranforcpp.ipc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 事件帧编码器
+ * <p>
+ * 将事件编码为发送给C++进程的字节帧。编码器内部持有可复用的缓冲区，
+ * 可以连续追加多个事件后一次性写出。
+ * <p>
+ * 编码器不是线程安全的，每个发送线程应持有独立的实例。
+ */
+public interface FrameEncoder {
+
+    /**
+     * 追加一个事件帧到缓冲区
+     */
+    void writeEvent(String eventName, Object[] args);
+
+    /**
+     * 将缓冲区中的全部帧写入输出流
+     */
+    void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * 当前缓冲区中已编码的字节数
+     */
+    int size();
+
+    /**
+     * 清空缓冲区以便复用
+     */
+    void reset();
+}
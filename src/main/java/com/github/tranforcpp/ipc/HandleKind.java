@@ -0,0 +1,22 @@
+package com.github.tranforcpp.ipc;
+
+/**
+ * 句柄类型，数值是协议的一部分，必须与 tranforcpp_api.h 中的 tranforcpp::wire::HandleKind 保持一致
+ */
+public enum HandleKind {
+
+    PLAYER(1),
+    WORLD(2),
+    MATERIAL(3),
+    ENTITY_TYPE(4);
+
+    private final int id;
+
+    HandleKind(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+}
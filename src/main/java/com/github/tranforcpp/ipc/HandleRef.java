@@ -0,0 +1,46 @@
+package com.github.tranforcpp.ipc;
+
+/**
+ * 可以用整数句柄代替名称发送的事件参数
+ * <p>
+ * 协商了 handles 功能的二进制协议中，同一个对象第一次出现时先发送一个 Define 帧登记句柄和名称，
+ * 之后只发送句柄；其他情况下按名称发送，{@link #toString()} 也返回名称。
+ */
+public final class HandleRef {
+
+    private final int id;
+    private final HandleKind kind;
+    private final Object key;
+    private final String name;
+
+    HandleRef(int id, HandleKind kind, Object key, String name) {
+        this.id = id;
+        this.kind = kind;
+        this.key = key;
+        this.name = name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public HandleKind getKind() {
+        return kind;
+    }
+
+    /**
+     * 玩家和世界为 UUID，方块和实体类型为枚举值
+     */
+    public Object getKey() {
+        return key;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.tranforcpp.ipc;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 玩家、世界、方块类型和实体类型的句柄表
+ * <p>
+ * 每个对象在插件运行期间只分配一个句柄，事件参数直接使用缓存的 {@link HandleRef}，捕获事件时不再拼接字符串。
+ * C++ 端发来的消息可以用句柄指定玩家，按 UUID 查找，无需再按名称匹配。
+ * 可能同时被多个区域线程调用（Folia）。
+ */
+public final class HandleRegistry {
+
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final Map<HandleKind, Map<Object, HandleRef>> byKey = new EnumMap<>(HandleKind.class);
+    private final Map<Integer, HandleRef> byId = new ConcurrentHashMap<>();
+
+    public HandleRegistry() {
+        for (HandleKind kind : HandleKind.values()) {
+            byKey.put(kind, new ConcurrentHashMap<>());
+        }
+    }
+
+    public HandleRef player(Player player) {
+        return ref(HandleKind.PLAYER, player.getUniqueId(), player.getName());
+    }
+
+    /**
+     * 物品栏事件中的 HumanEntity 实际总是玩家，其他实现按名称发送
+     */
+    public Object human(HumanEntity human) {
+        return human instanceof Player player ? player(player) : human.getName();
+    }
+
+    public HandleRef world(World world) {
+        return ref(HandleKind.WORLD, world.getUID(), world.getName());
+    }
+
+    public HandleRef material(Material material) {
+        return ref(HandleKind.MATERIAL, material, material.name());
+    }
+
+    public HandleRef entityType(EntityType entityType) {
+        return ref(HandleKind.ENTITY_TYPE, entityType, entityType.name());
+    }
+
+    private HandleRef ref(HandleKind kind, Object key, String name) {
+        Map<Object, HandleRef> refs = byKey.get(kind);
+        HandleRef ref = refs.get(key);
+        if (ref != null && ref.getName().equals(name)) {
+            return ref;
+        }
+        // 首次出现，或玩家改名后重新进入服务器：分配新句柄，旧句柄仍可解析
+        HandleRef created = new HandleRef(nextId.getAndIncrement(), kind, key, name);
+        byId.put(created.getId(), created);
+        refs.put(key, created);
+        return created;
+    }
+
+    public HandleRef resolve(int id) {
+        return byId.get(id);
+    }
+
+    /**
+     * 按句柄查找在线玩家，句柄无效或玩家已离线时返回 null
+     */
+    public Player resolvePlayer(int id) {
+        HandleRef ref = byId.get(id);
+        if (ref == null || ref.getKind() != HandleKind.PLAYER) {
+            return null;
+        }
+        return Bukkit.getPlayer((UUID) ref.getKey());
+    }
+
+    public int size() {
+        return byId.size();
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.tranforcpp.ipc;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 握手结果：C++端确认使用的编码协议、协议通道和可选功能
+ * <p>
+ * 可选功能在握手中以逗号分隔的名称列表传递，C++端只会确认Java端提供的功能。
+ */
+public record Handshake(WireProtocol protocol, TransportType transport, Set<String> features) {
+
+    /**
+     * 按服务器tick打包事件，见 {@link EventType#TICK}
+     */
+    public static final String FEATURE_TICKS = "ticks";
+
+    /**
+     * C++端在握手回复中声明需要的事件，Java只注册这些事件的监听
+     */
+    public static final String FEATURE_SUBSCRIBE = "subscribe";
+
+    /**
+     * 玩家、世界、方块和实体类型以整数句柄发送，见 {@link HandleRegistry}，只用于二进制协议
+     */
+    public static final String FEATURE_HANDLES = "handles";
+
+    /**
+     * C++端在握手回复的 verdicts 字段中声明需要裁决的可取消事件，见 {@link VerdictExchange}
+     */
+    public static final String FEATURE_VERDICTS = "verdicts";
+
+    /**
+     * C++端实现了状态导出和恢复，热替换时见 {@link EventType#SAVE_STATE} 和 {@link EventType#RESTORE_STATE}
+     */
+    public static final String FEATURE_HANDOVER = "handover";
+
+    /**
+     * C++端收到 {@link EventType#SEQ} 后回复确认，Java端为这个进程记录事件日志，见 {@link EventJournal}
+     */
+    public static final String FEATURE_JOURNAL = "journal";
+
+    /**
+     * C++端在握手回复的 credits 字段中授予初始额度，之后按处理进度归还，Java端只在额度内发送，见 {@link CreditWindow}
+     */
+    public static final String FEATURE_CREDITS = "credits";
+
+    /**
+     * C++端未响应握手时的回退结果
+     */
+    public static final Handshake FALLBACK = new Handshake(WireProtocol.JSON, TransportType.PIPE, Collections.emptySet());
+
+    public Handshake {
+        features = Collections.unmodifiableSet(features);
+    }
+
+    public boolean hasFeature(String feature) {
+        return features.contains(feature);
+    }
+
+    /**
+     * 解析逗号分隔的名称列表（功能、事件名），忽略空项
+     */
+    public static Set<String> parseList(String list) {
+        Set<String> features = new LinkedHashSet<>();
+        if (list != null) {
+            Arrays.stream(list.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .forEach(features::add);
+        }
+        return features;
+    }
+}
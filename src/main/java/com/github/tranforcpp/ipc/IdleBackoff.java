@@ -0,0 +1,43 @@
+package com.github.tranforcpp.ipc;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 先自旋后休眠的等待策略
+ * <p>
+ * 数据到达时在自旋阶段即可在微秒级内被发现；长时间空闲时逐步延长休眠，
+ * 最长休眠 {@code maxParkNanos}，避免空转占满CPU。
+ * 每次取到数据后调用 {@link #reset()} 回到自旋阶段。
+ */
+final class IdleBackoff {
+
+    private static final int SPIN_ROUNDS = 200;
+    private static final int YIELD_ROUNDS = 50;
+    private static final long MIN_PARK_NANOS = 1_000L;
+
+    private final long maxParkNanos;
+    private int rounds;
+    private long parkNanos = MIN_PARK_NANOS;
+
+    IdleBackoff(long maxParkNanos) {
+        this.maxParkNanos = maxParkNanos;
+    }
+
+    void idle() {
+        if (rounds < SPIN_ROUNDS) {
+            rounds++;
+            Thread.onSpinWait();
+        } else if (rounds < SPIN_ROUNDS + YIELD_ROUNDS) {
+            rounds++;
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(parkNanos);
+            parkNanos = Math.min(parkNanos * 2, maxParkNanos);
+        }
+    }
+
+    void reset() {
+        rounds = 0;
+        parkNanos = MIN_PARK_NANOS;
+    }
+}
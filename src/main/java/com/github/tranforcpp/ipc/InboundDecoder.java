@@ -0,0 +1,312 @@
+package com.github.tranforcpp.ipc;
+
+/**
+ * C++插件动作消息的流式解析器
+ * <p>
+ * 逐字符扫描一行 JSON，只把 {@link InboundMessage.Field} 中的字段写入可复用的 {@link InboundMessage}，
+ * 不构建 JsonObject 树。字段名直接在原字符串上比较，不含转义的字符串值用 substring 取出，
+ * 数字和布尔值不分配对象；不认识的字段（包括嵌套的对象和数组）只跳过不保存。
+ * <p>
+ * 每个读取线程使用自己的实例，不是线程安全的。
+ */
+public final class InboundDecoder {
+
+    private final StringBuilder escaped = new StringBuilder();
+    private String line;
+    private int pos;
+    private int end;
+
+    /**
+     * 解析一行消息
+     *
+     * @return 不是完整的 JSON 对象时返回 false，{@code out} 中的内容不可用
+     */
+    public boolean decode(String source, InboundMessage out) {
+        out.clear();
+        line = source;
+        pos = 0;
+        end = source.length();
+        try {
+            return parseObject(out);
+        } finally {
+            line = null;
+        }
+    }
+
+    private boolean parseObject(InboundMessage out) {
+        skipWhitespace();
+        if (!consume('{')) {
+            return false;
+        }
+        skipWhitespace();
+        if (!consume('}')) {
+            do {
+                skipWhitespace();
+                if (!consume('"')) {
+                    return false;
+                }
+                int keyStart = pos;
+                int keyEnd = skipStringBody();
+                if (keyEnd < 0) {
+                    return false;
+                }
+                // 含转义字符的字段名不会是需要的字段
+                InboundMessage.Field field = hasEscape(keyStart, keyEnd) ? null : InboundMessage.lookup(line, keyStart, keyEnd);
+                skipWhitespace();
+                if (!consume(':')) {
+                    return false;
+                }
+                skipWhitespace();
+                if (!parseValue(field, out)) {
+                    return false;
+                }
+                skipWhitespace();
+            } while (consume(','));
+            if (!consume('}')) {
+                return false;
+            }
+        }
+        skipWhitespace();
+        return pos == end;
+    }
+
+    private boolean parseValue(InboundMessage.Field field, InboundMessage out) {
+        if (pos >= end) {
+            return false;
+        }
+        char c = line.charAt(pos);
+        switch (c) {
+            case '"' -> {
+                pos++;
+                if (field == null) {
+                    return skipStringBody() >= 0;
+                }
+                String value = parseStringBody();
+                if (value == null) {
+                    return false;
+                }
+                out.putString(field, value);
+                return true;
+            }
+            case 't' -> {
+                if (!literal("true")) {
+                    return false;
+                }
+                if (field != null) {
+                    out.putBoolean(field, true);
+                }
+                return true;
+            }
+            case 'f' -> {
+                if (!literal("false")) {
+                    return false;
+                }
+                if (field != null) {
+                    out.putBoolean(field, false);
+                }
+                return true;
+            }
+            case 'n' -> {
+                if (!literal("null")) {
+                    return false;
+                }
+                if (field != null) {
+                    out.putNull(field);
+                }
+                return true;
+            }
+            case '{', '[' -> {
+                // 需要的字段都不是嵌套结构，整体跳过
+                if (!skipNested()) {
+                    return false;
+                }
+                if (field != null) {
+                    out.putNull(field);
+                }
+                return true;
+            }
+            default -> {
+                return parseNumber(field, out);
+            }
+        }
+    }
+
+    /**
+     * 整数直接累加，带小数或指数、以及超过 long 范围时按 double 解析后截断
+     */
+    private boolean parseNumber(InboundMessage.Field field, InboundMessage out) {
+        int start = pos;
+        boolean negative = consume('-');
+        long value = 0;
+        int digits = 0;
+        while (pos < end) {
+            char c = line.charAt(pos);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+            digits++;
+            pos++;
+        }
+        if (digits == 0) {
+            return false;
+        }
+        boolean integral = digits <= 18;
+        while (pos < end) {
+            char c = line.charAt(pos);
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                integral = false;
+                pos++;
+            } else {
+                break;
+            }
+        }
+        if (field == null) {
+            return true;
+        }
+        if (integral) {
+            out.putNumber(field, negative ? -value : value);
+            return true;
+        }
+        try {
+            out.putNumber(field, (long) Double.parseDouble(line.substring(start, pos)));
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 跳过字符串内容，{@link #pos} 停在结束引号之后
+     *
+     * @return 结束引号的位置，字符串未结束时返回 -1
+     */
+    private int skipStringBody() {
+        while (pos < end) {
+            char c = line.charAt(pos++);
+            if (c == '"') {
+                return pos - 1;
+            }
+            if (c == '\\') {
+                pos++;
+            }
+        }
+        return -1;
+    }
+
+    private boolean hasEscape(int start, int stop) {
+        int backslash = line.indexOf('\\', start);
+        return backslash >= 0 && backslash < stop;
+    }
+
+    /**
+     * 读取字符串内容，没有转义时直接截取原字符串
+     *
+     * @return 转义不合法或字符串未结束时返回 null
+     */
+    private String parseStringBody() {
+        int start = pos;
+        while (pos < end) {
+            char c = line.charAt(pos);
+            if (c == '"') {
+                pos++;
+                return line.substring(start, pos - 1);
+            }
+            if (c == '\\') {
+                escaped.setLength(0);
+                escaped.append(line, start, pos);
+                return parseEscapedBody();
+            }
+            pos++;
+        }
+        return null;
+    }
+
+    private String parseEscapedBody() {
+        while (pos < end) {
+            char c = line.charAt(pos++);
+            if (c == '"') {
+                return escaped.toString();
+            }
+            if (c != '\\') {
+                escaped.append(c);
+                continue;
+            }
+            if (pos >= end) {
+                return null;
+            }
+            char code = line.charAt(pos++);
+            switch (code) {
+                case '"', '\\', '/' -> escaped.append(code);
+                case 'b' -> escaped.append('\b');
+                case 'f' -> escaped.append('\f');
+                case 'n' -> escaped.append('\n');
+                case 'r' -> escaped.append('\r');
+                case 't' -> escaped.append('\t');
+                case 'u' -> {
+                    if (pos + 4 > end) {
+                        return null;
+                    }
+                    int unit = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(line.charAt(pos++), 16);
+                        if (digit < 0) {
+                            return null;
+                        }
+                        unit = (unit << 4) | digit;
+                    }
+                    escaped.append((char) unit);
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean skipNested() {
+        int depth = 0;
+        while (pos < end) {
+            char c = line.charAt(pos++);
+            if (c == '"') {
+                if (skipStringBody() < 0) {
+                    return false;
+                }
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (--depth == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean literal(String word) {
+        if (!line.startsWith(word, pos)) {
+            return false;
+        }
+        pos += word.length();
+        return true;
+    }
+
+    private boolean consume(char expected) {
+        if (pos < end && line.charAt(pos) == expected) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            char c = line.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                return;
+            }
+            pos++;
+        }
+    }
+}
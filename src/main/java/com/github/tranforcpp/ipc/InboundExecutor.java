@@ -0,0 +1,150 @@
+package com.github.tranforcpp.ipc;
+
+import com.github.tranforcpp.utils.FoliaCompatUtil;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * C++插件发来的动作的执行队列
+ * <p>
+ * 读取线程只负责解析，broadcast、sendMessage、executeCommand 等需要访问服务器状态的动作放入队列，
+ * 每个 tick 在服务器线程上（Folia 下为全局区域线程，控制台指令也必须在这里执行）按到达顺序执行，
+ * 直到用完 {@link InboundSettings#tickBudgetMicros()}。剩余动作留到之后的 tick，
+ * C++插件一次发来大量指令时只会拉长队列，不会让单个 tick 变慢。
+ * <p>
+ * 每个 tick 至少执行一个动作，预算为0时相当于每 tick 执行一个。
+ */
+public final class InboundExecutor {
+
+    private final Plugin plugin;
+    private final long budgetNanos;
+    private final int maxQueued;
+    private final Queue<PendingAction> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final LatencyHistogram queueAge = new LatencyHistogram();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder carriedTicks = new LongAdder();
+    private volatile int largestBacklog;
+    private volatile FoliaCompatUtil.TaskHandle task;
+
+    public InboundExecutor(Plugin plugin, InboundSettings settings) {
+        this.plugin = plugin;
+        this.budgetNanos = TimeUnit.MICROSECONDS.toNanos(settings.tickBudgetMicros());
+        this.maxQueued = settings.maxQueued();
+    }
+
+    public void start() {
+        task = FoliaCompatUtil.runSyncTaskTimer(plugin, this::drain, 1L, 1L);
+    }
+
+    /**
+     * 停止执行，尚未执行的动作直接丢弃
+     */
+    public void stop() {
+        FoliaCompatUtil.TaskHandle current = task;
+        task = null;
+        if (current != null) {
+            current.cancel();
+        }
+        int discarded = size.getAndSet(0);
+        pending.clear();
+        if (discarded > 0) {
+            plugin.getLogger().warning("C++插件已停止，丢弃 " + discarded + " 个未执行的动作");
+        }
+    }
+
+    /**
+     * 读取线程提交一个动作
+     *
+     * @param action 动作名称，用于出错时的日志
+     * @return 队列已满时返回 false，动作被丢弃
+     */
+    public boolean submit(String action, Runnable task) {
+        int queued = size.incrementAndGet();
+        if (queued > maxQueued) {
+            size.decrementAndGet();
+            dropped.increment();
+            plugin.getLogger().warning("C++动作队列已满，丢弃动作: " + action);
+            return false;
+        }
+        if (queued > largestBacklog) {
+            largestBacklog = queued;
+        }
+        pending.offer(new PendingAction(action, task, System.nanoTime()));
+        return true;
+    }
+
+    private void drain() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        long deadline = now + budgetNanos;
+        PendingAction action;
+        while ((action = pending.poll()) != null) {
+            size.decrementAndGet();
+            queueAge.record(now - action.enqueuedNanos());
+            try {
+                action.task().run();
+            } catch (Exception e) {
+                failed.increment();
+                plugin.getLogger().warning("执行C++动作失败 (" + action.name() + "): " + e.getMessage());
+            }
+            executed.increment();
+            now = System.nanoTime();
+            if (now - deadline >= 0) {
+                break;
+            }
+        }
+        if (!pending.isEmpty()) {
+            carriedTicks.increment();
+        }
+    }
+
+    public int getQueued() {
+        return size.get();
+    }
+
+    /**
+     * 启动以来等待执行的动作最多时的数量
+     */
+    public int getLargestBacklog() {
+        return largestBacklog;
+    }
+
+    /**
+     * 动作从读取线程收到到开始执行的等待时间
+     */
+    public LatencyHistogram getQueueAge() {
+        return queueAge;
+    }
+
+    public long getExecuted() {
+        return executed.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * 预算用完时仍有动作留到下一个 tick 的次数
+     */
+    public long getCarriedTicks() {
+        return carriedTicks.sum();
+    }
+
+    private record PendingAction(String name, Runnable task, long enqueuedNanos) {
+    }
+}
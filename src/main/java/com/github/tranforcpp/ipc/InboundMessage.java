@@ -0,0 +1,167 @@
+package com.github.tranforcpp.ipc;
+
+import java.util.Arrays;
+
+/**
+ * C++插件发来的一条动作消息
+ * <p>
+ * 由 {@link InboundDecoder} 直接填入，只保留 {@link Field} 中列出的字段，其余字段解析时跳过。
+ * 同一个读取线程重复使用一个实例，处理函数不能在解析下一条消息后继续持有它。
+ */
+public final class InboundMessage {
+
+    public enum Field {
+        ACTION("action"),
+        MESSAGE("message"),
+        PLAYER("player"),
+        HANDLE("handle"),
+        COMMAND("command"),
+        EVENTS("events"),
+        PROTOCOL("protocol"),
+        TRANSPORT("transport"),
+        FEATURES("features"),
+        SUBSCRIBE("subscribe"),
+        VERDICTS("verdicts"),
+        ID("id"),
+        TYPE("type"),
+        CANCEL("cancel"),
+        DROPS("drops"),
+        EXP("exp"),
+        STATE("state"),
+        SEQ("seq"),
+        CREDITS("credits");
+
+        private final String key;
+
+        Field(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private static final Field[] FIELDS = Field.values();
+    private static final byte ABSENT = 0;
+    private static final byte STRING = 1;
+    private static final byte NUMBER = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte NULL = 4;
+
+    private final byte[] kinds = new byte[FIELDS.length];
+    private final String[] strings = new String[FIELDS.length];
+    // 数字字段的值，布尔字段以 0/1 保存
+    private final long[] numbers = new long[FIELDS.length];
+
+    /**
+     * 按字段名在 {@code source} 的 [start, end) 区间查找，不创建字符串
+     *
+     * @return 不需要的字段返回 null
+     */
+    static Field lookup(String source, int start, int end) {
+        int length = end - start;
+        for (Field field : FIELDS) {
+            String key = field.key;
+            if (key.length() == length && source.regionMatches(start, key, 0, length)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    void clear() {
+        Arrays.fill(kinds, ABSENT);
+        Arrays.fill(strings, null);
+    }
+
+    void putString(Field field, String value) {
+        kinds[field.ordinal()] = STRING;
+        strings[field.ordinal()] = value;
+    }
+
+    void putNumber(Field field, long value) {
+        kinds[field.ordinal()] = NUMBER;
+        numbers[field.ordinal()] = value;
+    }
+
+    void putBoolean(Field field, boolean value) {
+        kinds[field.ordinal()] = BOOLEAN;
+        numbers[field.ordinal()] = value ? 1L : 0L;
+    }
+
+    void putNull(Field field) {
+        kinds[field.ordinal()] = NULL;
+    }
+
+    public String getAction() {
+        return kinds[Field.ACTION.ordinal()] == STRING ? strings[Field.ACTION.ordinal()] : null;
+    }
+
+    /**
+     * 字段存在且不为 null
+     */
+    public boolean has(Field field) {
+        byte kind = kinds[field.ordinal()];
+        return kind != ABSENT && kind != NULL;
+    }
+
+    /**
+     * 字符串字段，数字和布尔值转为文本
+     *
+     * @throws IllegalStateException 字段不存在
+     */
+    public String getString(Field field) {
+        int index = field.ordinal();
+        return switch (kinds[index]) {
+            case STRING -> strings[index];
+            case NUMBER -> Long.toString(numbers[index]);
+            case BOOLEAN -> numbers[index] != 0 ? "true" : "false";
+            default -> throw missing(field);
+        };
+    }
+
+    /**
+     * 字段存在时返回字符串，否则返回 {@code fallback}
+     */
+    public String getString(Field field, String fallback) {
+        return has(field) ? getString(field) : fallback;
+    }
+
+    /**
+     * 数字字段，也接受数字文本
+     *
+     * @throws IllegalStateException   字段不存在
+     * @throws NumberFormatException 文本不是整数
+     */
+    public long getLong(Field field) {
+        int index = field.ordinal();
+        return switch (kinds[index]) {
+            case NUMBER -> numbers[index];
+            case STRING -> Long.parseLong(strings[index].trim());
+            default -> throw missing(field);
+        };
+    }
+
+    public int getInt(Field field) {
+        return Math.toIntExact(getLong(field));
+    }
+
+    /**
+     * 布尔字段，也接受 "true"/"false" 文本
+     *
+     * @throws IllegalStateException 字段不存在
+     */
+    public boolean getBoolean(Field field) {
+        int index = field.ordinal();
+        return switch (kinds[index]) {
+            case BOOLEAN -> numbers[index] != 0;
+            case STRING -> Boolean.parseBoolean(strings[index]);
+            default -> throw missing(field);
+        };
+    }
+
+    private static IllegalStateException missing(Field field) {
+        return new IllegalStateException("缺少字段: " + field.key);
+    }
+}
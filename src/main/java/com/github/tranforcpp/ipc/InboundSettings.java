@@ -0,0 +1,12 @@
+package com.github.tranforcpp.ipc;
+
+/**
+ * C++插件发来的动作在服务器线程上执行的配置
+ *
+ * @param tickBudgetMicros 每个 tick 执行动作的时间预算（微秒），用完后剩余动作留到下一个 tick，
+ *                         每个 tick 至少执行一个
+ * @param maxQueued        等待执行的动作上限，超出后丢弃新动作
+ * @param messageCacheSize 缓存 MiniMessage 解析结果的文本数，0 表示不缓存
+ */
+public record InboundSettings(long tickBudgetMicros, int maxQueued, int messageCacheSize) {
+}
@@ -0,0 +1,376 @@
+package com.github.tranforcpp.ipc;
+
+import com.github.tranforcpp.listener.GenericEventMode;
+import com.github.tranforcpp.query.QueryType;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * 进程间通信配置
+ * <p>
+ * 从 config.yml 的 {@code ipc} 节读取，每次启动C++进程时重新加载。
+ */
+public final class IpcSettings {
+
+    private static final long DEFAULT_HANDSHAKE_TIMEOUT_MS = 3000L;
+    private static final int DEFAULT_SHM_RING_SIZE_KB = 1024;
+    private static final long DEFAULT_LINGER_MS = 50L;
+    private static final double DEFAULT_MOVE_MIN_DISTANCE = 0.5;
+    private static final List<String> DEFAULT_CRITICAL_EVENTS =
+        List.of("PlayerJoin", "PlayerQuit", "PlayerDeath", "PlayerRespawn", "ServerCommand");
+    private static final LaneSettings DEFAULT_CRITICAL_LANE = new LaneSettings(1024, 4, OverflowPolicy.SPILL, 5L, 64L);
+    private static final VerdictSettings DEFAULT_VERDICTS = new VerdictSettings(false, 2000L, 10_000L, Verdict.ALLOW);
+    private static final Map<QueryType, Long> DEFAULT_QUERY_CACHE_TTL_MS = Map.of(QueryType.ONLINE, 1000L);
+    private static final InboundSettings DEFAULT_INBOUND = new InboundSettings(2000L, 65536, 512);
+    private static final JournalSettings DEFAULT_JOURNAL =
+        new JournalSettings(false, Set.of("BlockBreak", "PlayerDeath"), 16, 256L, 86_400L);
+    private static final CreditSettings DEFAULT_CREDITS =
+        new CreditSettings(false, 250L, Set.of("PlayerMove", "EntitySpawn", "EntityDamage"));
+    private static final LaneSettings DEFAULT_BULK_LANE = new LaneSettings(2048, 1, OverflowPolicy.DROP_OLDEST, 5L, 64L);
+
+    private final WireProtocol protocol;
+    private final long handshakeTimeoutMs;
+    private final TransportType transport;
+    private final int shmRingSizeKb;
+    private final boolean tickFrames;
+    private final long lingerMs;
+    private final boolean registerAllEvents;
+    private final double moveMinDistance;
+    private final float moveRotationThreshold;
+    private final Map<String, RateLimitRule> rateLimits;
+    private final Set<String> criticalEvents;
+    private final LaneSettings criticalLane;
+    private final LaneSettings bulkLane;
+    private final GenericEventMode genericEvents;
+    private final boolean handlerTiming;
+    private final boolean handles;
+    private final VerdictSettings verdicts;
+    private final Map<QueryType, Long> queryCacheTtlMs;
+    private final InboundSettings inbound;
+    private final JournalSettings journal;
+    private final CreditSettings credits;
+
+    private IpcSettings(WireProtocol protocol, long handshakeTimeoutMs, TransportType transport, int shmRingSizeKb,
+                        boolean tickFrames, long lingerMs, boolean registerAllEvents,
+                        double moveMinDistance, float moveRotationThreshold, Map<String, RateLimitRule> rateLimits,
+                        Set<String> criticalEvents, LaneSettings criticalLane, LaneSettings bulkLane,
+                        GenericEventMode genericEvents, boolean handlerTiming, boolean handles,
+                        VerdictSettings verdicts, Map<QueryType, Long> queryCacheTtlMs, InboundSettings inbound,
+                        JournalSettings journal, CreditSettings credits) {
+        this.protocol = protocol;
+        this.handshakeTimeoutMs = handshakeTimeoutMs;
+        this.transport = transport;
+        this.shmRingSizeKb = shmRingSizeKb;
+        this.tickFrames = tickFrames;
+        this.lingerMs = lingerMs;
+        this.registerAllEvents = registerAllEvents;
+        this.moveMinDistance = moveMinDistance;
+        this.moveRotationThreshold = moveRotationThreshold;
+        this.rateLimits = rateLimits;
+        this.criticalEvents = criticalEvents;
+        this.criticalLane = criticalLane;
+        this.bulkLane = bulkLane;
+        this.genericEvents = genericEvents;
+        this.handlerTiming = handlerTiming;
+        this.handles = handles;
+        this.verdicts = verdicts;
+        this.queryCacheTtlMs = queryCacheTtlMs;
+        this.inbound = inbound;
+        this.journal = journal;
+        this.credits = credits;
+    }
+
+    public static IpcSettings load(ConfigurationSection config, Logger logger) {
+        ConfigurationSection ipc = config != null ? config.getConfigurationSection("ipc") : null;
+        if (ipc == null) {
+            return new IpcSettings(WireProtocol.JSON, DEFAULT_HANDSHAKE_TIMEOUT_MS, TransportType.PIPE, DEFAULT_SHM_RING_SIZE_KB,
+                false, DEFAULT_LINGER_MS, false, DEFAULT_MOVE_MIN_DISTANCE, 0f, Map.of(),
+                Set.copyOf(DEFAULT_CRITICAL_EVENTS), DEFAULT_CRITICAL_LANE, DEFAULT_BULK_LANE,
+                GenericEventMode.SYNC, false, true, DEFAULT_VERDICTS,
+                DEFAULT_QUERY_CACHE_TTL_MS, DEFAULT_INBOUND, DEFAULT_JOURNAL, DEFAULT_CREDITS);
+        }
+
+        String protocolName = ipc.getString("protocol", WireProtocol.JSON.getWireName());
+        WireProtocol protocol = WireProtocol.fromName(protocolName);
+        if (protocol == null) {
+            logger.warning("未知的通信协议: " + protocolName + "，使用 json");
+            protocol = WireProtocol.JSON;
+        }
+
+        long handshakeTimeoutMs = Math.max(0L, ipc.getLong("handshake-timeout-ms", DEFAULT_HANDSHAKE_TIMEOUT_MS));
+
+        String transportName = ipc.getString("transport", TransportType.PIPE.getWireName());
+        TransportType transport = TransportType.fromName(transportName);
+        if (transport == null) {
+            logger.warning("未知的通信通道: " + transportName + "，使用 pipe");
+            transport = TransportType.PIPE;
+        }
+
+        int shmRingSizeKb = Math.max(4, ipc.getInt("shm-ring-size-kb", DEFAULT_SHM_RING_SIZE_KB));
+        boolean tickFrames = ipc.getBoolean("tick-frames", false);
+        long lingerMs = Math.max(1L, ipc.getLong("linger-ms", DEFAULT_LINGER_MS));
+        boolean registerAllEvents = ipc.getBoolean("register-all-events", false);
+        double moveMinDistance = Math.max(0.0, ipc.getDouble("player-move.min-distance", DEFAULT_MOVE_MIN_DISTANCE));
+        float moveRotationThreshold = (float) Math.max(0.0, ipc.getDouble("player-move.rotation-threshold", 0.0));
+        Map<String, RateLimitRule> rateLimits = loadRateLimits(ipc.getConfigurationSection("rate-limits"), logger);
+        ConfigurationSection lanes = ipc.getConfigurationSection("lanes");
+        ConfigurationSection critical = lanes != null ? lanes.getConfigurationSection("critical") : null;
+        ConfigurationSection bulk = lanes != null ? lanes.getConfigurationSection("bulk") : null;
+        Set<String> criticalEvents = Set.copyOf(critical != null && critical.isList("events")
+            ? new LinkedHashSet<>(critical.getStringList("events"))
+            : DEFAULT_CRITICAL_EVENTS);
+        LaneSettings criticalLane = loadLane("critical", critical, DEFAULT_CRITICAL_LANE, logger);
+        LaneSettings bulkLane = loadLane("bulk", bulk, DEFAULT_BULK_LANE, logger);
+
+        String genericEventsName = ipc.getString("generic-events", GenericEventMode.SYNC.getConfigName());
+        GenericEventMode genericEvents = GenericEventMode.fromName(genericEventsName);
+        if (genericEvents == null) {
+            logger.warning("未知的事件分发方式: " + genericEventsName + "，使用 sync");
+            genericEvents = GenericEventMode.SYNC;
+        }
+        boolean handlerTiming = ipc.getBoolean("handler-timing", false);
+        boolean handles = ipc.getBoolean("handles", true);
+        VerdictSettings verdicts = loadVerdicts(ipc.getConfigurationSection("verdicts"), logger);
+        Map<QueryType, Long> queryCacheTtlMs = loadQueryCacheTtls(ipc.getConfigurationSection("queries.cache-ttl-ms"), logger);
+        InboundSettings inbound = new InboundSettings(
+            (long) (Math.max(0.0, ipc.getDouble("inbound.tick-budget-ms", DEFAULT_INBOUND.tickBudgetMicros() / 1000.0)) * 1000),
+            Math.max(1, ipc.getInt("inbound.max-queued", DEFAULT_INBOUND.maxQueued())),
+            Math.max(0, ipc.getInt("inbound.message-cache-size", DEFAULT_INBOUND.messageCacheSize())));
+        JournalSettings journal = loadJournal(ipc.getConfigurationSection("journal"));
+        CreditSettings credits = loadCredits(ipc.getConfigurationSection("credits"));
+        return new IpcSettings(protocol, handshakeTimeoutMs, transport, shmRingSizeKb, tickFrames, lingerMs, registerAllEvents,
+            moveMinDistance, moveRotationThreshold, rateLimits, criticalEvents, criticalLane, bulkLane,
+            genericEvents, handlerTiming, handles, verdicts, queryCacheTtlMs, inbound, journal, credits);
+    }
+
+    private static CreditSettings loadCredits(ConfigurationSection section) {
+        if (section == null) {
+            return DEFAULT_CREDITS;
+        }
+        Set<String> shedEvents = section.isList("shed-events")
+            ? Set.copyOf(section.getStringList("shed-events")) : DEFAULT_CREDITS.shedEvents();
+        return new CreditSettings(
+            section.getBoolean("enabled", DEFAULT_CREDITS.enabled()),
+            Math.max(1L, section.getLong("stall-ms", DEFAULT_CREDITS.stallMs())),
+            shedEvents);
+    }
+
+    private static JournalSettings loadJournal(ConfigurationSection section) {
+        if (section == null) {
+            return DEFAULT_JOURNAL;
+        }
+        Set<String> events = section.isList("events")
+            ? Set.copyOf(section.getStringList("events")) : DEFAULT_JOURNAL.events();
+        return new JournalSettings(
+            section.getBoolean("enabled", DEFAULT_JOURNAL.enabled()),
+            events,
+            // 一个映射最大 2GB
+            Math.min(1024, Math.max(1, section.getInt("segment-size-mb", DEFAULT_JOURNAL.segmentSizeMb()))),
+            Math.max(1L, section.getLong("max-size-mb", DEFAULT_JOURNAL.maxSizeMb())),
+            Math.max(1L, section.getLong("max-age-s", DEFAULT_JOURNAL.maxAgeSeconds())));
+    }
+
+    private static Map<QueryType, Long> loadQueryCacheTtls(ConfigurationSection section, Logger logger) {
+        if (section == null) {
+            return DEFAULT_QUERY_CACHE_TTL_MS;
+        }
+        Map<QueryType, Long> ttls = new EnumMap<>(QueryType.class);
+        for (String name : section.getKeys(false)) {
+            QueryType type = QueryType.fromName(name);
+            if (type == null) {
+                logger.warning("未知的查询类型: queries.cache-ttl-ms." + name);
+                continue;
+            }
+            ttls.put(type, Math.max(0L, section.getLong(name, 0L)));
+        }
+        return Collections.unmodifiableMap(ttls);
+    }
+
+    private static VerdictSettings loadVerdicts(ConfigurationSection section, Logger logger) {
+        if (section == null) {
+            return DEFAULT_VERDICTS;
+        }
+        String timeoutName = section.getString("timeout-verdict", "allow");
+        Verdict timeoutVerdict = Verdict.fromName(timeoutName);
+        if (timeoutVerdict == null) {
+            logger.warning("未知的默认裁决: verdicts.timeout-verdict = " + timeoutName + "，使用 allow");
+            timeoutVerdict = Verdict.ALLOW;
+        }
+        return new VerdictSettings(
+            section.getBoolean("enabled", DEFAULT_VERDICTS.enabled()),
+            Math.max(0L, section.getLong("budget-us", DEFAULT_VERDICTS.budgetMicros())),
+            Math.max(0L, section.getLong("tick-budget-us", DEFAULT_VERDICTS.tickBudgetMicros())),
+            timeoutVerdict);
+    }
+
+    private static LaneSettings loadLane(String name, ConfigurationSection section, LaneSettings defaults, Logger logger) {
+        if (section == null) {
+            return defaults;
+        }
+        String overflowName = section.getString("overflow", defaults.overflow().getConfigName());
+        OverflowPolicy overflow = OverflowPolicy.fromName(overflowName);
+        if (overflow == null) {
+            logger.warning("未知的溢出策略: lanes." + name + ".overflow = " + overflowName
+                + "，使用 " + defaults.overflow().getConfigName());
+            overflow = defaults.overflow();
+        }
+        return new LaneSettings(
+            Math.max(16, section.getInt("capacity", defaults.capacity())),
+            Math.max(1, section.getInt("weight", defaults.weight())),
+            overflow,
+            Math.max(0L, section.getLong("block-timeout-ms", defaults.blockTimeoutMs())),
+            Math.max(1L, section.getLong("spill-limit-mb", defaults.spillLimitMb())));
+    }
+
+    private static Map<String, RateLimitRule> loadRateLimits(ConfigurationSection section, Logger logger) {
+        if (section == null) {
+            return Map.of();
+        }
+        Map<String, RateLimitRule> rules = new LinkedHashMap<>();
+        for (String eventName : section.getKeys(false)) {
+            ConfigurationSection entry = section.getConfigurationSection(eventName);
+            if (entry == null) {
+                logger.warning("限速配置格式错误: rate-limits." + eventName);
+                continue;
+            }
+            double rate = Math.max(0.0, entry.getDouble("rate", 0.0));
+            double burst = Math.max(1.0, entry.getDouble("burst", Math.max(1.0, rate)));
+            int sampleEvery = Math.max(1, entry.getInt("sample", 1));
+            boolean perPlayer = entry.getBoolean("per-player", false);
+            if (perPlayer && !EventType.fromWireName(eventName).hasPlayer()) {
+                logger.warning("rate-limits." + eventName + ".per-player 无效: 该事件没有玩家参数，改为整体限速");
+                perPlayer = false;
+            }
+            RateLimitRule rule = new RateLimitRule(rate, burst, sampleEvery, perPlayer);
+            if (rule.isRateLimited() || rule.isSampled()) {
+                rules.put(eventName, rule);
+            }
+        }
+        return Collections.unmodifiableMap(rules);
+    }
+
+    public WireProtocol getProtocol() {
+        return protocol;
+    }
+
+    public long getHandshakeTimeoutMs() {
+        return handshakeTimeoutMs;
+    }
+
+    public TransportType getTransport() {
+        return transport;
+    }
+
+    public int getShmRingSizeKb() {
+        return shmRingSizeKb;
+    }
+
+    public boolean isTickFrames() {
+        return tickFrames;
+    }
+
+    public long getLingerMs() {
+        return lingerMs;
+    }
+
+    /**
+     * 为 true 时忽略C++端声明的订阅，始终注册全部事件监听
+     */
+    public boolean isRegisterAllEvents() {
+        return registerAllEvents;
+    }
+
+    public double getMoveMinDistance() {
+        return moveMinDistance;
+    }
+
+    public float getMoveRotationThreshold() {
+        return moveRotationThreshold;
+    }
+
+    /**
+     * 按事件名称配置的采样和限速规则，未配置的事件不受限制
+     */
+    public Map<String, RateLimitRule> getRateLimits() {
+        return rateLimits;
+    }
+
+    /**
+     * 进入 critical 通道的事件名称，其余事件进入 bulk 通道
+     */
+    public Set<String> getCriticalEvents() {
+        return criticalEvents;
+    }
+
+    public LaneSettings getCriticalLane() {
+        return criticalLane;
+    }
+
+    public LaneSettings getBulkLane() {
+        return bulkLane;
+    }
+
+    /**
+     * GenericTranforCEvent 的分发方式
+     */
+    public GenericEventMode getGenericEvents() {
+        return genericEvents;
+    }
+
+    /**
+     * 为 true 时记录每个事件处理函数的耗时，可用 /tranforcpp stats 查看
+     */
+    public boolean isHandlerTiming() {
+        return handlerTiming;
+    }
+
+    /**
+     * 二进制协议下是否提供句柄功能，玩家、世界、方块和实体类型以整数句柄代替名称发送
+     */
+    public boolean isHandles() {
+        return handles;
+    }
+
+    /**
+     * 可取消事件请求C++裁决的配置
+     */
+    public VerdictSettings getVerdicts() {
+        return verdicts;
+    }
+
+    /**
+     * 每种查询结果的缓存时间（毫秒），未配置的查询不缓存
+     */
+    public Map<QueryType, Long> getQueryCacheTtlMs() {
+        return queryCacheTtlMs;
+    }
+
+    /**
+     * C++插件发来的动作在服务器线程上执行的配置
+     */
+    public InboundSettings getInbound() {
+        return inbound;
+    }
+
+    /**
+     * 需要至少送达一次的事件的日志配置
+     */
+    public JournalSettings getJournal() {
+        return journal;
+    }
+
+    /**
+     * 基于额度的流量控制配置
+     */
+    public CreditSettings getCredits() {
+        return credits;
+    }
+}
@@ -0,0 +1,20 @@
+package com.github.tranforcpp.ipc;
+
+import java.util.Set;
+
+/**
+ * 事件日志的配置，见 {@link EventJournal}
+ *
+ * @param enabled       是否记录日志并在握手中提供 journal 功能
+ * @param events        需要至少送达一次的事件
+ * @param segmentSizeMb 每个段文件的大小（MB），写满后切换到新的段
+ * @param maxSizeMb     未确认记录占用的上限（MB），超出后丢弃最早的段
+ * @param maxAgeSeconds 记录保留的最长时间（秒），超出后丢弃最早的段
+ */
+public record JournalSettings(boolean enabled, Set<String> events, int segmentSizeMb, long maxSizeMb,
+                              long maxAgeSeconds) {
+
+    public boolean isJournaled(String eventName) {
+        return events.contains(eventName);
+    }
+}
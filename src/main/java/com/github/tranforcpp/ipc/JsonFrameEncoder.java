@@ -0,0 +1,261 @@
+package com.github.tranforcpp.ipc;
+
+import org.bukkit.util.Vector;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * JSON行协议编码器
+ * <p>
+ * 每个事件编码为一行 {@code {"event":"PlayerJoin","args":["Steve"]}}，
+ * 所有参数都以字符串形式传输，兼容自行解析 stdin 的旧版C++插件。
+ * <p>
+ * 不构建 JsonObject 树，直接把字符按 UTF-8 转义写入可复用的字节数组。已登记事件的
+ * {@code {"event":"...","args":[} 前缀预先编码好。字符串、整数、布尔值、UUID 和 Vector 参数直接写入，
+ * double 由 {@link DoubleFormatter} 写成与 Double.toString 相同的文本，都不分配对象，
+ * 稳定运行时每个事件不产生垃圾。
+ */
+public class JsonFrameEncoder implements FrameEncoder {
+
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final byte[] EVENT_HEAD = ascii("{\"event\":\"");
+    private static final byte[] ARGS_HEAD = ascii("\",\"args\":[");
+    private static final byte[] FRAME_TAIL = ascii("]}\n");
+    private static final byte[] NULL_ARG = ascii("\"null\"");
+    private static final byte[] TRUE_ARG = ascii("\"true\"");
+    private static final byte[] FALSE_ARG = ascii("\"false\"");
+    private static final byte[] HEX_DIGITS = ascii("0123456789abcdef");
+    private static final byte[] LONG_MIN_DIGITS = ascii(Long.toString(Long.MIN_VALUE));
+    // 引号、UUID 的 36 个字符
+    private static final int UUID_LENGTH = 38;
+    private static final byte[][] PREFIXES = new byte[EventType.values().length][];
+
+    static {
+        for (EventType type : EventType.values()) {
+            if (type.getWireName() != null) {
+                PREFIXES[type.ordinal()] = ascii("{\"event\":\"" + type.getWireName() + "\",\"args\":[");
+            }
+        }
+    }
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int position;
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void writeEvent(String eventName, Object[] args) {
+        byte[] prefix = PREFIXES[EventType.fromWireName(eventName).ordinal()];
+        if (prefix != null) {
+            put(prefix);
+        } else {
+            put(EVENT_HEAD);
+            putEscaped(eventName);
+            put(ARGS_HEAD);
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) {
+                putByte(',');
+            }
+            putArg(args[i]);
+        }
+        put(FRAME_TAIL);
+    }
+
+    private void putArg(Object arg) {
+        if (arg == null) {
+            put(NULL_ARG);
+        } else if (arg instanceof String value) {
+            putString(value);
+        } else if (arg instanceof Integer || arg instanceof Long || arg instanceof Short || arg instanceof Byte) {
+            putByte('"');
+            putLong(((Number) arg).longValue());
+            putByte('"');
+        } else if (arg instanceof Double value) {
+            putByte('"');
+            putDouble(value);
+            putByte('"');
+        } else if (arg instanceof Boolean value) {
+            put(value ? TRUE_ARG : FALSE_ARG);
+        } else if (arg instanceof HandleRef ref) {
+            putString(ref.getName());
+        } else if (arg instanceof UUID uuid) {
+            putUuid(uuid);
+        } else if (arg instanceof Vector vector) {
+            // 与 Vector.toString 相同："x,y,z"
+            putByte('"');
+            putDouble(vector.getX());
+            putByte(',');
+            putDouble(vector.getY());
+            putByte(',');
+            putDouble(vector.getZ());
+            putByte('"');
+        } else {
+            putString(arg.toString());
+        }
+    }
+
+    /**
+     * 科学计数法、NaN 和无穷大很少出现，回退到 Double.toString
+     */
+    private void putDouble(double value) {
+        ensureCapacity(DoubleFormatter.MAX_LENGTH);
+        int end = DoubleFormatter.write(value, buffer, position);
+        if (end >= 0) {
+            position = end;
+        } else {
+            putEscaped(Double.toString(value));
+        }
+    }
+
+    /**
+     * 与 UUID.toString 相同的 8-4-4-4-12 小写十六进制
+     */
+    private void putUuid(UUID uuid) {
+        ensureCapacity(UUID_LENGTH);
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        buffer[position++] = '"';
+        putHex(most >>> 32, 8);
+        buffer[position++] = '-';
+        putHex(most >>> 16, 4);
+        buffer[position++] = '-';
+        putHex(most, 4);
+        buffer[position++] = '-';
+        putHex(least >>> 48, 4);
+        buffer[position++] = '-';
+        putHex(least, 12);
+        buffer[position++] = '"';
+    }
+
+    private void putHex(long value, int digits) {
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = HEX_DIGITS[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+        position += digits;
+    }
+
+    private void putString(String value) {
+        putByte('"');
+        putEscaped(value);
+        putByte('"');
+    }
+
+    /**
+     * 按 JSON 规则转义并以 UTF-8 写入，不成对的代理字符与 String.getBytes 一样替换为 '?'
+     */
+    private void putEscaped(String value) {
+        int length = value.length();
+        // 最坏情况每个字符转义为 \\u00XX 共6字节
+        ensureCapacity(length * 6);
+        byte[] out = buffer;
+        int pos = position;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                out[pos++] = (byte) c;
+            } else if (c < 0x80) {
+                out[pos++] = '\\';
+                switch (c) {
+                    case '"' -> out[pos++] = '"';
+                    case '\\' -> out[pos++] = '\\';
+                    case '\n' -> out[pos++] = 'n';
+                    case '\r' -> out[pos++] = 'r';
+                    case '\t' -> out[pos++] = 't';
+                    case '\b' -> out[pos++] = 'b';
+                    case '\f' -> out[pos++] = 'f';
+                    default -> {
+                        out[pos++] = 'u';
+                        out[pos++] = '0';
+                        out[pos++] = '0';
+                        out[pos++] = HEX_DIGITS[c >> 4];
+                        out[pos++] = HEX_DIGITS[c & 0xF];
+                    }
+                }
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xC0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                char low = i + 1 < length ? value.charAt(i + 1) : 0;
+                if (Character.isHighSurrogate(c) && Character.isLowSurrogate(low)) {
+                    int codePoint = Character.toCodePoint(c, low);
+                    out[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                    out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    out[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+                    i++;
+                } else {
+                    out[pos++] = '?';
+                }
+            } else {
+                out[pos++] = (byte) (0xE0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        position = pos;
+    }
+
+    private void putLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            put(LONG_MIN_DIGITS);
+            return;
+        }
+        if (value < 0) {
+            putByte('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long bound = 10; digits < 19 && value >= bound; bound *= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position = end;
+    }
+
+    private void put(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void putByte(char c) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) c;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (buffer.length - position >= extra) {
+            return;
+        }
+        byte[] grown = new byte[Math.max(buffer.length * 2, position + extra)];
+        System.arraycopy(buffer, 0, grown, 0, position);
+        buffer = grown;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, position);
+    }
+
+    @Override
+    public int size() {
+        return position;
+    }
+
+    @Override
+    public void reset() {
+        position = 0;
+    }
+}
@@ -0,0 +1,13 @@
+package com.github.tranforcpp.ipc;
+
+/**
+ * 单个事件通道的配置，对应 config.yml 中 {@code ipc.lanes.critical} 和 {@code ipc.lanes.bulk}
+ *
+ * @param capacity       队列容量
+ * @param weight         写出线程每批从该通道取出事件的权重
+ * @param overflow       队列已满时的处理方式
+ * @param blockTimeoutMs {@link OverflowPolicy#BLOCK} 的最长等待时间
+ * @param spillLimitMb   {@link OverflowPolicy#SPILL} 临时文件的大小上限，超出后丢弃新事件
+ */
+public record LaneSettings(int capacity, int weight, OverflowPolicy overflow, long blockTimeoutMs, long spillLimitMb) {
+}
@@ -0,0 +1,233 @@
+package com.github.tranforcpp.ipc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 有界多生产者/单消费者环形队列
+ * <p>
+ * 每个槽位带一个序号（Vyukov 有界队列算法）：生产者通过 CAS 抢占写位置，写入元素后发布槽位序号；
+ * 唯一的消费者按序号判断槽位是否就绪，取出后把序号推进一圈留给下一轮生产者。
+ * 入队和出队都不加锁、不分配对象，读写位置各自填充到独立的缓存行，避免伪共享。
+ * <p>
+ * 消费者空闲时会挂起，生产者只在检测到消费者挂起时才调用 unpark。
+ * {@link #poll()}、{@link #poll(long, TimeUnit)}、{@link #drainTo} 和 {@link #clear()}
+ * 同一时刻只能有一个消费者调用，通常是同一个线程；需要由生产者丢弃旧元素时可在外部加锁（见 {@link EventLane}）。
+ */
+public final class MpscArrayQueue<E> extends MpscQueueHeadPad {
+
+    private static final VarHandle SEQUENCE = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle WAITER;
+    private static final int SPIN_ROUNDS = 256;
+
+    static {
+        try {
+            WAITER = MethodHandles.lookup().findVarHandle(MpscArrayQueue.class, "waiter", Thread.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final long[] sequences;
+    private final Object[] elements;
+    private volatile Thread waiter;
+
+    /**
+     * @param requestedCapacity 队列容量，向上取整为2的幂
+     */
+    public MpscArrayQueue(int requestedCapacity) {
+        this.capacity = requestedCapacity <= 2 ? 2 : Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.mask = capacity - 1;
+        this.sequences = new long[capacity];
+        this.elements = new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            sequences[i] = i;
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 入队，队列已满时立即返回 false
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long position = getTail();
+        while (true) {
+            int index = (int) position & mask;
+            long sequence = (long) SEQUENCE.getAcquire(sequences, index);
+            long difference = sequence - position;
+            if (difference == 0) {
+                if (casTail(position, position + 1)) {
+                    elements[index] = element;
+                    SEQUENCE.setRelease(sequences, index, position + 1);
+                    // 抢占写位置的 CAS 与消费者挂起前的标记构成 Dekker 式握手，不会丢失唤醒；
+                    // 清除标记后再 unpark，多个生产者同时入队时只唤醒一次
+                    Thread parked = waiter;
+                    if (parked != null && WAITER.compareAndSet(this, parked, null)) {
+                        LockSupport.unpark(parked);
+                    }
+                    return true;
+                }
+                position = getTail();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = getTail();
+            }
+        }
+    }
+
+    /**
+     * 出队，队列为空时立即返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long position = head;
+        int index = (int) position & mask;
+        long sequence = (long) SEQUENCE.getAcquire(sequences, index);
+        if (sequence != position + 1) {
+            if (position == getTail()) {
+                return null;
+            }
+            // 生产者已抢占位置但尚未发布元素，只需等待几个指令周期
+            do {
+                Thread.onSpinWait();
+                sequence = (long) SEQUENCE.getAcquire(sequences, index);
+            } while (sequence != position + 1);
+        }
+        E element = (E) elements[index];
+        elements[index] = null;
+        SEQUENCE.setRelease(sequences, index, position + capacity);
+        setHead(position + 1);
+        return element;
+    }
+
+    /**
+     * 出队，队列为空时先短暂自旋再挂起等待，超时仍为空则返回 null
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E element;
+        for (int i = 0; i < SPIN_ROUNDS; i++) {
+            if ((element = poll()) != null) {
+                return element;
+            }
+            Thread.onSpinWait();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Thread current = Thread.currentThread();
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waiter = current;
+            element = poll();
+            if (element != null) {
+                waiter = null;
+                return element;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                waiter = null;
+                return null;
+            }
+            LockSupport.parkNanos(this, remaining);
+            waiter = null;
+            element = poll();
+            if (element != null) {
+                return element;
+            }
+        }
+    }
+
+    /**
+     * 把已就绪的元素批量移入目标集合
+     *
+     * @return 移动的元素个数
+     */
+    public int drainTo(Collection<? super E> target, int maxElements) {
+        int count = 0;
+        E element;
+        while (count < maxElements && (element = poll()) != null) {
+            target.add(element);
+            count++;
+        }
+        return count;
+    }
+
+    public void clear() {
+        while (poll() != null) {
+            // 丢弃
+        }
+    }
+
+    /**
+     * 近似的元素个数，仅用于统计
+     */
+    public int size() {
+        long size = getTail() - head;
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public boolean isEmpty() {
+        return getTail() == head;
+    }
+}
+
+/**
+ * 以下几层父类只用于字段填充：JVM 会重排同一个类中的字段，但不会把子类字段插到父类字段之前，
+ * 借此把写位置和读位置分别隔离在独立的缓存行上。
+ */
+abstract class MpscQueuePad0 {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16;
+}
+
+abstract class MpscQueueTail extends MpscQueuePad0 {
+    private static final VarHandle TAIL;
+
+    static {
+        try {
+            TAIL = MethodHandles.lookup().findVarHandle(MpscQueueTail.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile long tail;
+
+    final long getTail() {
+        return tail;
+    }
+
+    final boolean casTail(long expected, long next) {
+        return TAIL.compareAndSet(this, expected, next);
+    }
+}
+
+abstract class MpscQueueTailPad extends MpscQueueTail {
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+    long p30, p31, p32, p33, p34, p35, p36;
+}
+
+abstract class MpscQueueHead extends MpscQueueTailPad {
+    volatile long head;
+
+    final void setHead(long next) {
+        head = next;
+    }
+}
+
+abstract class MpscQueueHeadPad extends MpscQueueHead {
+    long p40, p41, p42, p43, p44, p45, p46, p47;
+    long p50, p51, p52, p53, p54, p55, p56;
+}
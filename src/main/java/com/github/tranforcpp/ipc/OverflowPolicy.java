@@ -0,0 +1,49 @@
+package com.github.tranforcpp.ipc;
+
+/**
+ * 事件通道已满时的处理方式
+ */
+public enum OverflowPolicy {
+
+    /**
+     * 丢弃队列中最早的事件，为新事件腾出位置
+     */
+    DROP_OLDEST("drop-oldest"),
+    /**
+     * 丢弃新到达的事件
+     */
+    DROP_NEWEST("drop-newest"),
+    /**
+     * 等待写出线程腾出位置，超时后丢弃新事件，会阻塞调用事件的线程
+     */
+    BLOCK("block"),
+    /**
+     * 写入磁盘临时文件，写出线程追上后按顺序读回
+     */
+    SPILL("spill");
+
+    private final String configName;
+
+    OverflowPolicy(String configName) {
+        this.configName = configName;
+    }
+
+    public String getConfigName() {
+        return configName;
+    }
+
+    /**
+     * 解析策略名称，无法识别时返回 null
+     */
+    public static OverflowPolicy fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (OverflowPolicy policy : values()) {
+            if (policy.configName.equalsIgnoreCase(name.trim())) {
+                return policy;
+            }
+        }
+        return null;
+    }
+}
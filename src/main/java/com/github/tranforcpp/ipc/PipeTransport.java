@@ -0,0 +1,31 @@
+package com.github.tranforcpp.ipc;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 基于子进程标准输入输出的通道，也是所有其他通道的回退方案
+ */
+public class PipeTransport implements Transport {
+
+    private final Process process;
+
+    public PipeTransport(Process process) {
+        this.process = process;
+    }
+
+    @Override
+    public TransportType getType() {
+        return TransportType.PIPE;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return process.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return process.getOutputStream();
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.tranforcpp.ipc;
+
+/**
+ * 待发送的事件，在写出线程中按协商的协议编码
+ * <p>
+ * tickEnd 不小于0时表示 tick 结束标记，而不是事件。
+ */
+public record QueuedEvent(String eventName, Object[] args, long tickEnd) {
+
+    public QueuedEvent(String eventName, Object[] args) {
+        this(eventName, args, -1L);
+    }
+
+    public static QueuedEvent tickEnd(long tick) {
+        return new QueuedEvent(null, null, tick);
+    }
+
+    public boolean isTickEnd() {
+        return tickEnd >= 0;
+    }
+
+    /**
+     * 是否需要立即发送而不是等到 tick 结束：等待裁决的请求（服务器线程正在等待回复）和查询结果
+     */
+    public boolean isImmediate() {
+        return !isTickEnd() && (EventType.REQUEST.getWireName().equals(eventName)
+            || EventType.QUERY_RESULT.getWireName().equals(eventName));
+    }
+}
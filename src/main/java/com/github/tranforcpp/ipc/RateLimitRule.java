@@ -0,0 +1,20 @@
+package com.github.tranforcpp.ipc;
+
+/**
+ * 单个事件的准入规则，对应 config.yml 中 {@code ipc.rate-limits.<事件名>}
+ *
+ * @param rate        每秒补充的令牌数，0 表示不限速
+ * @param burst       令牌桶容量，即允许的瞬时突发数量
+ * @param sampleEvery 确定性采样，每 N 个事件只保留第1个，1 表示不采样
+ * @param perPlayer   为 true 时按触发事件的玩家分别限速，只对 {@link EventType#hasPlayer()} 的事件有效
+ */
+public record RateLimitRule(double rate, double burst, int sampleEvery, boolean perPlayer) {
+
+    public boolean isRateLimited() {
+        return rate > 0;
+    }
+
+    public boolean isSampled() {
+        return sampleEvery > 1;
+    }
+}
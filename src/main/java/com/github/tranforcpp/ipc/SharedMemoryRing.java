@@ -0,0 +1,111 @@
+package com.github.tranforcpp.ipc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 共享内存中的单生产者/单消费者字节环
+ * <p>
+ * 控制块布局（小端序，每个字段独占一条缓存行，避免生产者与消费者伪共享）：
+ * <pre>
+ * +0    u64 writePos  生产者已写入的累计字节数
+ * +64   u64 readPos   消费者已读取的累计字节数
+ * +128  u32 closed    任意一端关闭后置 1
+ * +192  数据区，容量为2的幂
+ * </pre>
+ * 生产者先写数据再以 release 语义发布 writePos，消费者以 acquire 语义读取，
+ * 与 tranforcpp_api.h 中 tranforcpp::shm::Ring 的实现对应。
+ */
+final class SharedMemoryRing {
+
+    static final int CONTROL_SIZE = 192;
+
+    private static final int WRITE_POS_OFFSET = 0;
+    private static final int READ_POS_OFFSET = 64;
+    private static final int CLOSED_OFFSET = 128;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final ByteBuffer region;
+    private final int capacity;
+    private final int mask;
+
+    // 本端缓存的对端位置，只有看起来空间/数据不足时才重新读取共享变量
+    private long cachedReadPos;
+    private long cachedWritePos;
+
+    SharedMemoryRing(ByteBuffer region, int capacity) {
+        this.region = region;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+    }
+
+    static int regionSize(int capacity) {
+        return CONTROL_SIZE + capacity;
+    }
+
+    /**
+     * 写入尽可能多的字节，环已满时返回 0
+     */
+    int write(byte[] src, int offset, int length) {
+        long writePos = (long) LONGS.getOpaque(region, WRITE_POS_OFFSET);
+        long free = capacity - (writePos - cachedReadPos);
+        if (free < length) {
+            cachedReadPos = (long) LONGS.getAcquire(region, READ_POS_OFFSET);
+            free = capacity - (writePos - cachedReadPos);
+        }
+        int count = (int) Math.min(free, length);
+        if (count == 0) {
+            return 0;
+        }
+
+        int index = (int) (writePos & mask);
+        int first = Math.min(count, capacity - index);
+        region.put(CONTROL_SIZE + index, src, offset, first);
+        if (first < count) {
+            region.put(CONTROL_SIZE, src, offset + first, count - first);
+        }
+        LONGS.setRelease(region, WRITE_POS_OFFSET, writePos + count);
+        return count;
+    }
+
+    /**
+     * 读取尽可能多的字节，环为空时返回 0
+     */
+    int read(byte[] dst, int offset, int length) {
+        long readPos = (long) LONGS.getOpaque(region, READ_POS_OFFSET);
+        long available = cachedWritePos - readPos;
+        if (available <= 0) {
+            cachedWritePos = (long) LONGS.getAcquire(region, WRITE_POS_OFFSET);
+            available = cachedWritePos - readPos;
+        }
+        int count = (int) Math.min(available, length);
+        if (count <= 0) {
+            return 0;
+        }
+
+        int index = (int) (readPos & mask);
+        int first = Math.min(count, capacity - index);
+        region.get(CONTROL_SIZE + index, dst, offset, first);
+        if (first < count) {
+            region.get(CONTROL_SIZE, dst, offset + first, count - first);
+        }
+        LONGS.setRelease(region, READ_POS_OFFSET, readPos + count);
+        return count;
+    }
+
+    boolean isEmpty() {
+        return (long) LONGS.getAcquire(region, WRITE_POS_OFFSET) == (long) LONGS.getOpaque(region, READ_POS_OFFSET);
+    }
+
+    boolean isClosed() {
+        return (int) INTS.getAcquire(region, CLOSED_OFFSET) != 0;
+    }
+
+    void close() {
+        INTS.setRelease(region, CLOSED_OFFSET, 1);
+    }
+}
@@ -0,0 +1,177 @@
+package com.github.tranforcpp.ipc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 共享内存通道
+ * <p>
+ * 在内存映射文件中放置两个单生产者/单消费者字节环，C++端通过 mmap 映射同一个文件。
+ * 读写不再经过系统调用和内核拷贝，空闲时采用先自旋后休眠的等待策略。
+ * <p>
+ * 文件布局（小端序）：
+ * <pre>
+ * +0    u32 magic 'TCPP'
+ * +4    u32 布局版本
+ * +8    u32 每个环的数据容量
+ * +64   环0：Java → C++
+ * +64 + 192 + capacity  环1：C++ → Java
+ * </pre>
+ */
+public class SharedMemoryTransport implements Transport {
+
+    public static final String ENV_PATH = "TRANFORCPP_SHM_PATH";
+
+    private static final int MAGIC = 0x50504354;
+    private static final int LAYOUT_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final long MAX_PARK_NANOS = 1_000_000L;
+    private static final AtomicInteger FILE_COUNTER = new AtomicInteger();
+
+    private final File file;
+    private final int capacity;
+    private SharedMemoryRing outbound;
+    private SharedMemoryRing inbound;
+    private volatile Process process;
+    private volatile boolean closed;
+
+    /**
+     * @param directory 映射文件所在目录，Linux上优先使用 /dev/shm
+     * @param ringSize  每个环的容量，向上取整为2的幂
+     */
+    public SharedMemoryTransport(File directory, int ringSize) {
+        File shmDir = new File("/dev/shm");
+        File baseDir = shmDir.isDirectory() && shmDir.canWrite() ? shmDir : directory;
+        this.file = new File(baseDir, "tranforcpp-" + ProcessHandle.current().pid() + "-" + FILE_COUNTER.incrementAndGet() + ".shm");
+        this.capacity = Integer.highestOneBit(Math.max(ringSize, 4096) - 1) << 1;
+    }
+
+    @Override
+    public TransportType getType() {
+        return TransportType.SHM;
+    }
+
+    @Override
+    public void prepare(Map<String, String> environment) throws IOException {
+        int ringRegion = SharedMemoryRing.regionSize(capacity);
+        long fileSize = HEADER_SIZE + 2L * ringRegion;
+
+        MappedByteBuffer mapped;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(fileSize);
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        mapped.putInt(0, MAGIC);
+        mapped.putInt(4, LAYOUT_VERSION);
+        mapped.putInt(8, capacity);
+
+        outbound = new SharedMemoryRing(mapped.slice(HEADER_SIZE, ringRegion), capacity);
+        inbound = new SharedMemoryRing(mapped.slice(HEADER_SIZE + ringRegion, ringRegion), capacity);
+        environment.put(ENV_PATH, file.getAbsolutePath());
+    }
+
+    @Override
+    public void open(Process process) {
+        this.process = process;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new RingInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return new RingOutputStream();
+    }
+
+    private boolean peerGone() {
+        Process p = process;
+        return closed || (p != null && !p.isAlive());
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (outbound != null) {
+            outbound.close();
+            inbound.close();
+        }
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private class RingOutputStream extends OutputStream {
+        private final IdleBackoff backoff = new IdleBackoff(MAX_PARK_NANOS);
+        private final byte[] single = new byte[1];
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int written = outbound.write(b, off, len);
+                if (written > 0) {
+                    off += written;
+                    len -= written;
+                    backoff.reset();
+                    continue;
+                }
+                if (peerGone() || outbound.isClosed()) {
+                    throw new IOException("shared memory ring closed");
+                }
+                backoff.idle();
+            }
+        }
+    }
+
+    private class RingInputStream extends InputStream {
+        private final IdleBackoff backoff = new IdleBackoff(MAX_PARK_NANOS);
+        private final byte[] single = new byte[1];
+
+        @Override
+        public int read() throws IOException {
+            int n = read(single, 0, 1);
+            return n < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                int count = inbound.read(b, off, len);
+                if (count > 0) {
+                    backoff.reset();
+                    return count;
+                }
+                // 先确认环已空再判断关闭，确保对端关闭前写入的数据都被读完
+                if ((inbound.isClosed() || peerGone()) && inbound.isEmpty()) {
+                    return -1;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IOException("interrupted while waiting for shared memory data");
+                }
+                backoff.idle();
+            }
+        }
+    }
+}
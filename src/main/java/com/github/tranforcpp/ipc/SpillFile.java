@@ -0,0 +1,126 @@
+package com.github.tranforcpp.ipc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * 溢出到磁盘的事件
+ * <p>
+ * 通道已满时事件按到达顺序追加到临时文件末尾，写出线程追上后从头读回，全部读完后文件截断复用。
+ * 记录格式见 {@link EventRecords}，读回后类型不变。只在过载时使用，读写都加锁。
+ */
+final class SpillFile {
+
+    private final Path path;
+    private final long limitBytes;
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+    private FileChannel channel;
+    private long readPosition;
+    private long writePosition;
+    private int count;
+
+    SpillFile(Path path, long limitBytes) {
+        this.path = path;
+        this.limitBytes = limitBytes;
+    }
+
+    /**
+     * 追加一个事件，超出大小上限或写入失败时返回 false
+     */
+    synchronized boolean append(QueuedEvent event) {
+        try {
+            recordBuffer.reset();
+            recordOut.writeInt(0);
+            EventRecords.write(recordOut, event);
+            byte[] record = recordBuffer.toByteArray();
+            ByteBuffer.wrap(record).putInt(0, record.length - 4);
+            if (writePosition + record.length > limitBytes) {
+                return false;
+            }
+            if (channel == null) {
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            while (buffer.hasRemaining()) {
+                writePosition += channel.write(buffer, writePosition);
+            }
+            count++;
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 按写入顺序读回最多 maxEvents 个事件
+     *
+     * @return 读回的事件个数
+     */
+    synchronized int readTo(Collection<? super QueuedEvent> target, int maxEvents) throws IOException {
+        int read = 0;
+        while (read < maxEvents && count > 0) {
+            lengthBuffer.clear();
+            readFully(lengthBuffer, readPosition);
+            int length = lengthBuffer.getInt(0);
+            ByteBuffer body = ByteBuffer.allocate(length);
+            readFully(body, readPosition + 4);
+            readPosition += 4 + length;
+            count--;
+            target.add(EventRecords.read(new DataInputStream(new ByteArrayInputStream(body.array()))));
+            read++;
+        }
+        if (count == 0 && writePosition > 0) {
+            channel.truncate(0);
+            readPosition = 0;
+            writePosition = 0;
+        }
+        return read;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("spill file truncated: " + path);
+            }
+        }
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * 丢弃全部事件并删除文件
+     */
+    synchronized void clear() {
+        count = 0;
+        readPosition = 0;
+        writePosition = 0;
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // 临时文件删除失败不影响运行，下次打开时会截断
+        } finally {
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.tranforcpp.ipc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * 协议通道
+ * <p>
+ * 承载Java与C++进程之间的事件和动作消息。进程启动时总是先通过标准输入输出完成握手，
+ * C++端在握手回复中确认已连接到其他通道后才会切换，未确认时继续使用管道。
+ */
+public interface Transport extends Closeable {
+
+    TransportType getType();
+
+    /**
+     * 启动进程前调用，写入C++端连接该通道所需的环境变量
+     */
+    default void prepare(Map<String, String> environment) throws IOException {
+    }
+
+    /**
+     * C++端确认使用该通道后调用
+     */
+    default void open(Process process) throws IOException {
+    }
+
+    /**
+     * C++ → Java 的消息流
+     */
+    InputStream getInputStream();
+
+    /**
+     * Java → C++ 的消息流
+     */
+    OutputStream getOutputStream();
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.tranforcpp.ipc;
+
+/**
+ * 协议通道类型
+ */
+public enum TransportType {
+
+    PIPE("pipe"),
+    SHM("shm"),
+    UDS("uds");
+
+    private final String wireName;
+
+    TransportType(String wireName) {
+        this.wireName = wireName;
+    }
+
+    public String getWireName() {
+        return wireName;
+    }
+
+    /**
+     * 解析通道名称，无法识别时返回 null
+     */
+    public static TransportType fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (TransportType type : values()) {
+            if (type.wireName.equalsIgnoreCase(name.trim())) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,263 @@
+package com.github.tranforcpp.ipc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unix 域套接字通道
+ * <p>
+ * Java端在启动进程前监听临时套接字文件，C++端连接后在握手回复中确认。
+ * 协议消息与C++进程的标准输出完全分离，调试输出不会再混入消息流。
+ * 读写基于非阻塞 SocketChannel 和 Selector，使用直接缓冲区避免每次系统调用前的堆外拷贝。
+ */
+public class UnixSocketTransport implements Transport {
+
+    public static final String ENV_PATH = "TRANFORCPP_SOCKET_PATH";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final AtomicInteger FILE_COUNTER = new AtomicInteger();
+
+    private final Path path;
+    private final long acceptTimeoutMs;
+    private ServerSocketChannel server;
+    private SocketChannel channel;
+    private ChannelInputStream input;
+    private ChannelOutputStream output;
+    private volatile boolean closed;
+
+    /**
+     * @param acceptTimeoutMs C++端确认后等待连接到达的最长时间
+     */
+    public UnixSocketTransport(long acceptTimeoutMs) {
+        // sun_path 长度有限（通常108字节），插件目录可能很深，统一放在系统临时目录
+        this.path = Path.of(System.getProperty("java.io.tmpdir"),
+            "tranforcpp-" + ProcessHandle.current().pid() + "-" + FILE_COUNTER.incrementAndGet() + ".sock");
+        this.acceptTimeoutMs = Math.max(1L, acceptTimeoutMs);
+    }
+
+    @Override
+    public TransportType getType() {
+        return TransportType.UDS;
+    }
+
+    @Override
+    public void prepare(Map<String, String> environment) throws IOException {
+        Files.deleteIfExists(path);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(path));
+        server.configureBlocking(false);
+        environment.put(ENV_PATH, path.toString());
+    }
+
+    /**
+     * C++端在回复握手前已经发起连接，这里只需接受已排队的连接
+     */
+    @Override
+    public void open(Process process) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(acceptTimeoutMs);
+        SocketChannel accepted;
+        try (Selector selector = Selector.open()) {
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            while ((accepted = server.accept()) == null) {
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0 || closed || !process.isAlive()) {
+                    throw new IOException("C++插件未连接到 " + path);
+                }
+                selector.select(remainingMs);
+                selector.selectedKeys().clear();
+            }
+        }
+        closeServer();
+
+        accepted.configureBlocking(false);
+        channel = accepted;
+        input = new ChannelInputStream(accepted);
+        output = new ChannelOutputStream(accepted);
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return input;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return output;
+    }
+
+    private void closeServer() throws IOException {
+        if (server != null) {
+            server.close();
+            server = null;
+        }
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (input != null) {
+                input.selector.wakeup();
+                output.selector.wakeup();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            closeServer();
+        }
+    }
+
+    private class ChannelInputStream extends InputStream {
+        private final SocketChannel source;
+        private final Selector selector;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).flip();
+
+        ChannelInputStream(SocketChannel source) throws IOException {
+            this.source = source;
+            this.selector = Selector.open();
+            source.register(selector, SelectionKey.OP_READ);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!buffer.hasRemaining() && !fill()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining() && !fill()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        /**
+         * 读取到至少一个字节时返回 true，对端关闭或通道已关闭时返回 false
+         */
+        private boolean fill() throws IOException {
+            buffer.clear();
+            try {
+                while (true) {
+                    int count = source.read(buffer);
+                    if (count != 0) {
+                        buffer.flip();
+                        return count > 0;
+                    }
+                    if (closed) {
+                        buffer.flip();
+                        return false;
+                    }
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new IOException("interrupted while waiting for socket data");
+                    }
+                    selector.select();
+                    selector.selectedKeys().clear();
+                }
+            } catch (ClosedChannelException e) {
+                buffer.limit(0);
+                return false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            selector.close();
+        }
+    }
+
+    private class ChannelOutputStream extends OutputStream {
+        private final SocketChannel target;
+        private final Selector selector;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        ChannelOutputStream(SocketChannel target) throws IOException {
+            this.target = target;
+            this.selector = Selector.open();
+            target.register(selector, SelectionKey.OP_WRITE);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int count = Math.min(len, buffer.remaining());
+                buffer.put(b, off, count);
+                off += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+        }
+
+        /**
+         * 写出缓冲区中的全部数据，内核发送缓冲区满时等待可写事件
+         */
+        private void drain() throws IOException {
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    if (target.write(buffer) > 0) {
+                        continue;
+                    }
+                    if (closed) {
+                        throw new IOException("unix socket closed");
+                    }
+                    selector.select();
+                    selector.selectedKeys().clear();
+                }
+            } finally {
+                buffer.clear();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            selector.close();
+        }
+    }
+}
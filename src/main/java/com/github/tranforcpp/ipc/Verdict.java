@@ -0,0 +1,37 @@
+package com.github.tranforcpp.ipc;
+
+/**
+ * C++插件对可取消事件的裁决
+ * <p>
+ * dropItems 和 expToDrop 为 null 时保持原样，只对 BlockBreak 生效。
+ */
+public record Verdict(boolean cancel, Boolean dropItems, Integer expToDrop) {
+
+    public static final Verdict ALLOW = new Verdict(false, null, null);
+    public static final Verdict CANCEL = new Verdict(true, null, null);
+
+    /**
+     * 合并多个C++进程对同一事件的裁决：任一进程取消即取消，掉落设置以后面的进程为准
+     */
+    public Verdict merge(Verdict other) {
+        return new Verdict(cancel || other.cancel,
+            other.dropItems != null ? other.dropItems : dropItems,
+            other.expToDrop != null ? other.expToDrop : expToDrop);
+    }
+
+    /**
+     * 配置中的默认裁决名称：allow 或 cancel，无法识别时返回 null
+     */
+    public static Verdict fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        if ("allow".equalsIgnoreCase(name.trim())) {
+            return ALLOW;
+        }
+        if ("cancel".equalsIgnoreCase(name.trim())) {
+            return CANCEL;
+        }
+        return null;
+    }
+}
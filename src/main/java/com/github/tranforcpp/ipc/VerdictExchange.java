@@ -0,0 +1,197 @@
+package com.github.tranforcpp.ipc;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * 可取消事件的请求/回复
+ * <p>
+ * 协商了 verdicts 功能后，C++插件声明的可取消事件不再单向发送，而是以 {@link EventType#REQUEST} 帧发出，
+ * 参数为关联编号、事件名称和原事件参数。触发事件的服务器线程先自旋再挂起等待回复，
+ * 读取线程收到 {@code {"action":"verdict","id":...}} 后唤醒它，超过单事件预算或本 tick 的总预算时
+ * 使用配置的默认裁决。迟到的回复直接丢弃。
+ * <p>
+ * tick 预算按 50 毫秒一个时间窗口计算，不依赖只有 Paper 才触发的 tick 结束事件；Folia 下所有区域线程
+ * 共用同一个窗口的预算。
+ * <p>
+ * {@link #request} 在触发事件的线程上调用，{@link #complete} 在读取线程上调用。
+ */
+public final class VerdictExchange {
+
+    private static final long SPIN_NANOS = 20_000L;
+    private static final long TICK_NANOS = 50_000_000L;
+
+    private final VerdictSettings settings;
+    private final Predicate<QueuedEvent> sink;
+    private final Map<Long, Slot> pending = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong tickWindow = new AtomicLong(System.nanoTime() / TICK_NANOS);
+    private final AtomicLong tickWaitNanos = new AtomicLong();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder late = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private volatile Set<String> events = Set.of();
+
+    /**
+     * @param sink 把请求放入发送队列，队列已满被丢弃时返回 false
+     */
+    public VerdictExchange(VerdictSettings settings, Predicate<QueuedEvent> sink) {
+        this.settings = settings;
+        this.sink = sink;
+    }
+
+    /**
+     * 设置C++插件在握手中声明需要裁决的事件，未协商时为空
+     */
+    public void setEvents(Set<String> eventNames) {
+        events = Set.copyOf(eventNames);
+    }
+
+    public Set<String> getEvents() {
+        return Collections.unmodifiableSet(events);
+    }
+
+    public boolean isRequested(String eventName) {
+        return events.contains(eventName);
+    }
+
+    /**
+     * 发出请求并等待裁决，超时、队列已满或本 tick 预算用完时返回默认裁决
+     */
+    public Verdict request(String eventName, Object[] args) {
+        requests.increment();
+        long id = ids.incrementAndGet();
+        Slot slot = new Slot(Thread.currentThread());
+        pending.put(id, slot);
+
+        Object[] requestArgs = new Object[args.length + 2];
+        requestArgs[0] = id;
+        requestArgs[1] = eventName;
+        System.arraycopy(args, 0, requestArgs, 2, args.length);
+        if (!sink.test(new QueuedEvent(EventType.REQUEST.getWireName(), requestArgs))) {
+            pending.remove(id);
+            timeouts.increment();
+            return settings.timeoutVerdict();
+        }
+
+        long window = System.nanoTime() / TICK_NANOS;
+        long current = tickWindow.get();
+        if (current != window && tickWindow.compareAndSet(current, window)) {
+            // 进入新的时间窗口，只有一个线程负责重置
+            tickWaitNanos.set(0);
+        }
+        long budget = Math.min(settings.budgetMicros() * 1000L,
+            settings.tickBudgetMicros() * 1000L - tickWaitNanos.get());
+        if (budget <= 0) {
+            // 请求照常发出，C++仍能看到事件，只是不再等待它的回复
+            pending.remove(id);
+            skipped.increment();
+            return settings.timeoutVerdict();
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + budget;
+        Verdict verdict = await(slot, start, deadline);
+        if (verdict == null && pending.remove(id) == null) {
+            // 读取线程已经取走了槽位，回复马上就会写入
+            while ((verdict = slot.verdict) == null) {
+                Thread.onSpinWait();
+            }
+        }
+        long waited = System.nanoTime() - start;
+        tickWaitNanos.addAndGet(waited);
+        latency.record(waited);
+        if (verdict == null) {
+            timeouts.increment();
+            return settings.timeoutVerdict();
+        }
+        return verdict;
+    }
+
+    private static Verdict await(Slot slot, long start, long deadline) {
+        Verdict verdict;
+        long spinUntil = Math.min(deadline, start + SPIN_NANOS);
+        while ((verdict = slot.verdict) == null && System.nanoTime() < spinUntil) {
+            Thread.onSpinWait();
+        }
+        while (verdict == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            LockSupport.parkNanos(slot, remaining);
+            verdict = slot.verdict;
+        }
+        return verdict;
+    }
+
+    /**
+     * 读取线程收到裁决，唤醒等待的线程；已超时的请求计为迟到
+     */
+    public void complete(long id, Verdict verdict) {
+        Slot slot = pending.remove(id);
+        if (slot == null) {
+            late.increment();
+            return;
+        }
+        slot.verdict = verdict;
+        LockSupport.unpark(slot.waiter);
+    }
+
+    /**
+     * 进程停止时让所有等待的线程立即使用默认裁决
+     */
+    public void clear() {
+        events = Set.of();
+        for (Long id : pending.keySet()) {
+            Slot slot = pending.remove(id);
+            if (slot != null) {
+                slot.verdict = settings.timeoutVerdict();
+                LockSupport.unpark(slot.waiter);
+            }
+        }
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * 因本 tick 预算用完而没有等待的请求数
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    public long getLate() {
+        return late.sum();
+    }
+
+    /**
+     * 每次等待占用服务器线程的时间
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    private static final class Slot {
+        final Thread waiter;
+        volatile Verdict verdict;
+
+        Slot(Thread waiter) {
+            this.waiter = waiter;
+        }
+    }
+}
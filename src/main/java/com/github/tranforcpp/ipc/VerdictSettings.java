@@ -0,0 +1,12 @@
+package com.github.tranforcpp.ipc;
+
+/**
+ * 可取消事件请求裁决的配置
+ *
+ * @param enabled          是否在握手中提供 verdicts 功能
+ * @param budgetMicros     每个事件最多等待C++回复的时间（微秒）
+ * @param tickBudgetMicros 每个 tick 内所有事件等待时间之和的上限（微秒），用完后本 tick 剩余的事件不再等待
+ * @param timeoutVerdict   超时或不等待时使用的裁决
+ */
+public record VerdictSettings(boolean enabled, long budgetMicros, long tickBudgetMicros, Verdict timeoutVerdict) {
+}
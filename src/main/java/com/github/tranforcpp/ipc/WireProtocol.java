@@ -0,0 +1,51 @@
+package com.github.tranforcpp.ipc;
+
+/**
+ * 与C++进程之间的事件编码协议
+ * <p>
+ * 进程启动时Java端先以JSON行发送 Hello 握手，C++端回复所选协议后再切换编码。
+ * 未回复握手的旧版C++插件始终使用 JSON。
+ */
+public enum WireProtocol {
+
+    JSON("json"),
+    BINARY("binary");
+
+    public static final int VERSION = 1;
+
+    private final String wireName;
+
+    WireProtocol(String wireName) {
+        this.wireName = wireName;
+    }
+
+    public String getWireName() {
+        return wireName;
+    }
+
+    public FrameEncoder newEncoder() {
+        return newEncoder(false);
+    }
+
+    /**
+     * @param handles 是否协商了句柄功能，只对二进制协议有效，JSON 始终按名称发送
+     */
+    public FrameEncoder newEncoder(boolean handles) {
+        return this == BINARY ? new BinaryFrameEncoder(handles) : new JsonFrameEncoder();
+    }
+
+    /**
+     * 解析协议名称，无法识别时返回 null
+     */
+    public static WireProtocol fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (WireProtocol protocol : values()) {
+            if (protocol.wireName.equalsIgnoreCase(name.trim())) {
+                return protocol;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.tranforcpp.ipc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 事件写出线程的吞吐统计
+ * <p>
+ * 除丢弃计数外都只由唯一的写出线程更新，其他线程只读取。
+ */
+public final class WriterStats {
+
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong drains = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong largestDrain = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long startNanos = System.nanoTime();
+
+    /**
+     * 记录一次批量写出
+     *
+     * @param frameCount 本次写出的帧数
+     * @param byteCount  本次写出的字节数
+     */
+    public void recordDrain(int frameCount, int byteCount) {
+        frames.addAndGet(frameCount);
+        drains.incrementAndGet();
+        bytes.addAndGet(byteCount);
+        if (frameCount > largestDrain.get()) {
+            largestDrain.set(frameCount);
+        }
+    }
+
+    public void recordDropped(int count) {
+        dropped.addAndGet(count);
+    }
+
+    public long getFrames() {
+        return frames.get();
+    }
+
+    /**
+     * 写入+刷新的次数，每次批量写出恰好一次
+     */
+    public long getDrains() {
+        return drains.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getLargestDrain() {
+        return largestDrain.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public double getAverageDrain() {
+        long count = drains.get();
+        return count == 0 ? 0.0 : (double) frames.get() / count;
+    }
+
+    /**
+     * 自上次重置以来的平均帧率
+     */
+    public double getFramesPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        return seconds <= 0 ? 0.0 : frames.get() / seconds;
+    }
+
+    public void reset() {
+        frames.set(0);
+        drains.set(0);
+        bytes.set(0);
+        largestDrain.set(0);
+        dropped.set(0);
+        startNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,153 @@
+package com.github.tranforcpp.listener;
+
+import org.bukkit.Bukkit;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 按需注册的事件监听
+ * <p>
+ * 每个可转发给C++的事件绑定一个Bukkit事件类型和处理函数，只有被订阅的事件才会通过
+ * {@code PluginManager.registerEvent} 注册监听，未订阅的事件在主线程上没有任何开销。
+ * 每个订阅使用独立的 Listener 实例，因此可以在运行时单独取消，无需重载。
+ */
+public class EventSubscriptions {
+
+    private final Plugin plugin;
+    private final Map<String, Binding<?>> bindings = new LinkedHashMap<>();
+    private final Map<String, Listener> active = new ConcurrentHashMap<>();
+    private final Map<String, HandlerTiming> timings = new ConcurrentHashMap<>();
+    private volatile boolean timingEnabled;
+
+    public EventSubscriptions(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 绑定事件名称与Bukkit事件，只应在初始化时调用
+     */
+    public <T extends Event> void bind(String eventName, Class<T> eventClass, Consumer<T> handler) {
+        HandlerTiming timing = new HandlerTiming();
+        timings.put(eventName, timing);
+        bindings.put(eventName, new Binding<>(eventClass, handler, timing));
+    }
+
+    /**
+     * 开启后每次调用处理函数都记录耗时，关闭时只多一次 volatile 读
+     */
+    public void setTimingEnabled(boolean enabled) {
+        if (enabled && !timingEnabled) {
+            timings.values().forEach(HandlerTiming::reset);
+        }
+        timingEnabled = enabled;
+    }
+
+    public boolean isTimingEnabled() {
+        return timingEnabled;
+    }
+
+    /**
+     * 各事件处理函数的耗时统计，按事件名称排序
+     */
+    public Map<String, HandlerTiming> getTimings() {
+        return Collections.unmodifiableMap(new TreeMap<>(timings));
+    }
+
+    /**
+     * 订阅事件，已订阅或未绑定时返回 false
+     */
+    public synchronized boolean subscribe(String eventName) {
+        Binding<?> binding = bindings.get(eventName);
+        if (binding == null || active.containsKey(eventName)) {
+            return false;
+        }
+        Listener listener = new Listener() {};
+        binding.register(plugin, listener, this);
+        active.put(eventName, listener);
+        return true;
+    }
+
+    /**
+     * 取消订阅，未订阅时返回 false
+     */
+    public synchronized boolean unsubscribe(String eventName) {
+        Listener listener = active.remove(eventName);
+        if (listener == null) {
+            return false;
+        }
+        HandlerList.unregisterAll(listener);
+        return true;
+    }
+
+    public synchronized void subscribeAll() {
+        for (String eventName : bindings.keySet()) {
+            subscribe(eventName);
+        }
+    }
+
+    /**
+     * 只保留给定的订阅，其余全部取消
+     */
+    public synchronized void retain(Collection<String> eventNames) {
+        for (String eventName : bindings.keySet()) {
+            if (eventNames.contains(eventName)) {
+                subscribe(eventName);
+            } else {
+                unsubscribe(eventName);
+            }
+        }
+    }
+
+    public synchronized void unsubscribeAll() {
+        for (String eventName : Set.copyOf(active.keySet())) {
+            unsubscribe(eventName);
+        }
+    }
+
+    public boolean isBound(String eventName) {
+        return bindings.containsKey(eventName);
+    }
+
+    /**
+     * 所有可订阅的事件名称
+     */
+    public Set<String> getBound() {
+        return Collections.unmodifiableSet(bindings.keySet());
+    }
+
+    public Set<String> getSubscribed() {
+        return Collections.unmodifiableSet(new TreeSet<>(active.keySet()));
+    }
+
+    private record Binding<T extends Event>(Class<T> eventClass, Consumer<T> handler, HandlerTiming timing) {
+
+        void register(Plugin plugin, Listener listener, EventSubscriptions owner) {
+            // 执行器也会收到子类事件（如 PlayerDeathEvent 之于 EntityDeathEvent），与 @EventHandler 行为一致
+            Bukkit.getPluginManager().registerEvent(eventClass, listener, EventPriority.NORMAL, (l, event) -> {
+                if (!eventClass.isInstance(event)) {
+                    return;
+                }
+                if (!owner.timingEnabled) {
+                    handler.accept(eventClass.cast(event));
+                    return;
+                }
+                long start = System.nanoTime();
+                handler.accept(eventClass.cast(event));
+                timing.record(System.nanoTime() - start);
+            }, plugin, false);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.tranforcpp.listener;
+
+import com.github.tranforcpp.ProcessManager.GenericTranforCEvent;
+import com.github.tranforcpp.ipc.MpscArrayQueue;
+import com.github.tranforcpp.ipc.QueuedEvent;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 把转发给C++的事件同时作为 {@link GenericTranforCEvent} 分发给其他Java插件
+ * <p>
+ * 没有插件监听 GenericTranforCEvent 时不创建事件对象，也不调用 callEvent。
+ * async 模式下捕获事件的线程只入队，由独立线程调用监听器，监听器的耗时不再计入服务器 tick。
+ */
+public class GenericEventDispatcher {
+
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final long JOIN_TIMEOUT_MS = 1000;
+
+    private final Plugin plugin;
+    private final GenericEventMode mode;
+    private final MpscArrayQueue<QueuedEvent> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean running;
+    private Thread thread;
+
+    public GenericEventDispatcher(Plugin plugin, GenericEventMode mode) {
+        this.plugin = plugin;
+        this.mode = mode;
+        this.queue = mode == GenericEventMode.ASYNC ? new MpscArrayQueue<>(QUEUE_CAPACITY) : null;
+    }
+
+    public void start() {
+        if (mode != GenericEventMode.ASYNC) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::dispatchLoop, "TranforC++-Dispatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(JOIN_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        if (queue != null) {
+            queue.clear();
+        }
+    }
+
+    /**
+     * 分发一个事件，可能同时被多个区域线程调用（Folia）
+     */
+    public void dispatch(String eventName, Object[] args) {
+        if (mode == GenericEventMode.OFF || !GenericTranforCEvent.hasListeners()) {
+            return;
+        }
+        if (mode == GenericEventMode.SYNC) {
+            callEvent(new GenericTranforCEvent(eventName, args));
+        } else if (!running || !queue.offer(new QueuedEvent(eventName, args))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void dispatchLoop() {
+        try {
+            while (running) {
+                QueuedEvent event = queue.poll(50, TimeUnit.MILLISECONDS);
+                if (event != null) {
+                    callEvent(new GenericTranforCEvent(true, event.eventName(), event.args()));
+                }
+            }
+        } catch (InterruptedException e) {
+            // 线程被中断是正常的关闭过程
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void callEvent(GenericTranforCEvent event) {
+        try {
+            Bukkit.getPluginManager().callEvent(event);
+        } catch (Exception e) {
+            plugin.getLogger().warning("事件分发失败: " + e.getMessage());
+        }
+    }
+
+    public GenericEventMode getMode() {
+        return mode;
+    }
+
+    /**
+     * async 模式下分发队列已满而未分发的事件数
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+}
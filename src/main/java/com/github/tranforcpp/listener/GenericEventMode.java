@@ -0,0 +1,45 @@
+package com.github.tranforcpp.listener;
+
+/**
+ * GenericTranforCEvent 的分发方式
+ */
+public enum GenericEventMode {
+
+    /**
+     * 在触发事件的线程上同步调用，与旧版行为一致
+     */
+    SYNC("sync"),
+    /**
+     * 由独立线程作为异步事件调用，监听器中不能直接操作世界
+     */
+    ASYNC("async"),
+    /**
+     * 不分发
+     */
+    OFF("off");
+
+    private final String configName;
+
+    GenericEventMode(String configName) {
+        this.configName = configName;
+    }
+
+    public String getConfigName() {
+        return configName;
+    }
+
+    /**
+     * 解析模式名称，无法识别时返回 null
+     */
+    public static GenericEventMode fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (GenericEventMode mode : values()) {
+            if (mode.configName.equalsIgnoreCase(name.trim())) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
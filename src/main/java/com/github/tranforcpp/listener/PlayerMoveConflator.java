@@ -0,0 +1,186 @@
+package com.github.tranforcpp.listener;
+
+import com.github.tranforcpp.ipc.HandleRegistry;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 玩家移动合并
+ * <p>
+ * 移动数据包每秒最多20个，逐个转发给C++既浪费又没有意义。这里为每个玩家记录上次发送的位置，
+ * 只有位移超过阈值（或视角变化超过阈值，默认不计视角）时才标记为待发送，
+ * 两次刷新之间只保留最新位置，在每个tick结束时统一发出。
+ * <p>
+ * 发出的 PlayerMove 事件参数：玩家名、世界名、起点 x/y/z、终点 x/y/z、终点 yaw/pitch。
+ */
+public class PlayerMoveConflator {
+
+    private static final long STALE_NANOS = 60_000_000_000L;
+    private static final int CLEANUP_INTERVAL_TICKS = 1200;
+    private static final long OVERDUE_NANOS = 100_000_000L;
+
+    private final BiConsumer<String, Object[]> sink;
+    private final HandleRegistry handles;
+    private final double minDistanceSquared;
+    private final float rotationThreshold;
+    private final Map<UUID, MoveState> states = new ConcurrentHashMap<>();
+    private final Queue<MoveState> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private int ticksSinceCleanup;
+    private volatile long lastFlushNanos = System.nanoTime();
+
+    /**
+     * @param sink              合并后的事件出口
+     * @param handles           玩家和世界参数的句柄表
+     * @param minDistance       触发发送的最小位移（格）
+     * @param rotationThreshold 触发发送的最小视角变化（度），0 表示只转动视角不发送
+     */
+    public PlayerMoveConflator(BiConsumer<String, Object[]> sink, HandleRegistry handles, double minDistance,
+                               float rotationThreshold) {
+        this.sink = sink;
+        this.handles = handles;
+        this.minDistanceSquared = minDistance * minDistance;
+        this.rotationThreshold = rotationThreshold;
+    }
+
+    /**
+     * 记录一次移动，可能从多个区域线程调用（Folia）
+     */
+    public void record(Player player, Location from, Location to) {
+        if (to == null) {
+            return;
+        }
+        received.incrementAndGet();
+        MoveState state = states.computeIfAbsent(player.getUniqueId(), id -> new MoveState(handles.player(player), from, handles));
+        synchronized (state) {
+            state.update(to, handles);
+            if (!state.pending && exceedsThreshold(state)) {
+                state.pending = true;
+                pending.offer(state);
+            }
+        }
+        // 没有 tick 结束事件（Folia）或服务器卡顿时，由移动事件本身补发
+        if (System.nanoTime() - lastFlushNanos > OVERDUE_NANOS) {
+            flush();
+        }
+    }
+
+    private boolean exceedsThreshold(MoveState state) {
+        if (state.world != state.sentWorld) {
+            return true;
+        }
+        double dx = state.x - state.sentX;
+        double dy = state.y - state.sentY;
+        double dz = state.z - state.sentZ;
+        if (dx * dx + dy * dy + dz * dz >= minDistanceSquared) {
+            return true;
+        }
+        if (rotationThreshold <= 0) {
+            return false;
+        }
+        float yawDelta = Math.abs(wrapDegrees(state.yaw - state.sentYaw));
+        return yawDelta >= rotationThreshold || Math.abs(state.pitch - state.sentPitch) >= rotationThreshold;
+    }
+
+    private static float wrapDegrees(float degrees) {
+        float wrapped = degrees % 360.0f;
+        if (wrapped >= 180.0f) {
+            wrapped -= 360.0f;
+        } else if (wrapped < -180.0f) {
+            wrapped += 360.0f;
+        }
+        return wrapped;
+    }
+
+    /**
+     * 发出所有待发送的移动，每个tick结束时调用
+     */
+    public synchronized void flush() {
+        lastFlushNanos = System.nanoTime();
+        MoveState state;
+        while ((state = pending.poll()) != null) {
+            Object[] args;
+            synchronized (state) {
+                state.pending = false;
+                args = new Object[]{state.player, state.world, state.sentX, state.sentY, state.sentZ,
+                    state.x, state.y, state.z, (double) state.yaw, (double) state.pitch};
+                state.markSent();
+            }
+            sent.incrementAndGet();
+            sink.accept("PlayerMove", args);
+        }
+
+        if (++ticksSinceCleanup >= CLEANUP_INTERVAL_TICKS) {
+            ticksSinceCleanup = 0;
+            long now = System.nanoTime();
+            states.values().removeIf(s -> !s.pending && now - s.updatedNanos > STALE_NANOS);
+        }
+    }
+
+    public void clear() {
+        pending.clear();
+        states.clear();
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    private static final class MoveState {
+        final Object player;
+        Object world;
+        double x;
+        double y;
+        double z;
+        float yaw;
+        float pitch;
+        Object sentWorld;
+        double sentX;
+        double sentY;
+        double sentZ;
+        float sentYaw;
+        float sentPitch;
+        boolean pending;
+        long updatedNanos;
+
+        MoveState(Object player, Location origin, HandleRegistry handles) {
+            this.player = player;
+            update(origin, handles);
+            markSent();
+        }
+
+        void update(Location location, HandleRegistry handles) {
+            World current = location.getWorld();
+            world = current != null ? handles.world(current) : "";
+            x = location.getX();
+            y = location.getY();
+            z = location.getZ();
+            yaw = location.getYaw();
+            pitch = location.getPitch();
+            updatedNanos = System.nanoTime();
+        }
+
+        void markSent() {
+            sentWorld = world;
+            sentX = x;
+            sentY = y;
+            sentZ = z;
+            sentYaw = yaw;
+            sentPitch = pitch;
+        }
+    }
+}
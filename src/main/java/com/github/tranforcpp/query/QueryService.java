@@ -0,0 +1,238 @@
+package com.github.tranforcpp.query;
+
+import com.github.tranforcpp.ipc.EventType;
+import com.github.tranforcpp.ipc.HandleRegistry;
+import com.github.tranforcpp.ipc.QueuedEvent;
+import com.github.tranforcpp.utils.FoliaCompatUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * C++插件的查询
+ * <p>
+ * 读取线程收到 {@code {"action":"query","id":1,"type":"location","player":"Steve"}} 后先查缓存，
+ * 命中时直接回复；否则放入待处理队列，每个 tick 在服务器线程上统一处理一次，同一批中相同的查询只计算一次，
+ * C++ 查询再频繁也只占用一次主线程调度。Folia 下针对玩家的查询转到玩家所在区域的线程上执行。
+ * <p>
+ * 结果以 {@link EventType#QUERY_RESULT} 事件发回，参数为查询编号、是否成功和结果，格式见 {@link QueryType}。
+ */
+public final class QueryService {
+
+    private static final int MAX_PENDING = 4096;
+    private static final int CACHE_SWEEP_SIZE = 256;
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private final Plugin plugin;
+    private final HandleRegistry handles;
+    private final Map<QueryType, Long> cacheTtlNanos = new EnumMap<>(QueryType.class);
+    private final Queue<PendingQuery> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final Map<QueryKey, CachedResult> cache = new ConcurrentHashMap<>();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile FoliaCompatUtil.TaskHandle task;
+
+    /**
+     * @param cacheTtlMs 每种查询结果的缓存时间（毫秒），未配置或为0的查询不缓存
+     */
+    public QueryService(Plugin plugin, HandleRegistry handles, Map<QueryType, Long> cacheTtlMs) {
+        this.plugin = plugin;
+        this.handles = handles;
+        for (Map.Entry<QueryType, Long> entry : cacheTtlMs.entrySet()) {
+            if (entry.getValue() > 0) {
+                cacheTtlNanos.put(entry.getKey(), TimeUnit.MILLISECONDS.toNanos(entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * 每个 tick 处理一次待处理的查询
+     */
+    public void start() {
+        task = FoliaCompatUtil.runSyncTaskTimer(plugin, this::drain, 1L, 1L);
+    }
+
+    public void stop() {
+        FoliaCompatUtil.TaskHandle current = task;
+        task = null;
+        if (current != null) {
+            current.cancel();
+        }
+        pending.clear();
+        pendingCount.set(0);
+        cache.clear();
+    }
+
+    /**
+     * 读取线程收到查询
+     *
+     * @param type   查询类型，无法识别时为 null
+     * @param target 玩家名称，不针对玩家的查询忽略
+     * @param sink   把查询结果放入发起查询的进程的发送队列
+     */
+    public void submit(long id, QueryType type, String target, Consumer<QueuedEvent> sink) {
+        received.increment();
+        if (type == null || (type.isPlayerTarget() && target == null)) {
+            reply(new PendingQuery(id, null, sink), false, NO_VALUES);
+            return;
+        }
+        QueryKey key = new QueryKey(type, type.isPlayerTarget() ? target : "");
+        PendingQuery query = new PendingQuery(id, key, sink);
+        CachedResult cached = cache.get(key);
+        if (cached != null && cached.expiresAt() - System.nanoTime() > 0) {
+            cacheHits.increment();
+            reply(query, true, cached.values());
+            return;
+        }
+        if (pendingCount.incrementAndGet() > MAX_PENDING) {
+            pendingCount.decrementAndGet();
+            reply(query, false, NO_VALUES);
+            return;
+        }
+        pending.offer(query);
+    }
+
+    private void drain() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<QueryKey, List<PendingQuery>> batch = new LinkedHashMap<>();
+        PendingQuery query;
+        while ((query = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            batch.computeIfAbsent(query.key(), k -> new ArrayList<>(1)).add(query);
+        }
+        batches.increment();
+        if (cache.size() > CACHE_SWEEP_SIZE) {
+            long now = System.nanoTime();
+            cache.values().removeIf(cached -> cached.expiresAt() - now <= 0);
+        }
+
+        for (Map.Entry<QueryKey, List<PendingQuery>> entry : batch.entrySet()) {
+            QueryKey key = entry.getKey();
+            List<PendingQuery> waiting = entry.getValue();
+            if (!key.type().isPlayerTarget()) {
+                complete(key, waiting, compute(key.type(), null));
+                continue;
+            }
+            Player player = Bukkit.getPlayerExact(key.target());
+            if (player == null) {
+                fail(waiting);
+            } else if (FoliaCompatUtil.isFolia() && !Bukkit.isOwnedByCurrentRegion(player)) {
+                player.getScheduler().run(plugin, t -> complete(key, waiting, compute(key.type(), player)),
+                    () -> fail(waiting));
+            } else {
+                complete(key, waiting, compute(key.type(), player));
+            }
+        }
+    }
+
+    private Object[] compute(QueryType type, Player player) {
+        return switch (type) {
+            case ONLINE -> {
+                Collection<? extends Player> online = Bukkit.getOnlinePlayers();
+                List<Object> names = new ArrayList<>(online.size());
+                for (Player each : online) {
+                    names.add(handles.player(each));
+                }
+                yield names.toArray();
+            }
+            case LOCATION -> {
+                Location location = player.getLocation();
+                World world = location.getWorld();
+                yield new Object[]{world != null ? handles.world(world) : null, location.getX(), location.getY(),
+                    location.getZ(), (double) location.getYaw(), (double) location.getPitch()};
+            }
+            case HEALTH -> new Object[]{player.getHealth(), player.getFoodLevel(), player.getLevel()};
+            case INVENTORY -> {
+                ItemStack[] contents = player.getInventory().getContents();
+                List<Object> slots = new ArrayList<>();
+                for (int slot = 0; slot < contents.length; slot++) {
+                    ItemStack item = contents[slot];
+                    if (item != null && item.getType() != Material.AIR) {
+                        slots.add(slot);
+                        slots.add(handles.material(item.getType()));
+                        slots.add(item.getAmount());
+                    }
+                }
+                yield slots.toArray();
+            }
+        };
+    }
+
+    private void complete(QueryKey key, List<PendingQuery> waiting, Object[] values) {
+        Long ttl = cacheTtlNanos.get(key.type());
+        if (ttl != null) {
+            cache.put(key, new CachedResult(values, System.nanoTime() + ttl));
+        }
+        for (PendingQuery query : waiting) {
+            reply(query, true, values);
+        }
+    }
+
+    private void fail(List<PendingQuery> waiting) {
+        for (PendingQuery query : waiting) {
+            reply(query, false, NO_VALUES);
+        }
+    }
+
+    private void reply(PendingQuery query, boolean ok, Object[] values) {
+        if (!ok) {
+            failed.increment();
+        }
+        Object[] args = new Object[values.length + 2];
+        args[0] = query.id();
+        args[1] = ok;
+        System.arraycopy(values, 0, args, 2, values.length);
+        query.sink().accept(new QueuedEvent(EventType.QUERY_RESULT.getWireName(), args));
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * 在服务器线程上处理过查询的 tick 数
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    private record QueryKey(QueryType type, String target) {
+    }
+
+    private record PendingQuery(long id, QueryKey key, Consumer<QueuedEvent> sink) {
+    }
+
+    private record CachedResult(Object[] values, long expiresAt) {
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.tranforcpp.query;
+
+/**
+ * C++插件可以查询的数据
+ * <p>
+ * 每种查询的结果参数：
+ * <ul>
+ *   <li>online - 在线玩家名称</li>
+ *   <li>location - 世界、x、y、z、yaw、pitch</li>
+ *   <li>health - 生命值、饥饿值、经验等级</li>
+ *   <li>inventory - 每个非空槽位依次为槽位、物品类型、数量</li>
+ * </ul>
+ * 除 online 外都需要指定玩家。
+ */
+public enum QueryType {
+
+    ONLINE("online", false),
+    LOCATION("location", true),
+    HEALTH("health", true),
+    INVENTORY("inventory", true);
+
+    private final String wireName;
+    private final boolean playerTarget;
+
+    QueryType(String wireName, boolean playerTarget) {
+        this.wireName = wireName;
+        this.playerTarget = playerTarget;
+    }
+
+    public String getWireName() {
+        return wireName;
+    }
+
+    /**
+     * 是否针对单个玩家，Folia 下在玩家所在区域的线程上执行
+     */
+    public boolean isPlayerTarget() {
+        return playerTarget;
+    }
+
+    public static QueryType fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (QueryType type : values()) {
+            if (type.wireName.equalsIgnoreCase(name.trim())) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.tranforcpp.utils;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MiniMessage 解析结果的 LRU 缓存
+ * <p>
+ * C++插件经常重复发送相同的文本（计分板行、定时公告），Component 不可变，可以直接复用。
+ * 超过 {@link #MAX_CACHED_LENGTH} 的文本通常只出现一次，不放入缓存。
+ * 可能同时被多个读取线程调用，访问时加锁。
+ */
+public class ComponentCache {
+
+    private static final int MAX_CACHED_LENGTH = 1024;
+
+    private final MiniMessage miniMessage;
+    private final int capacity;
+    private final Map<String, Component> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity 最多缓存的文本数，0 表示不缓存
+     */
+    public ComponentCache(MiniMessage miniMessage, int capacity) {
+        this.miniMessage = miniMessage;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Component> eldest) {
+                return size() > ComponentCache.this.capacity;
+            }
+        };
+    }
+
+    public Component deserialize(String text) {
+        if (capacity == 0 || text.length() > MAX_CACHED_LENGTH) {
+            misses.increment();
+            return miniMessage.deserialize(text);
+        }
+        synchronized (entries) {
+            Component cached = entries.get(text);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+        // 在锁外解析，两个线程同时未命中时最多重复解析一次
+        Component parsed = miniMessage.deserialize(text);
+        synchronized (entries) {
+            entries.put(text, parsed);
+        }
+        return parsed;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0.0 : (double) hit / total;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
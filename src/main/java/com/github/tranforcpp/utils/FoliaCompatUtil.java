@@ -1,5 +1,10 @@
 package com.github.tranforcpp.utils;
 
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -12,11 +17,42 @@ import java.util.concurrent.TimeUnit;
  * <p>
  * 主要功能：
  * - 异步定时任务调度
+ * - 服务器线程定时任务调度（Folia 下为全局区域线程）
  * - 线程管理
  * - 兼容性适配
  */
 public class FoliaCompatUtil {
 
+    private static final boolean FOLIA = detectFolia();
+
+    private static boolean detectFolia() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    public static boolean isFolia() {
+        return FOLIA;
+    }
+
+    /**
+     * 在服务器线程上定时执行，Folia 下使用全局区域调度器
+     *
+     * @param delay  首次执行前等待的 tick 数，至少为1
+     * @param period 间隔 tick 数
+     */
+    public static TaskHandle runSyncTaskTimer(Plugin plugin, Runnable task, long delay, long period) {
+        if (FOLIA) {
+            ScheduledTask scheduled = Bukkit.getGlobalRegionScheduler().runAtFixedRate(plugin, t -> task.run(), delay, period);
+            return scheduled::cancel;
+        }
+        BukkitTask scheduled = Bukkit.getScheduler().runTaskTimer(plugin, task, delay, period);
+        return scheduled::cancel;
+    }
+
     public static TaskHandle runAsyncTaskTimer(Runnable task, long delay, long period, TimeUnit timeUnit) {
         ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
             Thread t = new Thread(r, "FoliaCompat-AsyncTask");
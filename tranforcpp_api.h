@@ -6,71 +6,1736 @@
 #include <sstream>
 #include <thread>
 #include <atomic>
+#include <cstdint>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <mutex>
+#include <vector>
+#include <chrono>
+#include <algorithm>
+#include <functional>
+#include <future>
+#include <memory>
+#include <unordered_map>
+#ifdef _WIN32
+#include <io.h>
+#include <fcntl.h>
+#else
+#include <cerrno>
+#include <fcntl.h>
+#include <sys/mman.h>
+#include <sys/socket.h>
+#include <sys/stat.h>
+#include <sys/un.h>
+#include <unistd.h>
+#endif
+
+// 事件回调声明为弱符号: 插件只需实现关心的回调, tranforcpp::run() 会跳过未实现的回调
+#if defined(__GNUC__) || defined(__clang__)
+#define TRANFORCPP_HANDLER __attribute__((weak))
+#else
+#define TRANFORCPP_HANDLER
+#endif
+
+namespace tranforcpp {
+    // 实体等对象的 UUID, 与 Java 的 getMostSignificantBits/getLeastSignificantBits 对应
+    struct Uuid {
+        uint64_t most;
+        uint64_t least;
+    };
+
+    // 坐标或方向, 对应 org.bukkit.util.Vector
+    struct Vec3 {
+        double x;
+        double y;
+        double z;
+    };
+
+    // 对可取消事件的裁决, drops/exp 为 -1 表示保持原样, 只对 BlockBreak 生效
+    struct Verdict {
+        bool cancel;
+        int drops;
+        int exp;
+    };
+}
 
 extern "C" {
 
-void onPlayerJoin(const char* playerName);
-void onPlayerQuit(const char* playerName);
-void onPlayerChat(const char* playerName, const char* message);
-void onShutdown();
-void onBlockBreak(const char* playerName, const char* blockType);
-void onBlockPlace(const char* playerName, const char* blockType);
-void onBlockIgnite(const char* playerName, const char* blockType);
-void onEntityDamage(const char* entityName, const char* damage);
-void onEntityDeath(const char* entityName);
-void onEntitySpawn(const char* entityType);
-void onPlayerDeath(const char* playerName, const char* deathMessage);
-void onPlayerMove(const char* playerName);
-void onPlayerRespawn(const char* playerName);
-void onPlayerInteract(const char* playerName, const char* action, const char* itemType);
-void onPlayerDropItem(const char* playerName, const char* itemType);
-void onPlayerPickupItem(const char* playerName, const char* itemType);
-void onInventoryClick(const char* playerName, const char* slot, const char* itemType);
-void onInventoryOpen(const char* playerName);
-void onInventoryClose(const char* playerName);
-void onServerCommand(const char* sender, const char* command);
-void onWorldLoad(const char* worldName);
-void onWeatherChange(const char* worldName, const char* weatherState);
-void onHangingBreak(const char* entityType, const char* cause);
+TRANFORCPP_HANDLER void onPlayerJoin(const char* playerName);
+TRANFORCPP_HANDLER void onPlayerQuit(const char* playerName);
+TRANFORCPP_HANDLER void onPlayerChat(const char* playerName, const char* message);
+TRANFORCPP_HANDLER void onShutdown();
+TRANFORCPP_HANDLER void onBlockBreak(const char* playerName, const char* blockType);
+TRANFORCPP_HANDLER void onBlockPlace(const char* playerName, const char* blockType);
+TRANFORCPP_HANDLER void onBlockIgnite(const char* playerName, const char* blockType);
+TRANFORCPP_HANDLER void onEntityDamage(const char* entityName, double damage, tranforcpp::Uuid entityId);
+TRANFORCPP_HANDLER void onEntityDeath(const char* entityName, tranforcpp::Uuid entityId);
+TRANFORCPP_HANDLER void onEntitySpawn(const char* entityType);
+TRANFORCPP_HANDLER void onPlayerDeath(const char* playerName, const char* deathMessage);
+TRANFORCPP_HANDLER void onPlayerMove(const char* playerName);
+// 合并后的移动, 每个玩家每 tick 最多一次, 坐标为上次发送的位置到当前位置
+TRANFORCPP_HANDLER void onPlayerMoveTo(const char* playerName, const char* world,
+                                       double fromX, double fromY, double fromZ,
+                                       double toX, double toY, double toZ);
+TRANFORCPP_HANDLER void onPlayerRespawn(const char* playerName);
+TRANFORCPP_HANDLER void onPlayerInteract(const char* playerName, const char* action, const char* itemType);
+TRANFORCPP_HANDLER void onPlayerDropItem(const char* playerName, const char* itemType);
+TRANFORCPP_HANDLER void onPlayerPickupItem(const char* playerName, const char* itemType);
+TRANFORCPP_HANDLER void onInventoryClick(const char* playerName, int slot, const char* itemType);
+TRANFORCPP_HANDLER void onInventoryOpen(const char* playerName);
+TRANFORCPP_HANDLER void onInventoryClose(const char* playerName);
+TRANFORCPP_HANDLER void onServerCommand(const char* sender, const char* command);
+TRANFORCPP_HANDLER void onWorldLoad(const char* worldName);
+// raining 为 true 表示开始下雨
+TRANFORCPP_HANDLER void onWeatherChange(const char* worldName, bool raining);
+TRANFORCPP_HANDLER void onHangingBreak(const char* entityType, const char* cause);
+
+// 可取消事件的裁决 (需开启 ipc.verdicts.enabled): 实现后服务器线程会等待回复, 应尽快返回
+// 在对应的 onXxx 回调之前调用, 修改 verdict 即可取消事件
+TRANFORCPP_HANDLER void checkBlockBreak(const char* playerName, const char* blockType, tranforcpp::Verdict* verdict);
+TRANFORCPP_HANDLER void checkInventoryClick(const char* playerName, int slot, const char* itemType,
+                                            tranforcpp::Verdict* verdict);
+TRANFORCPP_HANDLER void checkPlayerInteract(const char* playerName, const char* action, const char* itemType,
+                                            tranforcpp::Verdict* verdict);
+
+// 热替换时的状态交接 (需要 tranforcpp::run()): 旧进程处理完切换前收到的全部事件后调用 saveState,
+// 写入 state 的文本原样交给新进程的 restoreState, 新进程在收到任何事件之前调用; 只支持文本, 不能包含 '\0'
+TRANFORCPP_HANDLER void saveState(std::string* state);
+TRANFORCPP_HANDLER void restoreState(const char* state);
 
 }
 
-void broadcast(const char* message);
-void sendMsg(const char* player, const char* message);
-void console(const char* message);
-void dispatchCommand(const char* command, bool sync = false);
+inline void broadcast(const char* message);
+inline void sendMsg(const char* player, const char* message);
+inline void console(const char* message);
+inline void dispatchCommand(const char* command, bool sync = false);
 
 namespace tranforcpp {
-    std::atomic<bool> running(true);
+    inline std::atomic<bool> running(true);
+
+    // 同一个插件运行多个分片时本进程的序号 (从 0 开始) 和分片数, 由 Java 端通过环境变量传入
+    // 每个分片只收到分区键属于自己的事件, 全局事件 (默认 WorldLoad, WeatherChange) 每个分片都会收到
+    inline int shard() {
+        const char* value = std::getenv("TRANFORCPP_SHARD");
+        return value ? std::atoi(value) : 0;
+    }
+
+    inline int shardCount() {
+        const char* value = std::getenv("TRANFORCPP_SHARD_COUNT");
+        return value ? std::atoi(value) : 1;
+    }
+
+    inline std::mutex& outputMutex() {
+        static std::mutex mutex;
+        return mutex;
+    }
+
+    // 当前协议通道, 握手前为标准输入输出, 握手确认后可能切换为共享内存
+    struct Channel {
+        std::istream* in = &std::cin;
+        std::ostream* out = &std::cout;
+        void (*close)() = nullptr;
+    };
+
+    inline Channel& channel() {
+        static Channel current;
+        return current;
+    }
 
     inline void sendMessage(const std::string& action, const std::string& msg) {
-        std::cout << msg << std::endl;
+        std::lock_guard<std::mutex> lock(outputMutex());
+        *channel().out << msg << std::endl;
+    }
+
+    // 转义 JSON 字符串内容, 避免引号和换行破坏按行分隔的消息
+    inline std::string jsonEscape(const char* text) {
+        std::string out;
+        if (text == nullptr) {
+            return out;
+        }
+        for (const char* p = text; *p; p++) {
+            unsigned char c = static_cast<unsigned char>(*p);
+            switch (c) {
+                case '"': out += "\\\""; break;
+                case '\\': out += "\\\\"; break;
+                case '\n': out += "\\n"; break;
+                case '\r': out += "\\r"; break;
+                case '\t': out += "\\t"; break;
+                default:
+                    if (c < 0x20) {
+                        char buffer[8];
+                        std::snprintf(buffer, sizeof(buffer), "\\u%04x", c);
+                        out += buffer;
+                    } else {
+                        out += static_cast<char>(c);
+                    }
+                    break;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 握手协商 handles 功能后, Java 用 Define 帧登记的句柄 (见 wire::readEvent)。
+     * names 只由事件循环线程读写; players 供任意线程发送消息时按玩家名查句柄, 需要加锁。
+     */
+    struct HandleTable {
+        std::vector<std::string> names;
+        std::mutex mutex;
+        std::unordered_map<std::string, uint32_t> players;
+    };
+
+    inline HandleTable& handleTable() {
+        static HandleTable table;
+        return table;
+    }
+
+    inline bool playerHandle(const char* name, uint32_t& out) {
+        if (name == nullptr) return false;
+        HandleTable& table = handleTable();
+        std::lock_guard<std::mutex> lock(table.mutex);
+        auto it = table.players.find(name);
+        if (it == table.players.end()) return false;
+        out = it->second;
+        return true;
     }
 }
 
-void broadcast(const char* message) {
+inline void broadcast(const char* message) {
     std::ostringstream oss;
-    oss << R"({"action":"broadcast","message":")" << message << R"("})";
+    oss << R"({"action":"broadcast","message":")" << tranforcpp::jsonEscape(message) << R"("})";
     tranforcpp::sendMessage("broadcast", oss.str());
 }
 
-void sendMessage(const char* player, const char* message) {
+inline void sendMessage(const char* player, const char* message) {
     std::ostringstream oss;
-    oss << R"({"action":"sendMessage","player":")" << player
-        << R"(","message":")" << message << R"("})";
+    oss << R"({"action":"sendMessage",)";
+    uint32_t handle;
+    if (tranforcpp::playerHandle(player, handle)) {
+        // Java 按句柄直接找到玩家, 不再按名称查找
+        oss << R"("handle":)" << handle << ',';
+    }
+    oss << R"("player":")" << tranforcpp::jsonEscape(player)
+        << R"(","message":")" << tranforcpp::jsonEscape(message) << R"("})";
     tranforcpp::sendMessage("sendMessage", oss.str());
 }
 
-void console(const char* message) {
+inline void sendMsg(const char* player, const char* message) {
+    sendMessage(player, message);
+}
+
+inline void console(const char* message) {
     std::ostringstream oss;
-    oss << R"({"action":"console","message":")" << message << R"("})";
+    oss << R"({"action":"console","message":")" << tranforcpp::jsonEscape(message) << R"("})";
     tranforcpp::sendMessage("console", oss.str());
 }
 
-void dispatchCommand(const char* command, bool sync) {
+inline void dispatchCommand(const char* command, bool sync) {
     std::ostringstream oss;
-    oss << R"({"action":"dispatchCommand","command":")" << command << R"(","sync":)" << (sync ? "true" : "false") << R"(})";
+    oss << R"({"action":"dispatchCommand","command":")" << tranforcpp::jsonEscape(command) << R"(","sync":)" << (sync ? "true" : "false") << R"(})";
     tranforcpp::sendMessage("dispatchCommand", oss.str());
 }
 
+// ---------------------------------------------------------------------------
+// 事件协议
+//
+// Java 端首先发送一行 JSON 握手 {"event":"Hello","args":["1","binary"]},
+// tranforcpp::run() 回复 {"action":"hello","protocol":"binary","version":1} 后,
+// 后续事件以二进制帧发送 (格式见 ProcessManager 的 BinaryFrameEncoder)。
+// 每条消息的第一个字节区分格式: '{' 为 JSON 行, 0xFE 为二进制帧。
+//
+// 使用方法:
+//     int main() { return tranforcpp::run(); }
+// ---------------------------------------------------------------------------
+namespace tranforcpp {
+    namespace wire {
+        constexpr int VERSION = 1;
+        constexpr int FRAME_MARKER = 0xFE;
+        constexpr uint8_t KIND_EVENT = 1;
+        constexpr uint32_t MAX_FRAME_SIZE = 16u * 1024u * 1024u;
+
+        enum class Tag : uint8_t { Null = 0, String = 1, Int = 2, Long = 3, Double = 4, Bool = 5, Handle = 6,
+                              Uuid = 7, Vector = 8 };
+
+        // 必须与 Java 端 com.github.tranforcpp.ipc.HandleKind 保持一致
+        enum class HandleKind : uint8_t { Player = 1, World = 2, Material = 3, EntityType = 4 };
+
+        // 必须与 Java 端 com.github.tranforcpp.ipc.EventType 保持一致
+        enum class EventType : uint16_t {
+            Custom = 0, Hello = 1, Shutdown = 2, Tick = 3, Define = 4, Request = 5, QueryResult = 6,
+            SaveState = 7, RestoreState = 8, Seq = 9,
+            PlayerJoin = 10, PlayerQuit = 11, PlayerChat = 12, PlayerMove = 13, PlayerRespawn = 14,
+            PlayerDeath = 15, PlayerInteract = 16, PlayerDropItem = 17, PlayerPickupItem = 18,
+            BlockBreak = 30, BlockPlace = 31, BlockIgnite = 32,
+            EntityDamage = 40, EntityDeath = 41, EntitySpawn = 42, HangingBreak = 43,
+            InventoryClick = 50, InventoryOpen = 51, InventoryClose = 52,
+            ServerCommand = 60, WorldLoad = 61, WeatherChange = 62
+        };
+
+        struct EventName {
+            EventType type;
+            const char* name;
+        };
+
+        inline const EventName EVENT_NAMES[] = {
+            {EventType::Hello, "Hello"}, {EventType::Shutdown, "shutdown"}, {EventType::Tick, "Tick"},
+            {EventType::Define, "Define"}, {EventType::Request, "Request"},
+            {EventType::QueryResult, "QueryResult"}, {EventType::SaveState, "SaveState"},
+            {EventType::RestoreState, "RestoreState"}, {EventType::Seq, "Seq"},
+            {EventType::PlayerJoin, "PlayerJoin"}, {EventType::PlayerQuit, "PlayerQuit"},
+            {EventType::PlayerChat, "PlayerChat"}, {EventType::PlayerMove, "PlayerMove"},
+            {EventType::PlayerRespawn, "PlayerRespawn"}, {EventType::PlayerDeath, "PlayerDeath"},
+            {EventType::PlayerInteract, "PlayerInteract"}, {EventType::PlayerDropItem, "PlayerDropItem"},
+            {EventType::PlayerPickupItem, "PlayerPickupItem"},
+            {EventType::BlockBreak, "BlockBreak"}, {EventType::BlockPlace, "BlockPlace"},
+            {EventType::BlockIgnite, "BlockIgnite"},
+            {EventType::EntityDamage, "EntityDamage"}, {EventType::EntityDeath, "EntityDeath"},
+            {EventType::EntitySpawn, "EntitySpawn"}, {EventType::HangingBreak, "HangingBreak"},
+            {EventType::InventoryClick, "InventoryClick"}, {EventType::InventoryOpen, "InventoryOpen"},
+            {EventType::InventoryClose, "InventoryClose"},
+            {EventType::ServerCommand, "ServerCommand"}, {EventType::WorldLoad, "WorldLoad"},
+            {EventType::WeatherChange, "WeatherChange"}
+        };
+
+        inline EventType typeOf(const std::string& name) {
+            for (const EventName& entry : EVENT_NAMES) {
+                if (name == entry.name) {
+                    return entry.type;
+                }
+            }
+            return EventType::Custom;
+        }
+
+        inline const char* nameOf(EventType type) {
+            for (const EventName& entry : EVENT_NAMES) {
+                if (type == entry.type) {
+                    return entry.name;
+                }
+            }
+            return "";
+        }
+
+        struct Value {
+            Tag tag = Tag::Null;
+            int64_t integer = 0;
+            double real = 0;
+            Uuid uuid{};
+            Vec3 vector{};
+            // 文本形式: 字符串、句柄和 JSON 参数读取时直接填充,
+            // 二进制的数值、UUID 和向量参数在第一次调用 str() 时才格式化
+            mutable std::string text;
+            mutable bool hasText = true;
+
+            const std::string& str() const;
+        };
+
+        inline uint64_t parseHexDigits(const char*& p, int digits) {
+            uint64_t out = 0;
+            for (int i = 0; i < digits && *p; p++) {
+                char c = *p;
+                if (c == '-') continue;
+                int v = c >= '0' && c <= '9' ? c - '0' : c >= 'a' && c <= 'f' ? c - 'a' + 10 : c >= 'A' && c <= 'F' ? c - 'A' + 10 : 0;
+                out = (out << 4) | static_cast<uint64_t>(v);
+                i++;
+            }
+            return out;
+        }
+
+        /**
+         * 事件参数。二进制协议下参数带类型, argXxx() 直接返回对应的值;
+         * JSON 协议下参数都是字符串, 按需解析
+         */
+        struct Event {
+            EventType type = EventType::Custom;
+            std::string name;
+            std::vector<Value> args;
+
+            const char* arg(size_t index) const {
+                return index < args.size() ? args[index].str().c_str() : "";
+            }
+
+            double argDouble(size_t index) const {
+                if (index >= args.size()) return 0;
+                const Value& value = args[index];
+                switch (value.tag) {
+                    case Tag::Double: return value.real;
+                    case Tag::Int:
+                    case Tag::Long: return static_cast<double>(value.integer);
+                    default: return std::strtod(value.str().c_str(), nullptr);
+                }
+            }
+
+            int64_t argLong(size_t index) const {
+                if (index >= args.size()) return 0;
+                const Value& value = args[index];
+                switch (value.tag) {
+                    case Tag::Int:
+                    case Tag::Long:
+                    case Tag::Bool:
+                    case Tag::Handle: return value.integer;
+                    case Tag::Double: return static_cast<int64_t>(value.real);
+                    default: return std::strtoll(value.str().c_str(), nullptr, 10);
+                }
+            }
+
+            int argInt(size_t index) const {
+                return static_cast<int>(argLong(index));
+            }
+
+            bool argBool(size_t index) const {
+                if (index >= args.size()) return false;
+                const Value& value = args[index];
+                switch (value.tag) {
+                    case Tag::Bool:
+                    case Tag::Int:
+                    case Tag::Long: return value.integer != 0;
+                    default: return value.str() == "true";
+                }
+            }
+
+            Uuid argUuid(size_t index) const {
+                if (index >= args.size()) return Uuid{};
+                const Value& value = args[index];
+                if (value.tag == Tag::Uuid) return value.uuid;
+                // JSON 协议下为 xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx 形式
+                const char* p = value.str().c_str();
+                Uuid out;
+                out.most = parseHexDigits(p, 16);
+                out.least = parseHexDigits(p, 16);
+                return out;
+            }
+
+            Vec3 argVector(size_t index) const {
+                if (index >= args.size()) return Vec3{};
+                const Value& value = args[index];
+                if (value.tag == Tag::Vector) return value.vector;
+                // JSON 协议下为 x,y,z 形式
+                const char* p = value.str().c_str();
+                char* end;
+                Vec3 out{};
+                out.x = std::strtod(p, &end);
+                if (*end == ',') out.y = std::strtod(end + 1, &end);
+                if (*end == ',') out.z = std::strtod(end + 1, &end);
+                return out;
+            }
+        };
+
+        // ---- 二进制帧 ----
+
+        class Reader {
+        public:
+            explicit Reader(const std::string& data) : data_(data) {}
+
+            bool u8(uint8_t& out) {
+                if (pos_ + 1 > data_.size()) return false;
+                out = static_cast<uint8_t>(data_[pos_++]);
+                return true;
+            }
+
+            bool u16(uint16_t& out) {
+                uint64_t v;
+                if (!little(2, v)) return false;
+                out = static_cast<uint16_t>(v);
+                return true;
+            }
+
+            bool u32(uint32_t& out) {
+                uint64_t v;
+                if (!little(4, v)) return false;
+                out = static_cast<uint32_t>(v);
+                return true;
+            }
+
+            bool i64(int64_t& out) {
+                uint64_t v;
+                if (!little(8, v)) return false;
+                out = static_cast<int64_t>(v);
+                return true;
+            }
+
+            bool f64(double& out) {
+                uint64_t v;
+                if (!little(8, v)) return false;
+                std::memcpy(&out, &v, sizeof(out));
+                return true;
+            }
+
+            bool str(std::string& out) {
+                uint32_t length;
+                if (!u32(length) || pos_ + length > data_.size()) return false;
+                out.assign(data_, pos_, length);
+                pos_ += length;
+                return true;
+            }
+
+        private:
+            bool little(size_t bytes, uint64_t& out) {
+                if (pos_ + bytes > data_.size()) return false;
+                out = 0;
+                for (size_t i = 0; i < bytes; i++) {
+                    out |= static_cast<uint64_t>(static_cast<uint8_t>(data_[pos_ + i])) << (8 * i);
+                }
+                pos_ += bytes;
+                return true;
+            }
+
+            const std::string& data_;
+            size_t pos_ = 0;
+        };
+
+        inline std::string formatReal(double value) {
+            char buffer[32];
+            std::snprintf(buffer, sizeof(buffer), "%.15g", value);
+            return buffer;
+        }
+
+        inline std::string formatUuid(const Uuid& uuid) {
+            char buffer[40];
+            std::snprintf(buffer, sizeof(buffer), "%08x-%04x-%04x-%04x-%012llx",
+                          static_cast<unsigned>(uuid.most >> 32), static_cast<unsigned>((uuid.most >> 16) & 0xFFFF),
+                          static_cast<unsigned>(uuid.most & 0xFFFF), static_cast<unsigned>(uuid.least >> 48),
+                          static_cast<unsigned long long>(uuid.least & 0xFFFFFFFFFFFFULL));
+            return buffer;
+        }
+
+        inline const std::string& Value::str() const {
+            if (!hasText) {
+                switch (tag) {
+                    case Tag::Int:
+                    case Tag::Long: text = std::to_string(integer); break;
+                    case Tag::Double: text = formatReal(real); break;
+                    case Tag::Uuid: text = formatUuid(uuid); break;
+                    case Tag::Vector:
+                        text = formatReal(vector.x) + "," + formatReal(vector.y) + "," + formatReal(vector.z);
+                        break;
+                    default: break;
+                }
+                hasText = true;
+            }
+            return text;
+        }
+
+        inline bool readValue(Reader& reader, Value& value) {
+            uint8_t tag;
+            if (!reader.u8(tag)) return false;
+            value.tag = static_cast<Tag>(tag);
+            value.integer = 0;
+            value.real = 0;
+            value.text.clear();
+            value.hasText = true;
+            switch (value.tag) {
+                case Tag::Null:
+                    value.text = "null";
+                    return true;
+                case Tag::String:
+                    return reader.str(value.text);
+                case Tag::Int: {
+                    uint32_t v;
+                    if (!reader.u32(v)) return false;
+                    value.integer = static_cast<int32_t>(v);
+                    value.hasText = false;
+                    return true;
+                }
+                case Tag::Long:
+                    value.hasText = false;
+                    return reader.i64(value.integer);
+                case Tag::Double:
+                    value.hasText = false;
+                    return reader.f64(value.real);
+                case Tag::Bool: {
+                    uint8_t v;
+                    if (!reader.u8(v)) return false;
+                    value.integer = v ? 1 : 0;
+                    value.text = v ? "true" : "false";
+                    return true;
+                }
+                case Tag::Handle: {
+                    uint32_t id;
+                    if (!reader.u32(id)) return false;
+                    const std::vector<std::string>& names = handleTable().names;
+                    value.integer = id;
+                    value.text = id < names.size() ? names[id] : "";
+                    return true;
+                }
+                case Tag::Uuid: {
+                    int64_t most;
+                    int64_t least;
+                    if (!reader.i64(most) || !reader.i64(least)) return false;
+                    value.uuid = Uuid{static_cast<uint64_t>(most), static_cast<uint64_t>(least)};
+                    value.hasText = false;
+                    return true;
+                }
+                case Tag::Vector:
+                    value.hasText = false;
+                    return reader.f64(value.vector.x) && reader.f64(value.vector.y) && reader.f64(value.vector.z);
+            }
+            return false;
+        }
+
+        /**
+         * 登记 Define 帧中的句柄: 参数为句柄、HandleKind 和名称
+         */
+        inline void defineHandle(const Event& define) {
+            if (define.args.size() < 3) return;
+            uint32_t id = static_cast<uint32_t>(define.args[0].integer);
+            HandleTable& table = handleTable();
+            if (id >= table.names.size()) {
+                table.names.resize(id + 1);
+            }
+            table.names[id] = define.args[2].text;
+            if (define.args[1].integer == static_cast<int64_t>(HandleKind::Player)) {
+                std::lock_guard<std::mutex> lock(table.mutex);
+                table.players[define.args[2].text] = id;
+            }
+        }
+
+        inline bool parseFrame(const std::string& body, Event& event) {
+            Reader reader(body);
+            uint8_t kind;
+            uint16_t type;
+            if (!reader.u8(kind) || kind != KIND_EVENT || !reader.u16(type)) return false;
+
+            event.type = static_cast<EventType>(type);
+            if (event.type == EventType::Custom) {
+                if (!reader.str(event.name)) return false;
+            } else {
+                event.name = nameOf(event.type);
+            }
+
+            uint8_t argc;
+            if (!reader.u8(argc)) return false;
+            event.args.resize(argc);
+            for (uint8_t i = 0; i < argc; i++) {
+                if (!readValue(reader, event.args[i])) return false;
+            }
+            return true;
+        }
+
+        // ---- JSON 行 ----
+
+        inline void appendUtf8(std::string& out, uint32_t cp) {
+            if (cp < 0x80) {
+                out += static_cast<char>(cp);
+            } else if (cp < 0x800) {
+                out += static_cast<char>(0xC0 | (cp >> 6));
+                out += static_cast<char>(0x80 | (cp & 0x3F));
+            } else if (cp < 0x10000) {
+                out += static_cast<char>(0xE0 | (cp >> 12));
+                out += static_cast<char>(0x80 | ((cp >> 6) & 0x3F));
+                out += static_cast<char>(0x80 | (cp & 0x3F));
+            } else {
+                out += static_cast<char>(0xF0 | (cp >> 18));
+                out += static_cast<char>(0x80 | ((cp >> 12) & 0x3F));
+                out += static_cast<char>(0x80 | ((cp >> 6) & 0x3F));
+                out += static_cast<char>(0x80 | (cp & 0x3F));
+            }
+        }
+
+        inline void skipSpace(const std::string& s, size_t& pos) {
+            while (pos < s.size() && (s[pos] == ' ' || s[pos] == '\t' || s[pos] == '\r' || s[pos] == '\n')) pos++;
+        }
+
+        inline bool parseHex4(const std::string& s, size_t pos, uint32_t& out) {
+            if (pos + 4 > s.size()) return false;
+            out = 0;
+            for (size_t i = pos; i < pos + 4; i++) {
+                char c = s[i];
+                out <<= 4;
+                if (c >= '0' && c <= '9') out |= c - '0';
+                else if (c >= 'a' && c <= 'f') out |= c - 'a' + 10;
+                else if (c >= 'A' && c <= 'F') out |= c - 'A' + 10;
+                else return false;
+            }
+            return true;
+        }
+
+        inline bool parseString(const std::string& s, size_t& pos, std::string& out) {
+            if (pos >= s.size() || s[pos] != '"') return false;
+            pos++;
+            out.clear();
+            while (pos < s.size()) {
+                char c = s[pos++];
+                if (c == '"') return true;
+                if (c != '\\') {
+                    out += c;
+                    continue;
+                }
+                if (pos >= s.size()) return false;
+                char e = s[pos++];
+                switch (e) {
+                    case 'n': out += '\n'; break;
+                    case 't': out += '\t'; break;
+                    case 'r': out += '\r'; break;
+                    case 'b': out += '\b'; break;
+                    case 'f': out += '\f'; break;
+                    case 'u': {
+                        uint32_t cp;
+                        if (!parseHex4(s, pos, cp)) return false;
+                        pos += 4;
+                        if (cp >= 0xD800 && cp <= 0xDBFF && pos + 6 <= s.size() && s[pos] == '\\' && s[pos + 1] == 'u') {
+                            uint32_t low;
+                            if (parseHex4(s, pos + 2, low) && low >= 0xDC00 && low <= 0xDFFF) {
+                                cp = 0x10000 + ((cp - 0xD800) << 10) + (low - 0xDC00);
+                                pos += 6;
+                            }
+                        }
+                        appendUtf8(out, cp);
+                        break;
+                    }
+                    default: out += e; break;
+                }
+            }
+            return false;
+        }
+
+        // 读取字符串以外的标量 (数字, true/false/null) 的原始文本
+        inline bool parseScalar(const std::string& s, size_t& pos, Value& value) {
+            size_t start = pos;
+            while (pos < s.size() && s[pos] != ',' && s[pos] != ']' && s[pos] != '}'
+                   && s[pos] != ' ' && s[pos] != '\r' && s[pos] != '\n') {
+                pos++;
+            }
+            if (pos == start) return false;
+            value.text.assign(s, start, pos - start);
+            if (value.text == "true" || value.text == "false") {
+                value.tag = Tag::Bool;
+                value.integer = value.text == "true" ? 1 : 0;
+            } else if (value.text == "null") {
+                value.tag = Tag::Null;
+            } else if (value.text.find_first_of(".eE") != std::string::npos) {
+                value.tag = Tag::Double;
+                value.real = std::strtod(value.text.c_str(), nullptr);
+            } else {
+                value.tag = Tag::Long;
+                value.integer = std::strtoll(value.text.c_str(), nullptr, 10);
+            }
+            return true;
+        }
+
+        inline bool skipValue(const std::string& s, size_t& pos) {
+            skipSpace(s, pos);
+            if (pos >= s.size()) return false;
+            if (s[pos] == '"') {
+                std::string ignored;
+                return parseString(s, pos, ignored);
+            }
+            if (s[pos] == '{' || s[pos] == '[') {
+                char close = s[pos] == '{' ? '}' : ']';
+                pos++;
+                skipSpace(s, pos);
+                if (pos < s.size() && s[pos] == close) {
+                    pos++;
+                    return true;
+                }
+                while (pos < s.size()) {
+                    if (close == '}') {
+                        std::string key;
+                        skipSpace(s, pos);
+                        if (!parseString(s, pos, key)) return false;
+                        skipSpace(s, pos);
+                        if (pos >= s.size() || s[pos] != ':') return false;
+                        pos++;
+                    }
+                    if (!skipValue(s, pos)) return false;
+                    skipSpace(s, pos);
+                    if (pos < s.size() && s[pos] == ',') {
+                        pos++;
+                        continue;
+                    }
+                    if (pos < s.size() && s[pos] == close) {
+                        pos++;
+                        return true;
+                    }
+                    return false;
+                }
+                return false;
+            }
+            Value ignored;
+            return parseScalar(s, pos, ignored);
+        }
+
+        inline bool parseArgs(const std::string& s, size_t& pos, std::vector<Value>& args) {
+            args.clear();
+            if (pos >= s.size() || s[pos] != '[') return false;
+            pos++;
+            skipSpace(s, pos);
+            if (pos < s.size() && s[pos] == ']') {
+                pos++;
+                return true;
+            }
+            while (pos < s.size()) {
+                skipSpace(s, pos);
+                args.emplace_back();
+                Value& value = args.back();
+                if (pos < s.size() && s[pos] == '"') {
+                    value.tag = Tag::String;
+                    if (!parseString(s, pos, value.text)) return false;
+                } else if (!parseScalar(s, pos, value)) {
+                    return false;
+                }
+                skipSpace(s, pos);
+                if (pos < s.size() && s[pos] == ',') {
+                    pos++;
+                    continue;
+                }
+                if (pos < s.size() && s[pos] == ']') {
+                    pos++;
+                    return true;
+                }
+                return false;
+            }
+            return false;
+        }
+
+        inline bool parseJsonLine(const std::string& line, Event& event) {
+            size_t pos = 0;
+            skipSpace(line, pos);
+            if (pos >= line.size() || line[pos] != '{') return false;
+            pos++;
+
+            event.name.clear();
+            event.args.clear();
+            std::string key;
+            while (pos < line.size()) {
+                skipSpace(line, pos);
+                if (pos < line.size() && line[pos] == '}') break;
+                if (!parseString(line, pos, key)) return false;
+                skipSpace(line, pos);
+                if (pos >= line.size() || line[pos] != ':') return false;
+                pos++;
+                skipSpace(line, pos);
+
+                if (key == "event") {
+                    if (!parseString(line, pos, event.name)) return false;
+                } else if (key == "args") {
+                    if (!parseArgs(line, pos, event.args)) return false;
+                } else if (!skipValue(line, pos)) {
+                    return false;
+                }
+
+                skipSpace(line, pos);
+                if (pos < line.size() && line[pos] == ',') pos++;
+            }
+            event.type = typeOf(event.name);
+            return !event.name.empty();
+        }
+
+        /**
+         * 读取下一个事件, 自动识别 JSON 行与二进制帧。流结束时返回 false,
+         * 无法解析的消息会被跳过。
+         */
+        inline bool readEvent(std::istream& in, Event& event) {
+            static std::string buffer;
+            while (true) {
+                int c = in.peek();
+                if (c == std::char_traits<char>::eof()) return false;
+
+                if (c == FRAME_MARKER) {
+                    in.get();
+                    char header[4];
+                    if (!in.read(header, sizeof(header))) return false;
+                    uint32_t length = 0;
+                    for (int i = 0; i < 4; i++) {
+                        length |= static_cast<uint32_t>(static_cast<uint8_t>(header[i])) << (8 * i);
+                    }
+                    if (length > MAX_FRAME_SIZE) return false;
+                    buffer.resize(length);
+                    if (length > 0 && !in.read(&buffer[0], length)) return false;
+                    if (!parseFrame(buffer, event)) continue;
+                    // 句柄登记由读取层处理, 调用方只会看到已解析出名称的事件
+                    if (event.type == EventType::Define) {
+                        defineHandle(event);
+                        continue;
+                    }
+                    return true;
+                } else if (c == '{') {
+                    if (!std::getline(in, buffer)) return false;
+                    if (parseJsonLine(buffer, event)) return true;
+                } else {
+                    in.get();
+                }
+            }
+        }
+    }
+
+    /**
+     * 一个服务器 tick 内捕获的全部事件 (握手协商 ticks 功能后才会收到)
+     * 同一个 tick 在 Java 端等待超过 linger-ms 时可能被拆成多帧发送
+     */
+    struct TickFrame {
+        uint64_t tick = 0;
+        std::vector<wire::Event> events;
+    };
+}
+
+// 每个 tick 帧的逐事件回调都执行完后调用, 可在此一次处理整个 tick 的事件
+TRANFORCPP_HANDLER void onTick(unsigned long long tick, const tranforcpp::TickFrame& frame);
+
+namespace tranforcpp {
+    /**
+     * 将事件分发到插件实现的回调, 未实现的回调会被跳过
+     */
+    inline void dispatch(const wire::Event& e) {
+        using wire::EventType;
+        switch (e.type) {
+            case EventType::PlayerJoin: if (onPlayerJoin) onPlayerJoin(e.arg(0)); break;
+            case EventType::PlayerQuit: if (onPlayerQuit) onPlayerQuit(e.arg(0)); break;
+            case EventType::PlayerChat: if (onPlayerChat) onPlayerChat(e.arg(0), e.arg(1)); break;
+            case EventType::PlayerMove:
+                if (onPlayerMove) onPlayerMove(e.arg(0));
+                if (onPlayerMoveTo) {
+                    onPlayerMoveTo(e.arg(0), e.arg(1), e.argDouble(2), e.argDouble(3), e.argDouble(4),
+                                   e.argDouble(5), e.argDouble(6), e.argDouble(7));
+                }
+                break;
+            case EventType::PlayerRespawn: if (onPlayerRespawn) onPlayerRespawn(e.arg(0)); break;
+            case EventType::PlayerDeath: if (onPlayerDeath) onPlayerDeath(e.arg(0), e.arg(1)); break;
+            case EventType::PlayerInteract: if (onPlayerInteract) onPlayerInteract(e.arg(0), e.arg(1), e.arg(2)); break;
+            case EventType::PlayerDropItem: if (onPlayerDropItem) onPlayerDropItem(e.arg(0), e.arg(1)); break;
+            case EventType::PlayerPickupItem: if (onPlayerPickupItem) onPlayerPickupItem(e.arg(0), e.arg(1)); break;
+            case EventType::BlockBreak: if (onBlockBreak) onBlockBreak(e.arg(0), e.arg(1)); break;
+            case EventType::BlockPlace: if (onBlockPlace) onBlockPlace(e.arg(0), e.arg(1)); break;
+            case EventType::BlockIgnite: if (onBlockIgnite) onBlockIgnite(e.arg(0), e.arg(1)); break;
+            case EventType::EntityDamage: if (onEntityDamage) onEntityDamage(e.arg(0), e.argDouble(1), e.argUuid(2)); break;
+            case EventType::EntityDeath: if (onEntityDeath) onEntityDeath(e.arg(0), e.argUuid(1)); break;
+            case EventType::EntitySpawn: if (onEntitySpawn) onEntitySpawn(e.arg(0)); break;
+            case EventType::HangingBreak: if (onHangingBreak) onHangingBreak(e.arg(0), e.arg(1)); break;
+            case EventType::InventoryClick: if (onInventoryClick) onInventoryClick(e.arg(0), e.argInt(1), e.arg(2)); break;
+            case EventType::InventoryOpen: if (onInventoryOpen) onInventoryOpen(e.arg(0)); break;
+            case EventType::InventoryClose: if (onInventoryClose) onInventoryClose(e.arg(0)); break;
+            case EventType::ServerCommand: if (onServerCommand) onServerCommand(e.arg(0), e.arg(1)); break;
+            case EventType::WorldLoad: if (onWorldLoad) onWorldLoad(e.arg(0)); break;
+            case EventType::WeatherChange: if (onWeatherChange) onWeatherChange(e.arg(0), e.argBool(1)); break;
+            default: break;
+        }
+    }
+
+#ifndef _WIN32
+    // -----------------------------------------------------------------------
+    // 共享内存通道 (格式见 Java 端 SharedMemoryTransport / SharedMemoryRing)
+    // 两个单生产者/单消费者字节环位于 TRANFORCPP_SHM_PATH 指向的映射文件中
+    // -----------------------------------------------------------------------
+    namespace shm {
+        constexpr uint32_t MAGIC = 0x50504354;
+        constexpr uint32_t LAYOUT_VERSION = 1;
+        constexpr size_t HEADER_SIZE = 64;
+        constexpr size_t CONTROL_SIZE = 192;
+        constexpr size_t BUFFER_SIZE = 64 * 1024;
+
+        inline void cpuRelax() {
+#if defined(__x86_64__) || defined(__i386__)
+            __builtin_ia32_pause();
+#elif defined(__aarch64__)
+            asm volatile("yield");
+#endif
+        }
+
+        // 先自旋后休眠, 与 Java 端 IdleBackoff 相同的等待策略
+        class Backoff {
+        public:
+            void idle() {
+                if (rounds_ < 200) {
+                    rounds_++;
+                    cpuRelax();
+                } else if (rounds_ < 250) {
+                    rounds_++;
+                    std::this_thread::yield();
+                } else {
+                    std::this_thread::sleep_for(std::chrono::microseconds(sleepMicros_));
+                    sleepMicros_ = std::min<long>(sleepMicros_ * 2, 1000);
+                }
+            }
+
+            void reset() {
+                rounds_ = 0;
+                sleepMicros_ = 1;
+            }
+
+        private:
+            int rounds_ = 0;
+            long sleepMicros_ = 1;
+        };
+
+        class Ring {
+        public:
+            Ring() = default;
+            Ring(unsigned char* base, uint32_t capacity) : base_(base), capacity_(capacity) {}
+
+            size_t write(const char* src, size_t length) {
+                uint64_t writePos = __atomic_load_n(writePosPtr(), __ATOMIC_RELAXED);
+                uint64_t readPos = __atomic_load_n(readPosPtr(), __ATOMIC_ACQUIRE);
+                size_t count = std::min<size_t>(capacity_ - (writePos - readPos), length);
+                if (count == 0) return 0;
+
+                size_t index = writePos & (capacity_ - 1);
+                size_t first = std::min<size_t>(count, capacity_ - index);
+                std::memcpy(data() + index, src, first);
+                if (first < count) std::memcpy(data(), src + first, count - first);
+                __atomic_store_n(writePosPtr(), writePos + count, __ATOMIC_RELEASE);
+                return count;
+            }
+
+            size_t read(char* dst, size_t length) {
+                uint64_t readPos = __atomic_load_n(readPosPtr(), __ATOMIC_RELAXED);
+                uint64_t writePos = __atomic_load_n(writePosPtr(), __ATOMIC_ACQUIRE);
+                size_t count = std::min<size_t>(writePos - readPos, length);
+                if (count == 0) return 0;
+
+                size_t index = readPos & (capacity_ - 1);
+                size_t first = std::min<size_t>(count, capacity_ - index);
+                std::memcpy(dst, data() + index, first);
+                if (first < count) std::memcpy(dst + first, data(), count - first);
+                __atomic_store_n(readPosPtr(), readPos + count, __ATOMIC_RELEASE);
+                return count;
+            }
+
+            bool empty() const {
+                return __atomic_load_n(writePosPtr(), __ATOMIC_ACQUIRE) == __atomic_load_n(readPosPtr(), __ATOMIC_RELAXED);
+            }
+
+            bool closed() const {
+                return __atomic_load_n(closedPtr(), __ATOMIC_ACQUIRE) != 0;
+            }
+
+            void close() {
+                __atomic_store_n(closedPtr(), 1u, __ATOMIC_RELEASE);
+            }
+
+        private:
+            uint64_t* writePosPtr() const { return reinterpret_cast<uint64_t*>(base_); }
+            uint64_t* readPosPtr() const { return reinterpret_cast<uint64_t*>(base_ + 64); }
+            uint32_t* closedPtr() const { return reinterpret_cast<uint32_t*>(base_ + 128); }
+            unsigned char* data() const { return base_ + CONTROL_SIZE; }
+
+            unsigned char* base_ = nullptr;
+            uint32_t capacity_ = 0;
+        };
+
+        class InputBuffer : public std::streambuf {
+        public:
+            explicit InputBuffer(Ring ring) : ring_(ring) {}
+
+        protected:
+            int_type underflow() override {
+                if (gptr() < egptr()) return traits_type::to_int_type(*gptr());
+                Backoff backoff;
+                size_t count;
+                while ((count = ring_.read(buffer_, sizeof(buffer_))) == 0) {
+                    if (ring_.closed() && ring_.empty()) return traits_type::eof();
+                    backoff.idle();
+                }
+                setg(buffer_, buffer_, buffer_ + count);
+                return traits_type::to_int_type(*gptr());
+            }
+
+        private:
+            Ring ring_;
+            char buffer_[BUFFER_SIZE];
+        };
+
+        class OutputBuffer : public std::streambuf {
+        public:
+            explicit OutputBuffer(Ring ring) : ring_(ring) {
+                setp(buffer_, buffer_ + sizeof(buffer_));
+            }
+
+            void close() {
+                sync();
+                ring_.close();
+            }
+
+        protected:
+            int_type overflow(int_type c) override {
+                if (sync() != 0) return traits_type::eof();
+                if (!traits_type::eq_int_type(c, traits_type::eof())) {
+                    *pptr() = traits_type::to_char_type(c);
+                    pbump(1);
+                }
+                return traits_type::not_eof(c);
+            }
+
+            int sync() override {
+                const char* p = pbase();
+                size_t remaining = pptr() - pbase();
+                Backoff backoff;
+                while (remaining > 0) {
+                    size_t written = ring_.write(p, remaining);
+                    if (written > 0) {
+                        p += written;
+                        remaining -= written;
+                        backoff.reset();
+                    } else if (ring_.closed()) {
+                        setp(buffer_, buffer_ + sizeof(buffer_));
+                        return -1;
+                    } else {
+                        backoff.idle();
+                    }
+                }
+                setp(buffer_, buffer_ + sizeof(buffer_));
+                return 0;
+            }
+
+        private:
+            Ring ring_;
+            char buffer_[BUFFER_SIZE];
+        };
+
+        class Connection {
+        public:
+            Connection(Ring toPlugin, Ring toServer)
+                : inBuffer_(toPlugin), outBuffer_(toServer), input(&inBuffer_), output(&outBuffer_) {}
+
+            void close() {
+                outBuffer_.close();
+            }
+
+        private:
+            InputBuffer inBuffer_;
+            OutputBuffer outBuffer_;
+
+        public:
+            std::istream input;
+            std::ostream output;
+        };
+
+        inline Connection*& connection() {
+            static Connection* current = nullptr;
+            return current;
+        }
+
+        /**
+         * 映射 TRANFORCPP_SHM_PATH 指向的文件, 失败时返回 nullptr 并继续使用管道
+         */
+        inline Connection* connect() {
+            if (connection() != nullptr) return connection();
+            const char* path = std::getenv("TRANFORCPP_SHM_PATH");
+            if (path == nullptr) return nullptr;
+
+            int fd = ::open(path, O_RDWR);
+            if (fd < 0) return nullptr;
+            struct stat st;
+            if (fstat(fd, &st) != 0 || static_cast<size_t>(st.st_size) < HEADER_SIZE) {
+                ::close(fd);
+                return nullptr;
+            }
+            size_t size = static_cast<size_t>(st.st_size);
+            void* address = mmap(nullptr, size, PROT_READ | PROT_WRITE, MAP_SHARED, fd, 0);
+            ::close(fd);
+            if (address == MAP_FAILED) return nullptr;
+
+            unsigned char* base = static_cast<unsigned char*>(address);
+            uint32_t magic, version, capacity;
+            std::memcpy(&magic, base, 4);
+            std::memcpy(&version, base + 4, 4);
+            std::memcpy(&capacity, base + 8, 4);
+            if (magic != MAGIC || version != LAYOUT_VERSION || capacity == 0 || (capacity & (capacity - 1)) != 0
+                || size < HEADER_SIZE + 2 * (CONTROL_SIZE + capacity)) {
+                munmap(address, size);
+                return nullptr;
+            }
+
+            Ring toPlugin(base + HEADER_SIZE, capacity);
+            Ring toServer(base + HEADER_SIZE + CONTROL_SIZE + capacity, capacity);
+            connection() = new Connection(toPlugin, toServer);
+            return connection();
+        }
+    }
+
+    // -----------------------------------------------------------------------
+    // Unix 域套接字通道, Java 端监听 TRANFORCPP_SOCKET_PATH 指向的套接字文件
+    // -----------------------------------------------------------------------
+    namespace uds {
+        constexpr size_t BUFFER_SIZE = 64 * 1024;
+
+        class InputBuffer : public std::streambuf {
+        public:
+            explicit InputBuffer(int fd) : fd_(fd) {}
+
+        protected:
+            int_type underflow() override {
+                if (gptr() < egptr()) return traits_type::to_int_type(*gptr());
+                ssize_t count;
+                do {
+                    count = ::read(fd_, buffer_, sizeof(buffer_));
+                } while (count < 0 && errno == EINTR);
+                if (count <= 0) return traits_type::eof();
+                setg(buffer_, buffer_, buffer_ + count);
+                return traits_type::to_int_type(*gptr());
+            }
+
+        private:
+            int fd_;
+            char buffer_[BUFFER_SIZE];
+        };
+
+        class OutputBuffer : public std::streambuf {
+        public:
+            explicit OutputBuffer(int fd) : fd_(fd) {
+                setp(buffer_, buffer_ + sizeof(buffer_));
+            }
+
+        protected:
+            int_type overflow(int_type c) override {
+                if (sync() != 0) return traits_type::eof();
+                if (!traits_type::eq_int_type(c, traits_type::eof())) {
+                    *pptr() = traits_type::to_char_type(c);
+                    pbump(1);
+                }
+                return traits_type::not_eof(c);
+            }
+
+            int sync() override {
+                const char* p = pbase();
+                size_t remaining = pptr() - pbase();
+                setp(buffer_, buffer_ + sizeof(buffer_));
+#ifdef MSG_NOSIGNAL
+                const int flags = MSG_NOSIGNAL;
+#else
+                const int flags = 0;
+#endif
+                while (remaining > 0) {
+                    ssize_t written = ::send(fd_, p, remaining, flags);
+                    if (written < 0) {
+                        if (errno == EINTR) continue;
+                        return -1;
+                    }
+                    p += written;
+                    remaining -= static_cast<size_t>(written);
+                }
+                return 0;
+            }
+
+        private:
+            int fd_;
+            char buffer_[BUFFER_SIZE];
+        };
+
+        class Connection {
+        public:
+            explicit Connection(int fd) : fd_(fd), inBuffer_(fd), outBuffer_(fd), input(&inBuffer_), output(&outBuffer_) {}
+
+            void close() {
+                output.flush();
+                ::shutdown(fd_, SHUT_WR);
+            }
+
+        private:
+            int fd_;
+            InputBuffer inBuffer_;
+            OutputBuffer outBuffer_;
+
+        public:
+            std::istream input;
+            std::ostream output;
+        };
+
+        inline Connection*& connection() {
+            static Connection* current = nullptr;
+            return current;
+        }
+
+        /**
+         * 连接 TRANFORCPP_SOCKET_PATH, 失败时返回 nullptr 并继续使用管道
+         */
+        inline Connection* connect() {
+            if (connection() != nullptr) return connection();
+            const char* path = std::getenv("TRANFORCPP_SOCKET_PATH");
+            if (path == nullptr) return nullptr;
+
+            sockaddr_un address{};
+            address.sun_family = AF_UNIX;
+            if (std::strlen(path) >= sizeof(address.sun_path)) return nullptr;
+            std::strcpy(address.sun_path, path);
+
+            int fd = ::socket(AF_UNIX, SOCK_STREAM, 0);
+            if (fd < 0) return nullptr;
+#ifdef SO_NOSIGPIPE
+            int on = 1;
+            setsockopt(fd, SOL_SOCKET, SO_NOSIGPIPE, &on, sizeof(on));
+#endif
+            if (::connect(fd, reinterpret_cast<sockaddr*>(&address), sizeof(address)) != 0) {
+                ::close(fd);
+                return nullptr;
+            }
+            connection() = new Connection(fd);
+            return connection();
+        }
+    }
+#endif
+
+    // ---- 事件订阅 ----
+
+    struct Subscriptions {
+        std::mutex mutex;
+        bool announced = false;
+        std::vector<std::string> added;
+        std::vector<std::string> removed;
+    };
+
+    inline Subscriptions& subscriptions() {
+        static Subscriptions current;
+        return current;
+    }
+
+    inline void sendSubscription(const char* action, const char* events) {
+        std::ostringstream oss;
+        oss << R"({"action":")" << action << R"(","events":")" << jsonEscape(events) << "\"}";
+        sendMessage(action, oss.str());
+    }
+
+    /**
+     * 订阅事件 (逗号分隔的事件名, 如 "PlayerMove,EntitySpawn")。
+     * 握手前调用会合并到握手声明中, 握手后调用立即通知 Java 注册监听。
+     * 只实现 onTick 而没有实现对应 onXxx 回调时需要用它声明事件。
+     */
+    inline void subscribe(const char* events) {
+        Subscriptions& subs = subscriptions();
+        {
+            std::lock_guard<std::mutex> lock(subs.mutex);
+            if (!subs.announced) {
+                subs.added.emplace_back(events);
+                return;
+            }
+        }
+        sendSubscription("subscribe", events);
+    }
+
+    /**
+     * 取消订阅, Java 会立即注销对应的监听
+     */
+    inline void unsubscribe(const char* events) {
+        Subscriptions& subs = subscriptions();
+        {
+            std::lock_guard<std::mutex> lock(subs.mutex);
+            if (!subs.announced) {
+                subs.removed.emplace_back(events);
+                return;
+            }
+        }
+        sendSubscription("unsubscribe", events);
+    }
+
+    /**
+     * 握手时声明的事件: 已实现的回调 + subscribe() - unsubscribe()
+     */
+    inline std::string declaredSubscriptions() {
+        std::vector<std::string> names;
+        auto add = [&names](bool implemented, const char* name) {
+            if (implemented) names.emplace_back(name);
+        };
+        add(onPlayerJoin != nullptr, "PlayerJoin");
+        add(onPlayerQuit != nullptr, "PlayerQuit");
+        add(onPlayerChat != nullptr, "PlayerChat");
+        add(onPlayerMove != nullptr || onPlayerMoveTo != nullptr, "PlayerMove");
+        add(onPlayerRespawn != nullptr, "PlayerRespawn");
+        add(onPlayerDeath != nullptr, "PlayerDeath");
+        add(onPlayerInteract != nullptr || checkPlayerInteract != nullptr, "PlayerInteract");
+        add(onPlayerDropItem != nullptr, "PlayerDropItem");
+        add(onPlayerPickupItem != nullptr, "PlayerPickupItem");
+        add(onBlockBreak != nullptr || checkBlockBreak != nullptr, "BlockBreak");
+        add(onBlockPlace != nullptr, "BlockPlace");
+        add(onBlockIgnite != nullptr, "BlockIgnite");
+        add(onEntityDamage != nullptr, "EntityDamage");
+        add(onEntityDeath != nullptr, "EntityDeath");
+        add(onEntitySpawn != nullptr, "EntitySpawn");
+        add(onHangingBreak != nullptr, "HangingBreak");
+        add(onInventoryClick != nullptr || checkInventoryClick != nullptr, "InventoryClick");
+        add(onInventoryOpen != nullptr, "InventoryOpen");
+        add(onInventoryClose != nullptr, "InventoryClose");
+        add(onServerCommand != nullptr, "ServerCommand");
+        add(onWorldLoad != nullptr, "WorldLoad");
+        add(onWeatherChange != nullptr, "WeatherChange");
+
+        auto split = [](const std::string& list, const std::function<void(const std::string&)>& each) {
+            std::istringstream in(list);
+            std::string item;
+            while (std::getline(in, item, ',')) {
+                if (!item.empty()) each(item);
+            }
+        };
+        Subscriptions& subs = subscriptions();
+        std::lock_guard<std::mutex> lock(subs.mutex);
+        for (const std::string& list : subs.added) {
+            split(list, [&names](const std::string& name) {
+                if (std::find(names.begin(), names.end(), name) == names.end()) names.push_back(name);
+            });
+        }
+        for (const std::string& list : subs.removed) {
+            split(list, [&names](const std::string& name) {
+                names.erase(std::remove(names.begin(), names.end(), name), names.end());
+            });
+        }
+        subs.announced = true;
+
+        std::string joined;
+        for (const std::string& name : names) {
+            if (!joined.empty()) joined += ',';
+            joined += name;
+        }
+        return joined;
+    }
+
+    /**
+     * 实现了 checkXxx 回调、需要 Java 等待裁决的事件
+     */
+    inline std::string declaredVerdicts() {
+        std::string joined;
+        auto add = [&joined](bool implemented, const char* name) {
+            if (!implemented) return;
+            if (!joined.empty()) joined += ',';
+            joined += name;
+        };
+        add(checkBlockBreak != nullptr, "BlockBreak");
+        add(checkInventoryClick != nullptr, "InventoryClick");
+        add(checkPlayerInteract != nullptr, "PlayerInteract");
+        return joined;
+    }
+
+    /**
+     * 发送额度: 握手时授予 Java 端 window() 个额度, Java 端每发送一个事件消耗一个, 用尽后不再写入,
+     * 事件留在 Java 端的队列中。每处理完 window() / 4 个事件归还一次额度。
+     * 额度不宜超过管道缓冲区 (Linux 默认 64KB) 能容纳的事件数, 可在包含本文件前定义 TRANFORCPP_CREDIT_WINDOW 修改
+     */
+    namespace credits {
+#ifndef TRANFORCPP_CREDIT_WINDOW
+#define TRANFORCPP_CREDIT_WINDOW 512
+#endif
+        inline bool active = false;
+        inline long unreported = 0;
+
+        constexpr long window() {
+            return TRANFORCPP_CREDIT_WINDOW > 0 ? TRANFORCPP_CREDIT_WINDOW : 1;
+        }
+
+        /**
+         * 处理完 events 个事件, 攒够一批后归还; 只在事件循环线程上调用
+         */
+        inline void consumed(long events) {
+            if (!active || events <= 0) return;
+            unreported += events;
+            if (unreported < std::max(1L, window() / 4)) return;
+            sendMessage("credit", R"({"action":"credit","credits":)" + std::to_string(unreported) + "}");
+            unreported = 0;
+        }
+    }
+
+    /**
+     * 回复握手: 选择 Java 端提供的编码协议, 并尝试连接提供的协议通道。
+     * 回复总是通过标准输出发送, 之后再切换通道, 两者在同一把锁内完成。
+     */
+    inline void handshake(const wire::Event& hello) {
+        std::string offeredProtocol = hello.arg(1);
+        std::string offeredTransport = hello.arg(2);
+        std::string offeredFeatures = std::string(",") + hello.arg(3) + ",";
+        std::string features;
+        std::string subscribed;
+        if (offeredFeatures.find(",ticks,") != std::string::npos) {
+            features = "ticks";
+        }
+        if (offeredFeatures.find(",subscribe,") != std::string::npos) {
+            features += features.empty() ? "subscribe" : ",subscribe";
+            subscribed = declaredSubscriptions();
+        }
+        const char* protocol = offeredProtocol == "binary" ? "binary" : "json";
+        if (offeredProtocol == "binary" && offeredFeatures.find(",handles,") != std::string::npos) {
+            features += features.empty() ? "handles" : ",handles";
+        }
+        std::string verdicts;
+        if (offeredFeatures.find(",verdicts,") != std::string::npos) {
+            verdicts = declaredVerdicts();
+            if (!verdicts.empty()) features += features.empty() ? "verdicts" : ",verdicts";
+        }
+        if (offeredFeatures.find(",handover,") != std::string::npos && (saveState || restoreState)) {
+            features += features.empty() ? "handover" : ",handover";
+        }
+        if (offeredFeatures.find(",journal,") != std::string::npos) {
+            features += features.empty() ? "journal" : ",journal";
+        }
+        long window = 0;
+        if (offeredFeatures.find(",credits,") != std::string::npos) {
+            features += features.empty() ? "credits" : ",credits";
+            window = credits::window();
+            credits::active = true;
+        }
+        const char* transport = "pipe";
+        Channel next;
+#ifndef _WIN32
+        if (offeredTransport == "shm") {
+            if (shm::Connection* connection = shm::connect()) {
+                transport = "shm";
+                next.in = &connection->input;
+                next.out = &connection->output;
+                next.close = [] { shm::connection()->close(); };
+            }
+        } else if (offeredTransport == "uds") {
+            if (uds::Connection* connection = uds::connect()) {
+                transport = "uds";
+                next.in = &connection->input;
+                next.out = &connection->output;
+                next.close = [] { uds::connection()->close(); };
+            }
+        }
+#endif
+        std::ostringstream oss;
+        oss << R"({"action":"hello","protocol":")" << protocol << R"(","transport":")" << transport
+            << R"(","features":")" << features << R"(","subscribe":")" << subscribed
+            << R"(","verdicts":")" << verdicts << R"(","version":)" << wire::VERSION;
+        if (window > 0) oss << R"(,"credits":)" << window;
+        oss << "}";
+
+        std::lock_guard<std::mutex> lock(outputMutex());
+        std::cout << oss.str() << std::endl;
+        channel() = next;
+    }
+
+    inline void closeChannel() {
+        std::lock_guard<std::mutex> lock(outputMutex());
+        channel().out->flush();
+        if (channel().close != nullptr) {
+            channel().close();
+        }
+    }
+
+    /**
+     * 读取 Tick 帧头之后属于该 tick 的事件, 逐个分发后调用 onTick()
+     */
+    inline void handleTick(const wire::Event& header) {
+        TickFrame frame;
+        frame.tick = static_cast<uint64_t>(header.argLong(0));
+        unsigned long count = static_cast<unsigned long>(header.argLong(1));
+        frame.events.reserve(count);
+        for (unsigned long i = 0; i < count; i++) {
+            wire::Event event;
+            if (!wire::readEvent(*channel().in, event)) break;
+            frame.events.push_back(std::move(event));
+        }
+        for (const wire::Event& event : frame.events) {
+            dispatch(event);
+        }
+        if (onTick) onTick(frame.tick, frame);
+        credits::consumed(static_cast<long>(frame.events.size()));
+    }
+
+    /**
+     * 查询结果: ok 为 false 表示玩家不在线或无法识别的查询, 各查询的结果参数见 README
+     */
+    struct QueryResult : wire::Event {
+        bool ok = false;
+    };
+
+    using QueryCallback = std::function<void(const QueryResult&)>;
+
+    namespace queries {
+        struct Pending {
+            std::promise<QueryResult> promise;
+            QueryCallback callback;
+        };
+
+        struct Table {
+            std::mutex mutex;
+            uint64_t nextId = 1;
+            std::unordered_map<uint64_t, std::unique_ptr<Pending>> pending;
+        };
+
+        inline Table& table() {
+            static Table instance;
+            return instance;
+        }
+
+        inline uint64_t add(std::unique_ptr<Pending> entry) {
+            Table& t = table();
+            std::lock_guard<std::mutex> lock(t.mutex);
+            uint64_t id = t.nextId++;
+            t.pending.emplace(id, std::move(entry));
+            return id;
+        }
+
+        inline void send(uint64_t id, const char* type, const char* player) {
+            std::ostringstream oss;
+            oss << R"({"action":"query","id":)" << id << R"(,"type":")" << jsonEscape(type) << '"';
+            if (player != nullptr) {
+                uint32_t handle;
+                if (playerHandle(player, handle)) {
+                    oss << R"(,"handle":)" << handle;
+                }
+                oss << R"(,"player":")" << jsonEscape(player) << '"';
+            }
+            oss << "}";
+            sendMessage("query", oss.str());
+        }
+
+        inline void finish(std::unique_ptr<Pending> entry, QueryResult& result) {
+            if (entry->callback) {
+                entry->callback(result);
+            } else {
+                entry->promise.set_value(std::move(result));
+            }
+        }
+
+        /**
+         * 事件循环收到 QueryResult 时调用: 参数为查询编号、是否成功和结果
+         */
+        inline void resolve(const wire::Event& e) {
+            std::unique_ptr<Pending> entry;
+            {
+                Table& t = table();
+                std::lock_guard<std::mutex> lock(t.mutex);
+                auto it = t.pending.find(static_cast<uint64_t>(e.argLong(0)));
+                if (it == t.pending.end()) return;
+                entry = std::move(it->second);
+                t.pending.erase(it);
+            }
+            QueryResult result;
+            result.type = e.type;
+            result.name = e.name;
+            result.ok = e.argBool(1);
+            if (e.args.size() > 2) {
+                result.args.assign(e.args.begin() + 2, e.args.end());
+            }
+            finish(std::move(entry), result);
+        }
+
+        /**
+         * 事件循环结束时以失败结果完成所有未回复的查询
+         */
+        inline void failAll() {
+            std::unordered_map<uint64_t, std::unique_ptr<Pending>> remaining;
+            {
+                Table& t = table();
+                std::lock_guard<std::mutex> lock(t.mutex);
+                remaining.swap(t.pending);
+            }
+            for (auto& entry : remaining) {
+                QueryResult result;
+                finish(std::move(entry.second), result);
+            }
+        }
+    }
+
+    /**
+     * 异步查询, Java 每个 tick 在服务器线程上统一处理一次, 事件循环收到回复后完成 future。
+     * 事件回调与读取回复在同一线程, 不能在回调中等待 future, 此时应使用带回调的重载。
+     *
+     * @param type   online | location | health | inventory
+     * @param player 玩家名称, online 查询传 nullptr
+     */
+    inline std::future<QueryResult> query(const char* type, const char* player = nullptr) {
+        auto entry = std::make_unique<queries::Pending>();
+        std::future<QueryResult> future = entry->promise.get_future();
+        queries::send(queries::add(std::move(entry)), type, player);
+        return future;
+    }
+
+    /**
+     * 异步查询, 回复到达后在事件循环线程上调用 callback
+     */
+    inline void query(const char* type, const char* player, QueryCallback callback) {
+        auto entry = std::make_unique<queries::Pending>();
+        entry->callback = std::move(callback);
+        queries::send(queries::add(std::move(entry)), type, player);
+    }
+
+    /**
+     * 处理请求裁决的事件: 先调用 checkXxx 并立即回复, 再照常分发给 onXxx
+     * 参数为关联编号、事件名称和原事件参数
+     */
+    inline void handleRequest(const wire::Event& request) {
+        if (request.args.size() < 2) return;
+        wire::Event event;
+        event.name = request.arg(1);
+        event.type = wire::typeOf(event.name);
+        event.args.assign(request.args.begin() + 2, request.args.end());
+
+        Verdict verdict{false, -1, -1};
+        using wire::EventType;
+        switch (event.type) {
+            case EventType::BlockBreak:
+                if (checkBlockBreak) checkBlockBreak(event.arg(0), event.arg(1), &verdict);
+                break;
+            case EventType::InventoryClick:
+                if (checkInventoryClick) checkInventoryClick(event.arg(0), event.argInt(1), event.arg(2), &verdict);
+                break;
+            case EventType::PlayerInteract:
+                if (checkPlayerInteract) checkPlayerInteract(event.arg(0), event.arg(1), event.arg(2), &verdict);
+                break;
+            default:
+                break;
+        }
+
+        std::ostringstream oss;
+        oss << R"({"action":"verdict","id":)" << request.argLong(0) << R"(,"cancel":)" << (verdict.cancel ? "true" : "false");
+        if (verdict.drops >= 0) oss << R"(,"drops":)" << (verdict.drops ? "true" : "false");
+        if (verdict.exp >= 0) oss << R"(,"exp":)" << verdict.exp;
+        oss << "}";
+        sendMessage("verdict", oss.str());
+
+        dispatch(event);
+    }
+
+    /**
+     * 热替换时导出状态, 回复必须在之前所有事件处理完之后发出, 因此在事件循环线程上执行
+     */
+    inline void handleSaveState() {
+        std::string state;
+        if (saveState) saveState(&state);
+        sendMessage("state", R"({"action":"state","state":")" + jsonEscape(state.c_str()) + "\"}");
+    }
+
+    /**
+     * 事件日志: Seq 标记之前的事件已处理完, 回复确认后 Java 端不再重放这些事件
+     */
+    inline void acknowledge(const wire::Event& seq) {
+        sendMessage("ack", R"({"action":"ack","seq":)" + std::to_string(seq.argLong(0)) + "}");
+    }
+
+    /**
+     * 标准事件循环: 完成握手后读取事件并分发, 收到 shutdown 后调用 onShutdown() 并返回
+     */
+    inline int run() {
+#ifdef _WIN32
+        _setmode(_fileno(stdin), _O_BINARY);
+#endif
+        wire::Event event;
+        while (running && wire::readEvent(*channel().in, event)) {
+            switch (event.type) {
+                case wire::EventType::Hello:
+                    handshake(event);
+                    break;
+                case wire::EventType::Shutdown:
+                    if (onShutdown) onShutdown();
+                    running = false;
+                    break;
+                case wire::EventType::Tick:
+                    handleTick(event);
+                    break;
+                case wire::EventType::Request:
+                    handleRequest(event);
+                    credits::consumed(1);
+                    break;
+                case wire::EventType::QueryResult:
+                    queries::resolve(event);
+                    credits::consumed(1);
+                    break;
+                case wire::EventType::SaveState:
+                    handleSaveState();
+                    break;
+                case wire::EventType::RestoreState:
+                    if (restoreState) restoreState(event.arg(0));
+                    break;
+                case wire::EventType::Seq:
+                    acknowledge(event);
+                    break;
+                default:
+                    dispatch(event);
+                    credits::consumed(1);
+                    break;
+            }
+        }
+        queries::failAll();
+        closeChannel();
+        return 0;
+    }
+}
+
 #endif